@@ -0,0 +1,31 @@
+package p02_util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * ClassName: ConnectionProvider.java
+ * PackageName: p02_util
+ * Description: 獲取資料庫連接的統一介面
+ * 				設定檔只在創建時讀取一次, 之後每次 getConnection() 只負責拿連接.
+ * 				可以由 DriverManager, c3p0, DBCP, Druid 或 BagDataSource 實現, 由 jdbc.properties 中的 provider 決定.
+ */
+public interface ConnectionProvider extends AutoCloseable {
+
+	/**
+	 * 獲取資料庫的連接, 使用完畢後由調用者關閉(連接池的實現會將連接歸還).
+	 */
+	Connection getConnection() throws SQLException;
+
+	/**
+	 * 實現的名稱, 例如 driver, c3p0, dbcp, druid.
+	 */
+	String getName();
+
+	/**
+	 * 釋放提供者持有的資源(例如關閉連接池), 預設不做任何事.
+	 */
+	@Override
+	default void close() {
+	}
+}
@@ -0,0 +1,23 @@
+package p02_util;
+
+import java.util.Properties;
+
+/**
+ * ClassName: ConnectionProviderFactory.java
+ * PackageName: p02_util
+ * Description: 由其他套件提供的 ConnectionProvider(例如 p09_util 的資料庫連接池)
+ * 				實現類寫在 META-INF/services/p02_util.ConnectionProviderFactory 中, 由 ConnectionProviders 以 ServiceLoader 找到,
+ * 				p02_util 因此不需要依賴提供連接池的套件.
+ */
+public interface ConnectionProviderFactory {
+
+	/**
+	 * 是否能創建名為 provider 的 ConnectionProvider, 例如 c3p0
+	 */
+	boolean supports(String provider);
+
+	/**
+	 * 依照設定創建 ConnectionProvider, pros 為 jdbc.properties 的內容
+	 */
+	ConnectionProvider create(String provider, Properties pros) throws Exception;
+}
@@ -0,0 +1,58 @@
+package p02_util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.ServiceLoader;
+
+/**
+ * ClassName: ConnectionProviders.java
+ * PackageName: p02_util
+ * Description: 依照設定檔選擇 ConnectionProvider 的實現
+ * 				jdbc.properties 中的 provider 可以是:
+ * 				driver(預設, DriverManager), 或由 ConnectionProviderFactory 提供的名稱,
+ * 				例如 p09_util 的 c3p0, dbcp, druid, bag(p09_util.BagDataSource)
+ */
+public class ConnectionProviders {
+
+	private ConnectionProviders() {
+	}
+
+	/**
+	 * 讀取設定檔(例如 jdbc.properties)並創建對應的 ConnectionProvider
+	 */
+	public static ConnectionProvider fromConfig(String name) throws Exception {
+		return create(loadProperties(name));
+	}
+
+	/**
+	 * 依照 provider 屬性創建對應的 ConnectionProvider
+	 */
+	public static ConnectionProvider create(Properties pros) throws Exception {
+		String provider = pros.getProperty("provider", "driver").trim();
+		if ("driver".equals(provider))
+			return new DriverManagerConnectionProvider(pros.getProperty("driverClass"), pros.getProperty("url"),
+					pros.getProperty("user"), pros.getProperty("password"));
+		for (ConnectionProviderFactory factory : ServiceLoader.load(ConnectionProviderFactory.class)) {
+			if (factory.supports(provider))
+				return factory.create(provider, pros);
+		}
+		throw new IllegalArgumentException("不支持的 provider: " + provider);
+	}
+
+	/**
+	 * 透過系統類加載器讀取 src 下的設定檔
+	 */
+	public static Properties loadProperties(String name) throws IOException {
+		InputStream is = ClassLoader.getSystemClassLoader().getResourceAsStream(name);
+		if (is == null)
+			throw new IOException("找不到設定檔: " + name);
+		try {
+			Properties pros = new Properties();
+			pros.load(is);
+			return pros;
+		} finally {
+			is.close();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package p02_util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: DataSourceConnectionProvider.java
+ * PackageName: p02_util
+ * Description: 以 DataSource(資料庫連接池)獲取連接的 ConnectionProvider
+ */
+public class DataSourceConnectionProvider implements ConnectionProvider {
+
+	private final String name;
+
+	private final DataSource dataSource;
+
+	public DataSourceConnectionProvider(String name, DataSource dataSource) {
+		this.name = name;
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return dataSource.getConnection();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	@Override
+	public void close() {
+		// c3p0, DBCP, Druid 的連接池都有 close() 方法
+		if (dataSource instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) dataSource).close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
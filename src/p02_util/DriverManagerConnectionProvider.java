@@ -0,0 +1,39 @@
+package p02_util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * ClassName: DriverManagerConnectionProvider.java
+ * PackageName: p02_util
+ * Description: 使用 DriverManager 獲取連接的 ConnectionProvider
+ * 				驅動只在創建時加載一次, 每次 getConnection() 仍會建立一條新的物理連接.
+ */
+public class DriverManagerConnectionProvider implements ConnectionProvider {
+
+	private final String url;
+
+	private final String user;
+
+	private final String password;
+
+	public DriverManagerConnectionProvider(String driverClass, String url, String user, String password) throws ClassNotFoundException {
+		// 加載驅動(只需一次)
+		if (driverClass != null && !driverClass.isEmpty())
+			Class.forName(driverClass);
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return DriverManager.getConnection(url, user, password);
+	}
+
+	@Override
+	public String getName() {
+		return "driver";
+	}
+}
@@ -1,12 +1,9 @@
 package p02_util;
 
-import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Properties;
 
 /**
  * ClassName: JDBCUtils.java
@@ -17,24 +14,30 @@ public class JDBCUtils {
 	
 	/**
 	 * 獲取資料庫的連接
+	 * 設定檔只在第一次調用時讀取一次, 由 jdbc.properties 中的 provider 決定連接的來源.
 	 * */
 	public static Connection getConnection() throws Exception {
+		return ProviderHolder.PROVIDER.getConnection();
+	}
+	
+	/**
+	 * 獲取當前使用的 ConnectionProvider
+	 * */
+	public static ConnectionProvider getConnectionProvider() {
+		return ProviderHolder.PROVIDER;
+	}
+	
+	// 靜態內部類: 第一次使用時才讀取設定檔, 類加載由 JVM 保證執行緒安全.
+	private static class ProviderHolder {
+		private static final ConnectionProvider PROVIDER = load();
 		
-		// 1. 讀取設定檔案中的 4 個基本訊息
-		InputStream is = ClassLoader.getSystemClassLoader().getResourceAsStream("jdbc.properties"); //獲取系統類加載器再去讀取設定檔
-		Properties pros = new Properties();
-		pros.load(is);
-		String user = pros.getProperty("user");
-		String password = pros.getProperty("password");
-		String url = pros.getProperty("url");
-		String driverClass = pros.getProperty("driverClass");
-		
-		// 2. 加載驅動
-		Class.forName(driverClass);
-		
-		// 3. 獲取連接
-		Connection conn = DriverManager.getConnection(url, user, password);
-		return conn;
+		private static ConnectionProvider load() {
+			try {
+				return ConnectionProviders.fromConfig("jdbc.properties");
+			} catch (Exception e) {
+				throw new IllegalStateException("無法依照 jdbc.properties 創建 ConnectionProvider", e);
+			}
+		}
 	}
 	
 	/**
@@ -1,7 +1,10 @@
 package p04_bean;
 
+import java.beans.ConstructorProperties;
 import java.sql.Date;
 
+import p08_dao.Mapped;
+
 /**
  * ClassName: Customer.java
  * PackageName: com.atsimoncc3.bean
@@ -13,6 +16,7 @@ import java.sql.Date;
  * 表中的一條紀錄對應 java 類的一個對象
  * 表中的一個欄位對應 java 類的一個屬性
  */
+@Mapped
 public class Customer {
 	
 	private int id;
@@ -27,6 +31,7 @@ public class Customer {
 		super();
 	}
 	
+	@ConstructorProperties({ "id", "name", "email", "birth" })
 	public Customer(int id, String name, String email, Date birth) {
 		super();
 		this.id = id;
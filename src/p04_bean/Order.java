@@ -1,24 +1,33 @@
 package p04_bean;
 
+import java.beans.ConstructorProperties;
 import java.sql.Date;
 
+import p08_dao.Column;
+import p08_dao.Mapped;
+
 /**
  * ClassName: Order.java
  * PackageName: p04_bean
  * Description: 
  */
+@Mapped
 public class Order {
 	
+	@Column("order_id")
 	private int orderId;
 	
+	@Column("order_name")
 	private String orderName;
 	
+	@Column("order_date")
 	private Date orderDate;
 	
 	public Order() {
 		super();
 	}
 	
+	@ConstructorProperties({ "orderId", "orderName", "orderDate" })
 	public Order(int orderId, String orderName, Date orderDate) {
 		super();
 		this.orderId = orderId;
@@ -0,0 +1,214 @@
+package p05_blob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p08_dao.BulkLoader;
+import p08_dao.LoadReport;
+import p08_dao.RowSource;
+
+/**
+ * ClassName: BulkLoaderTest.java
+ * PackageName: p05_blob
+ * Description: 以內嵌的 H2 資料庫(記憶體模式, 需要 h2 的 jar)端到端測試 BulkLoader:
+ * 				CSV 來源經過 CSVREAD 寫入, Iterator 來源經過 BATCH 寫入, 以及從另一個 ResultSet 複製資料表, 並印出每秒行數.
+ * 				另外檢查日期時間類型寫成文字後的值, 不支援的類型與不合法的資料表, 欄位名稱被拒絕.
+ * 				-Dbench.rows 為 Iterator 來源的行數(預設 1000000)
+ */
+public class BulkLoaderTest {
+
+	private static final String URL = "jdbc:h2:mem:bulk;DB_CLOSE_DELAY=-1";
+
+	private Connection conn;
+
+	@BeforeEach
+	public void setUp() throws SQLException {
+		conn = DriverManager.getConnection(URL);
+		try (Statement st = conn.createStatement()) {
+			st.execute("CREATE TABLE goods(id INT PRIMARY KEY AUTO_INCREMENT, name VARCHAR(25))");
+			st.execute("CREATE TABLE goods_copy(id INT PRIMARY KEY, name VARCHAR(25))");
+		}
+	}
+
+	@AfterEach
+	public void tearDown() throws SQLException {
+		try (Statement st = conn.createStatement()) {
+			st.execute("DROP TABLE goods");
+			st.execute("DROP TABLE goods_copy");
+		}
+		JDBCUtils.closeResource(conn, null);
+	}
+
+	@Test
+	public void testCsv() throws Exception {
+		String csv = "name\n" + "name_1\n" + "\"a,\"\"b\"\"\"\n" + "\n" + "\"\"\n";
+		BulkLoader loader = new BulkLoader("goods", "name");
+		LoadReport report = loader.load(conn, RowSource.csv(new StringReader(csv), true));
+		System.out.println(report);
+		assertEquals(BulkLoader.Sink.CSVREAD, report.getSink());
+		assertEquals(3, report.getRows()); // 空行略過
+		assertEquals("a,\"b\"", name(2));
+		assertEquals("", name(3));
+	}
+
+	@Test
+	public void testMalformedCsv() throws Exception {
+		assertThrows(IOException.class, () -> RowSource.csv(new StringReader("\"a\"b\n"), false).next());
+		assertThrows(IOException.class, () -> RowSource.csv(new StringReader("a\"b\n"), false).next());
+		assertThrows(IOException.class, () -> RowSource.csv(new StringReader("\"a\n"), false).next());
+	}
+
+	@Test
+	public void testIterator() throws Exception {
+		int rows = Integer.getInteger("bench.rows", 1_000_000);
+		for (BulkLoader.Sink sink : new BulkLoader.Sink[] { BulkLoader.Sink.BATCH, BulkLoader.Sink.CSVREAD }) {
+			BulkLoader loader = new BulkLoader("goods", "name");
+			loader.setSink(sink);
+			LoadReport report = loader.load(conn, RowSource.of(names(rows)));
+			System.out.println(report);
+			assertEquals(rows, report.getRows());
+			assertEquals(rows, count("goods"));
+			try (Statement st = conn.createStatement()) {
+				st.execute("TRUNCATE TABLE goods");
+			}
+		}
+	}
+
+	@Test
+	public void testResultSet() throws Exception {
+		BulkLoader loader = new BulkLoader("goods", "name");
+		loader.load(conn, RowSource.of(names(100_000)));
+		// 來源使用另一條連接, 由生產者執行緒讀取
+		try (Connection source = DriverManager.getConnection(URL);
+				PreparedStatement ps = source.prepareStatement("SELECT id, name FROM goods");
+				ResultSet rs = ps.executeQuery()) {
+			LoadReport report = new BulkLoader("goods_copy", "id", "name").load(conn, RowSource.of(rs));
+			System.out.println(report);
+		}
+		assertEquals(100_000, count("goods_copy"));
+	}
+
+	// 讀取來源失敗時拋出 SQLException, BATCH 回滾已經寫入的行
+	@Test
+	public void testSourceFailure() throws Exception {
+		BulkLoader loader = new BulkLoader("goods", "name");
+		loader.setSink(BulkLoader.Sink.BATCH);
+		Iterator<Object[]> names = names(10_000);
+		int[] read = new int[1];
+		SQLException e = assertThrows(SQLException.class, () -> loader.load(conn, () -> {
+			if (++read[0] > 5_000)
+				throw new IllegalStateException("來源中斷");
+			return names.next();
+		}));
+		System.out.println(e);
+		assertEquals(0, count("goods"));
+	}
+
+	// java.util.Date, Calendar, java.time 與 java.sql 的日期時間經過 CSVREAD 寫入後都是同一個時間
+	@Test
+	public void testTemporal() throws Exception {
+		LocalDateTime time = LocalDateTime.of(2024, 2, 29, 13, 45, 30, 123_000_000);
+		Date date = Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		Object[] values = { date, calendar, time, date.toInstant(), time.atZone(ZoneId.systemDefault()), Timestamp.valueOf(time) };
+		try (Statement st = conn.createStatement()) {
+			st.execute("CREATE TABLE events(id INT PRIMARY KEY, happened_at TIMESTAMP, happened_on DATE)");
+		}
+		try {
+			Object[][] rows = new Object[values.length][];
+			for (int i = 0; i < values.length; i++)
+				rows[i] = new Object[] { i, values[i], time.toLocalDate() };
+			BulkLoader loader = new BulkLoader("events", "id", "happened_at", "happened_on");
+			loader.setSink(BulkLoader.Sink.CSVREAD);
+			loader.load(conn, RowSource.of(Arrays.asList(rows).iterator()));
+			try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT id, happened_at, happened_on FROM events ORDER BY id")) {
+				for (int i = 0; i < values.length; i++) {
+					rs.next();
+					assertEquals(time, rs.getTimestamp(2).toLocalDateTime(), values[i].getClass().getName());
+					assertEquals(time.toLocalDate(), rs.getDate(3).toLocalDate());
+				}
+			}
+			// 不支援的類型在寫入前拋出
+			BulkLoader unsupported = new BulkLoader("events", "id", "happened_at", "happened_on");
+			unsupported.setSink(BulkLoader.Sink.CSVREAD);
+			Iterator<Object[]> blob = Arrays.<Object[]> asList(new Object[] { 100, new byte[1], null }).iterator();
+			assertThrows(IllegalArgumentException.class, () -> unsupported.load(conn, RowSource.of(blob)));
+			Iterator<Object[]> object = Arrays.<Object[]> asList(new Object[] { 101, new Object(), null }).iterator();
+			assertThrows(IllegalArgumentException.class, () -> unsupported.load(conn, RowSource.of(object)));
+			assertEquals(values.length, count("events"));
+		} finally {
+			try (Statement st = conn.createStatement()) {
+				st.execute("DROP TABLE events");
+			}
+		}
+	}
+
+	// 資料表與欄位名稱會拼接到 SQL 中, 只接受識別字
+	@Test
+	public void testIdentifiers() {
+		new BulkLoader("goods", "name");
+		new BulkLoader("PUBLIC.goods", "\"name\"");
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader("goods; DROP TABLE goods_copy", "name"));
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader("goods(name) SELECT 1 --", "name"));
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader("a.b.c", "name"));
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader("goods", "name) VALUES(1); --"));
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader("goods", "a,b"));
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader("goods", "`na`me`"));
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader("goods"));
+	}
+
+	private static Iterator<Object[]> names(int rows) {
+		return new Iterator<Object[]>() {
+			private int i;
+
+			@Override
+			public boolean hasNext() {
+				return i < rows;
+			}
+
+			@Override
+			public Object[] next() {
+				return new Object[] { "name_" + ++i };
+			}
+		};
+	}
+
+	private long count(String table) throws SQLException {
+		try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT count(*) FROM " + table)) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+	private String name(int id) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT name FROM goods WHERE id = ?")) {
+			ps.setInt(1, id);
+			try (ResultSet rs = ps.executeQuery()) {
+				rs.next();
+				return rs.getString(1);
+			}
+		}
+	}
+}
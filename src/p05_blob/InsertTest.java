@@ -2,10 +2,21 @@ package p05_blob;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
 
 import org.junit.jupiter.api.Test;
 
+import p02_util.ConnectionProvider;
+import p02_util.ConnectionProviders;
 import p02_util.JDBCUtils;
+import p08_dao.BatchResult;
+import p08_dao.BulkLoader;
+import p08_dao.CustomerDAOImpl;
+import p08_dao.LoadReport;
+import p08_dao.RowSource;
 
 /**
  * ClassName: InsertTest.java
@@ -132,4 +143,82 @@ public class InsertTest {
 			JDBCUtils.closeResource(conn, ps);			
 		}
 	}
+	
+	/*
+	 * 批量插入的方式五: 使用 BaseDAO.updateBatch, 由 DAO 自己把 INSERT 改寫成多行的 VALUES(見 p08_dao.MultiRowInsert)
+	 * 1. 連接的 url 關閉 rewriteBatchedStatements, 比較 DAO 不改寫(每行送一次)與 DAO 改寫的花費
+	 * 2. 改寫後每條 SQL 的行數為 2 的次方, 估算的大小不超過 -Ddao.maxPacketBytes(預設 4MB)
+	 * 3. 不依賴 MySQL 驅動的參數, 其他驅動也有相同的效果
+	 */
+	@Test
+	public void InsertTest4() throws Exception {
+		Properties pros = ConnectionProviders.loadProperties("jdbc.properties");
+		pros.setProperty("provider", "driver");
+		pros.setProperty("url", pros.getProperty("url").replace("rewriteBatchedStatements=true", "rewriteBatchedStatements=false"));
+		ConnectionProvider provider = ConnectionProviders.create(pros);
+		CustomerDAOImpl dao = new CustomerDAOImpl();
+		String sql = "INSERT INTO goods(name) VALUES(?)";
+		List<Object[]> rows = new AbstractList<Object[]>() {
+			@Override
+			public Object[] get(int index) {
+				return new Object[] { "name_" + (index + 1) };
+			}
+
+			@Override
+			public int size() {
+				return 1000000;
+			}
+		};
+		for (boolean rewrite : new boolean[] { false, true }) {
+			Connection conn = null;
+			try {
+				conn = provider.getConnection();
+				dao.setRewriteBatch(rewrite);
+				BatchResult result = dao.updateBatch(conn, sql, rows);
+				System.out.println((rewrite ? "DAO 改寫" : "DAO 不改寫") + ", 1000000條花費時間: " + result.getElapsedMillis() + ", " + result);
+			} finally {
+				JDBCUtils.closeResource(conn, null);
+			}
+		}
+	}
+	
+	/*
+	 * 批量插入的方式六: 使用 BulkLoader, 不綁定參數, 以 LOAD DATA LOCAL INFILE 從記憶體中的資料流讀入
+	 * 1. 連接的 url 要加上 allowLoadLocalInfile=true, MySQL 伺服器也要開啟 local_infile(SET GLOBAL local_infile = 1)
+	 * 2. 沒有開啟時 BulkLoader 自動改用批次插入(報告中的 sink 為 BATCH)
+	 * 3. 產生資料的執行緒與寫入的執行緒之間是有界的佇列, 記憶體中只有幾千行
+	 */
+	@Test
+	public void InsertTest5() throws Exception {
+		Properties pros = ConnectionProviders.loadProperties("jdbc.properties");
+		pros.setProperty("provider", "driver");
+		String url = pros.getProperty("url");
+		pros.setProperty("url", url + (url.contains("?") ? "&" : "?") + "allowLoadLocalInfile=true");
+		ConnectionProvider provider = ConnectionProviders.create(pros);
+		for (BulkLoader.Sink sink : new BulkLoader.Sink[] { BulkLoader.Sink.AUTO, BulkLoader.Sink.BATCH }) {
+			Connection conn = null;
+			try {
+				conn = provider.getConnection();
+				BulkLoader loader = new BulkLoader("goods", "name");
+				loader.setSink(sink);
+				Iterator<Object[]> rows = new Iterator<Object[]>() {
+					private int i;
+
+					@Override
+					public boolean hasNext() {
+						return i < 1000000;
+					}
+
+					@Override
+					public Object[] next() {
+						return new Object[] { "name_" + ++i };
+					}
+				};
+				LoadReport report = loader.load(conn, RowSource.of(rows));
+				System.out.println("1000000條花費時間: " + report.getElapsedMillis() + ", " + report);
+			} finally {
+				JDBCUtils.closeResource(conn, null);
+			}
+		}
+	}
 }
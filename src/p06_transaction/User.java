@@ -1,10 +1,13 @@
 package p06_transaction;
 
+import p08_dao.Mapped;
+
 /**
  * ClassName: User.java
  * PackageName: p06_transaction
  * Description: 
  */
+@Mapped
 public class User {
 	private String user;
 	private String password;
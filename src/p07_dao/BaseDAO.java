@@ -7,7 +7,10 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import p02_util.JDBCUtils;
 
@@ -18,6 +21,14 @@ import p02_util.JDBCUtils;
  * 				DAO: data(base) access object
  */
 public abstract class BaseDAO { // 不用於造對象, 用於提供通用方法, 針對具體表再提供具體的 DAO, 所以用 abstract 修飾.
+	
+	// 執行計畫的快取: 鍵為 類名 + SQL, 值為結果集每個 column 對應的屬性(已經 setAccessible).
+	// 同一個 SQL 的 column 別名不會改變, 所以第二次以後不必再讀取 ResultSetMetaData 與 getDeclaredField.
+	// SELECT * 的 column 會隨著資料表改變, 不快取. 最多快取 -Ddao.planCacheSize 個(預設 1024), 拼接參數的 SQL 不會讓快取無限增長.
+	private static final int MAX_PLANS = Integer.getInteger("dao.planCacheSize", 1024);
+	
+	private static final Map<String, Field[]> PLANS = new ConcurrentHashMap<>();
+	
 	// 通用的增刪改操作 --- version 2.0 (考慮交易)
 	public int update(Connection conn, String sql, Object ...args) { // sql 中佔位符的個數與可變形參的長度相同
 		PreparedStatement ps = null;
@@ -53,29 +64,15 @@ public abstract class BaseDAO { // 不用於造對象, 用於提供通用方法,
 			
 			// 3. 執行並返回結果集
 			rs = ps.executeQuery();
-			// 獲取結果集的元數據: ResultSetMetaData
-			ResultSetMetaData rsmd = rs.getMetaData();
-			// 透過 ResultSetMetaData 獲取結果集的 column 數
-			int columnCount = rsmd.getColumnCount();
+			// 取得執行計畫: 每個 column 對應的屬性(第一次才讀取 ResultSetMetaData)
+			Field[] fields = getPlan(clazz, sql, rs);
 			// 4. 處理結果集
 			if(rs.next()) {
-				// 建議先用無參建構子造對象, 再用 setter.
-				T t = clazz.getDeclaredConstructor().newInstance();
-				// T t = clazz.newInstance(); // 已過時			
-				// 處理結果集一條數據中的每一個 column
-				for (int i = 0; i < columnCount; i++) {
-					// 獲取 column 值
-					Object columnValue = rs.getObject(i + 1);
-					
-					// 獲取 column 別名
-					String columnLabel = rsmd.getColumnLabel(i + 1);
-					
-					// 透過反射, 將 t 對象指定名 columnName 的屬性賦值為指定的值 columnValue
-					Field field = clazz.getDeclaredField(columnLabel);
-					field.setAccessible(true);
-					field.set(t, columnValue);
+				try {
+					return newInstance(clazz, rs, fields);
+				} catch (SQLException | IllegalArgumentException e) {
+					return newInstance(clazz, rs, refreshPlan(clazz, sql, rs, fields, e));
 				}
-				return t;
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -100,30 +97,19 @@ public abstract class BaseDAO { // 不用於造對象, 用於提供通用方法,
 			
 			// 3. 執行並返回結果集
 			rs = ps.executeQuery();
-			// 獲取結果集的元數據: ResultSetMetaData
-			ResultSetMetaData rsmd = rs.getMetaData();
-			// 透過 ResultSetMetaData 獲取結果集的 column 數
-			int columnCount = rsmd.getColumnCount();
+			// 取得執行計畫: 每個 column 對應的屬性(第一次才讀取 ResultSetMetaData)
+			Field[] fields = getPlan(clazz, sql, rs);
 			
 			// 創建集合對象
 			ArrayList<T> list = new ArrayList<T>();
 			// 4. 處理結果集
 			while(rs.next()) {
-				// 建議先用無參建構子造對象, 再用 setter.
-				T t = clazz.getDeclaredConstructor().newInstance();
-				// T t = clazz.newInstance(); // 已過時			
-				// 處理結果集一條數據中的每一個 column: 給 t 對象指定的屬性賦值的過程
-				for (int i = 0; i < columnCount; i++) {
-					// 獲取 column 值
-					Object columnValue = rs.getObject(i + 1);
-					
-					// 獲取 column 別名
-					String columnLabel = rsmd.getColumnLabel(i + 1);
-					
-					// 透過反射, 將 t 對象指定名 columnName 的屬性賦值為指定的值 columnValue
-					Field field = clazz.getDeclaredField(columnLabel);
-					field.setAccessible(true);
-					field.set(t, columnValue);
+				T t;
+				try {
+					t = newInstance(clazz, rs, fields);
+				} catch (SQLException | IllegalArgumentException e) {
+					fields = refreshPlan(clazz, sql, rs, fields, e);
+					t = newInstance(clazz, rs, fields);
 				}
 				list.add(t);
 			}
@@ -137,6 +123,59 @@ public abstract class BaseDAO { // 不用於造對象, 用於提供通用方法,
 		return null;
 	}
 	
+	// 取得 sql 的執行計畫, 沒有快取時由結果集的元數據建立
+	private static Field[] getPlan(Class<?> clazz, String sql, ResultSet rs) throws Exception {
+		String key = clazz.getName() + "|" + sql;
+		Field[] fields = PLANS.get(key);
+		if(fields == null) {
+			fields = newPlan(clazz, rs);
+			if(sql.indexOf('*') < 0 && PLANS.size() < MAX_PLANS) {
+				PLANS.put(key, fields);
+			}
+		}
+		return fields;
+	}
+	
+	// 由結果集的元數據建立執行計畫
+	private static Field[] newPlan(Class<?> clazz, ResultSet rs) throws Exception {
+		// 獲取結果集的元數據: ResultSetMetaData
+		ResultSetMetaData rsmd = rs.getMetaData();
+		// 透過 ResultSetMetaData 獲取結果集的 column 數
+		int columnCount = rsmd.getColumnCount();
+		Field[] fields = new Field[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			// 獲取 column 別名
+			String columnLabel = rsmd.getColumnLabel(i + 1);
+			// 透過反射找到名為 columnLabel 的屬性
+			fields[i] = clazz.getDeclaredField(columnLabel);
+			fields[i].setAccessible(true);
+		}
+		return fields;
+	}
+	
+	// 快取的計畫賦值失敗時(例如資料表的 column 類型改變), 重新讀取元數據建立計畫並取代快取; 計畫沒有改變時拋出原本的異常.
+	private static <T> Field[] refreshPlan(Class<T> clazz, String sql, ResultSet rs, Field[] fields, Exception e) throws Exception {
+		Field[] fresh = newPlan(clazz, rs);
+		if (Arrays.equals(fresh, fields)) {
+			throw e; // 計畫沒有改變, 是資料本身的問題
+		}
+		// 只取代已經快取的計畫
+		PLANS.replace(clazz.getName() + "|" + sql, fresh);
+		return fresh;
+	}
+	
+	// 以執行計畫將結果集目前的一條數據轉換成對象
+	private static <T> T newInstance(Class<T> clazz, ResultSet rs, Field[] fields) throws Exception {
+		// 建議先用無參建構子造對象, 再用 setter.
+		T t = clazz.getDeclaredConstructor().newInstance();
+		// 處理結果集一條數據中的每一個 column: 給 t 對象指定的屬性賦值的過程
+		for (int i = 0; i < fields.length; i++) {
+			// 獲取 column 值並賦值給對應的屬性
+			fields[i].set(t, rs.getObject(i + 1));
+		}
+		return t;
+	}
+	
 	// 用於查詢特殊值的通用方法
 	public <E> E getValue(Connection conn, String sql, Object ...args) {
 		PreparedStatement ps = null;
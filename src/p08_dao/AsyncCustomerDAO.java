@@ -0,0 +1,79 @@
+package p08_dao;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import p04_bean.Customer;
+
+/**
+ * ClassName: AsyncCustomerDAO.java
+ * PackageName: p08_dao
+ * Description: 以 ExecutorService 執行 CustomerDAOImpl 的外觀(facade)
+ * 				每個任務自己向 DataSource 借出連接, 執行完畢後歸還, 結果以 CompletableFuture 返回.
+ * 				搭配 newVirtualThreadExecutor() 與 p09_util.SemaphoreDataSource 時,
+ * 				每個請求一條虛擬執行緒, 等待連接與等待資料庫回應都不佔用平台執行緒.
+ */
+public class AsyncCustomerDAO {
+
+	private final CustomerDAO dao = new CustomerDAOImpl();
+
+	private final DataSource source;
+
+	private final ExecutorService executor;
+
+	public AsyncCustomerDAO(DataSource source, ExecutorService executor) {
+		this.source = source;
+		this.executor = executor;
+	}
+
+	public CompletableFuture<Customer> getCustomerById(int id) {
+		return submit(conn -> dao.getCustomerById(conn, id));
+	}
+
+	public CompletableFuture<Void> update(Customer cust) {
+		return submit(conn -> {
+			dao.update(conn, cust);
+			return null;
+		});
+	}
+
+	/**
+	 * 在 executor 中借出連接並執行任務
+	 */
+	public <R> CompletableFuture<R> submit(ConnectionTask<R> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try (Connection conn = source.getConnection()) {
+				return task.execute(conn);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * 使用連接的任務
+	 */
+	@FunctionalInterface
+	public interface ConnectionTask<R> {
+		R execute(Connection conn) throws Exception;
+	}
+
+	/**
+	 * 每個任務一條虛擬執行緒的 ExecutorService(Java 21 以上);
+	 * 在較舊的 JDK 上退回固定大小的平台執行緒池.
+	 */
+	public static ExecutorService newVirtualThreadExecutor(int fallbackThreads) {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(fallbackThreads);
+		}
+	}
+}
@@ -1,15 +1,22 @@
 package p08_dao;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 import p02_util.JDBCUtils;
 
@@ -39,6 +46,74 @@ public abstract class BaseDAO<T> { // 不用於造對象, 用於提供通用方
 		clazz = (Class<T>) typeArguments[0]; // 泛型的第一個參數
 	}
 	
+	// getForList 讀到這麼多行以後, 其餘的行改為管線化的平行轉換(見 PipelinedRowReader), 0 表示不使用.
+	private int parallelThreshold = Integer.getInteger("dao.parallelThreshold", 100_000);
+	
+	// 管線化轉換時每個批次的行數
+	private int parallelBatchSize = Integer.getInteger("dao.parallelBatchSize", 1024);
+	
+	// 管線化轉換時是否保持結果集的順序
+	private boolean keepOrder = true;
+	
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+	
+	public void setParallelBatchSize(int parallelBatchSize) {
+		this.parallelBatchSize = parallelBatchSize;
+	}
+	
+	public void setKeepOrder(boolean keepOrder) {
+		this.keepOrder = keepOrder;
+	}
+	
+	// updateBatch 第一批的行數, 自動調整時的下限與上限
+	private int batchSize = Integer.getInteger("dao.batchSize", 500);
+	
+	private int minBatchSize = Integer.getInteger("dao.batchMinSize", 50);
+	
+	private int maxBatchSize = Integer.getInteger("dao.batchMaxSize", 10_000);
+	
+	// updateBatch 是否依照量測到的每秒行數調整批次大小(見 BatchSizer), false 時固定為 batchSize
+	private boolean adaptiveBatch = Boolean.parseBoolean(System.getProperty("dao.batchAdaptive", "true"));
+	
+	// 自動提交的連接在 updateBatch 中每這麼多行提交一次, 0 表示全部執行完才提交
+	private int batchCommitRows = Integer.getInteger("dao.batchCommitRows", 50_000);
+	
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	
+	public void setAdaptiveBatch(boolean adaptiveBatch) {
+		this.adaptiveBatch = adaptiveBatch;
+	}
+	
+	public void setBatchCommitRows(int batchCommitRows) {
+		this.batchCommitRows = batchCommitRows;
+	}
+	
+	// updateBatch 是否把 INSERT ... VALUES(?) 改寫成多行的 VALUES(見 MultiRowInsert), 不依賴驅動的 rewriteBatchedStatements.
+	// 預設關閉: 改寫後無法取得每一行的更新數, 需要時以 -Ddao.rewriteBatch=true 或 setRewriteBatch 開啟.
+	private boolean rewriteBatch = Boolean.parseBoolean(System.getProperty("dao.rewriteBatch", "false"));
+	
+	// 改寫後一條 SQL 估算的大小上限, 應小於資料庫的 max_allowed_packet
+	private long maxPacketBytes = Long.getLong("dao.maxPacketBytes", 4L * 1024 * 1024);
+	
+	// 改寫後一條 SQL 最多的行數
+	private int maxRowsPerStatement = Integer.getInteger("dao.maxRowsPerStatement", 1024);
+	
+	public void setRewriteBatch(boolean rewriteBatch) {
+		this.rewriteBatch = rewriteBatch;
+	}
+	
+	public void setMaxPacketBytes(long maxPacketBytes) {
+		this.maxPacketBytes = maxPacketBytes;
+	}
+	
+	public void setMaxRowsPerStatement(int maxRowsPerStatement) {
+		this.maxRowsPerStatement = maxRowsPerStatement;
+	}
+	
 	// 通用的增刪改操作 --- version 2.0 (考慮交易)
 	public int update(Connection conn, String sql, Object ...args) { // sql 中佔位符的個數與可變形參的長度相同
 		PreparedStatement ps = null;
@@ -57,6 +132,251 @@ public abstract class BaseDAO<T> { // 不用於造對象, 用於提供通用方
 		return 0;
 	}
 	
+	// 批次的增刪改操作, rows 的每個元素為一行的佔位符參數(與 update 的 args 相同), 累積到批次大小時 executeBatch.
+	// 連接為自動提交時暫時關閉自動提交, 每 batchCommitRows 行提交一次, 結束後恢復; 已經在交易中時由調用者提交.
+	// 一批中有失敗的行時, 逐行重新執行沒有成功的行, 以取得每一行的更新數或錯誤, 同一批其他的行不受影響.
+	// 其他的錯誤(例如連接中斷)回滾還沒有提交的行後拋出, 已經提交的行保留.
+	// 開啟 rewriteBatch 時 INSERT 的一批改寫成多行的 VALUES 執行, 總更新數等於行數時每一行的更新數為 1;
+	// 不相等時(例如 INSERT IGNORE, ON DUPLICATE KEY UPDATE)這些行為 SUCCESS_NO_INFO, 之後的行不再改寫.
+	public BatchResult updateBatch(Connection conn, String sql, Iterable<Object[]> rows) throws SQLException {
+		BatchResult result = new BatchResult();
+		BatchSizer sizer = new BatchSizer(batchSize, minBatchSize, maxBatchSize, adaptiveBatch);
+		List<Object[]> pending = new ArrayList<Object[]>(); // 這一批的參數, 重新執行失敗的行時使用
+		MultiRowInsert insert = rewriteBatch ? MultiRowInsert.of(sql) : null;
+		Map<Integer, PreparedStatement> shapes = new HashMap<Integer, PreparedStatement>(); // 改寫後每種行數的 PreparedStatement
+		boolean autoCommit = conn.getAutoCommit();
+		long start = System.currentTimeMillis();
+		PreparedStatement ps = null;
+		try {
+			if(autoCommit)
+				conn.setAutoCommit(false);
+			ps = conn.prepareStatement(sql);
+			int uncommitted = 0;
+			for(Object[] args : rows) {
+				if(insert == null) {
+					for(int i = 0; i < args.length; i++) {
+						ps.setObject(i + 1, args[i]);
+					}
+					ps.addBatch();
+				}
+				pending.add(args);
+				if(pending.size() >= sizer.size()) {
+					uncommitted += pending.size();
+					if(insert == null)
+						executeBatch(ps, pending, result, sizer);
+					else if(!executeRewritten(conn, insert, shapes, ps, pending, result, sizer))
+						insert = null; // 改用一般的批次, 取得每一行的更新數
+					if(autoCommit && batchCommitRows > 0 && uncommitted >= batchCommitRows) {
+						conn.commit();
+						uncommitted = 0;
+					}
+				}
+			}
+			if(!pending.isEmpty()) {
+				if(insert == null)
+					executeBatch(ps, pending, result, sizer);
+				else
+					executeRewritten(conn, insert, shapes, ps, pending, result, sizer);
+			}
+			if(autoCommit)
+				conn.commit();
+		} catch (SQLException | RuntimeException e) {
+			if(autoCommit) {
+				try {
+					conn.rollback();
+				} catch (SQLException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			throw e;
+		} finally {
+			if(autoCommit) {
+				try {
+					conn.setAutoCommit(true);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+			for(PreparedStatement shape : shapes.values()) {
+				JDBCUtils.closeResource(null, shape);
+			}
+			JDBCUtils.closeResource(null, ps);
+			result.finish(System.currentTimeMillis() - start);
+		}
+		return result;
+	}
+	
+	// 執行一批並記錄每一行的更新數
+	private static void executeBatch(PreparedStatement ps, List<Object[]> pending, BatchResult result, BatchSizer sizer) throws SQLException {
+		int size = pending.size();
+		result.batch(size);
+		long start = System.nanoTime();
+		int[] counts;
+		try {
+			counts = ps.executeBatch();
+			sizer.record(size, System.nanoTime() - start);
+		} catch (BatchUpdateException e) {
+			// 驅動可能在失敗的行停止(counts 較短), 也可能繼續執行並標記 EXECUTE_FAILED;
+			// MySQL 的 rewriteBatchedStatements 把多行合成一條 SQL, 失敗時整條都標記 EXECUTE_FAILED.
+			counts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+		}
+		ps.clearBatch();
+		for(int row = 0; row < size; row++) {
+			int count = row < counts.length ? counts[row] : Statement.EXECUTE_FAILED;
+			if(count != Statement.EXECUTE_FAILED) {
+				result.add(count);
+				continue;
+			}
+			executeRow(ps, pending.get(row), result);
+		}
+		pending.clear();
+	}
+	
+	// 以 ps(原本的單行 SQL)單獨執行一行, 記錄更新數或錯誤
+	private static void executeRow(PreparedStatement ps, Object[] args, BatchResult result) {
+		try {
+			for(int i = 0; i < args.length; i++) {
+				ps.setObject(i + 1, args[i]);
+			}
+			result.add(ps.executeUpdate());
+		} catch (SQLException e) {
+			result.fail(e);
+		}
+	}
+	
+	// 把一批改寫成幾條多行的 INSERT 執行(行數見 MultiRowInsert.nextRows), 總更新數與行數不同時返回 false.
+	// 一條 SQL 是一個整體, 違反約束或資料錯誤(SQLState 23, 22)時沒有任何一行被插入, 改為逐行執行這些行; 其他錯誤直接拋出.
+	private boolean executeRewritten(Connection conn, MultiRowInsert insert, Map<Integer, PreparedStatement> shapes, PreparedStatement single,
+			List<Object[]> pending, BatchResult result, BatchSizer sizer) throws SQLException {
+		int size = pending.size();
+		result.batch(size);
+		long start = System.nanoTime();
+		boolean failed = false;
+		boolean exact = true;
+		for(int from = 0; from < size;) {
+			int rows = insert.nextRows(pending, from, maxRowsPerStatement, maxPacketBytes);
+			PreparedStatement ps = shapes.get(rows);
+			if(ps == null) {
+				ps = conn.prepareStatement(insert.sql(rows));
+				shapes.put(rows, ps);
+			}
+			int index = 1;
+			for(int row = from; row < from + rows; row++) {
+				for(Object arg : pending.get(row)) {
+					ps.setObject(index++, arg);
+				}
+			}
+			try {
+				int count = ps.executeUpdate();
+				if(count != rows)
+					exact = false; // 已經執行, 不能重新執行; 無法得知每一行的更新數
+				for(int row = 0; row < rows; row++) {
+					result.add(count == rows ? 1 : Statement.SUCCESS_NO_INFO);
+				}
+			} catch (SQLException e) {
+				String state = e.getSQLState();
+				if(state == null || !(state.startsWith("23") || state.startsWith("22")))
+					throw e;
+				failed = true;
+				for(int row = from; row < from + rows; row++) {
+					executeRow(single, pending.get(row), result);
+				}
+			}
+			from += rows;
+		}
+		if(!failed)
+			sizer.record(size, System.nanoTime() - start);
+		pending.clear();
+		return exact;
+	}
+	
+	// 批次插入對象並取回自增主鍵: columns 為佔位符依序對應的欄位(與 updateBean 相同), 每一批 executeBatch 後讀取 getGeneratedKeys,
+	// 依照插入的順序記錄每個對象的主鍵, 全部成功後才以 keySetter 寫回對象. 批次大小與 updateBatch 相同(見 BatchSizer).
+	// 自動提交的連接在一個交易中全部插入, 失敗時回滾並拋出, 對象的主鍵不會被修改; 已經在交易中時由調用者提交.
+	public int insertAll(Connection conn, String sql, Collection<? extends T> beans, ObjLongConsumer<? super T> keySetter, String ...columns) throws SQLException {
+		ParameterBinder<T> binder = ParameterBinders.of(clazz, columns);
+		BatchSizer sizer = new BatchSizer(batchSize, minBatchSize, maxBatchSize, adaptiveBatch);
+		long[] keys = new long[beans.size()];
+		boolean autoCommit = conn.getAutoCommit();
+		PreparedStatement ps = null;
+		try {
+			if(autoCommit)
+				conn.setAutoCommit(false);
+			ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			int added = 0;
+			int flushed = 0;
+			for(T bean : beans) {
+				binder.bind(ps, bean);
+				ps.addBatch();
+				if(++added - flushed >= sizer.size())
+					flushed = executeInsertBatch(ps, keys, flushed, added, sizer);
+			}
+			if(added > flushed)
+				executeInsertBatch(ps, keys, flushed, added, sizer);
+			if(added != keys.length)
+				throw new SQLException("插入時集合的大小改變: " + keys.length + " -> " + added);
+			if(autoCommit)
+				conn.commit();
+		} catch (SQLException | RuntimeException e) {
+			if(autoCommit) {
+				try {
+					conn.rollback();
+				} catch (SQLException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			throw e;
+		} finally {
+			if(autoCommit) {
+				try {
+					conn.setAutoCommit(true);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+			JDBCUtils.closeResource(null, ps);
+		}
+		int i = 0;
+		for(T bean : beans) {
+			keySetter.accept(bean, keys[i++]);
+		}
+		return keys.length;
+	}
+	
+	// 執行第 from 到 to(不含)個對象的一批, 把返回的自增主鍵依序放進 keys, 返回 to
+	private static int executeInsertBatch(PreparedStatement ps, long[] keys, int from, int to, BatchSizer sizer) throws SQLException {
+		long start = System.nanoTime();
+		ps.executeBatch();
+		sizer.record(to - from, System.nanoTime() - start);
+		int i = from;
+		try (ResultSet rs = ps.getGeneratedKeys()) {
+			while(rs.next() && i < to) {
+				keys[i++] = rs.getLong(1);
+			}
+		}
+		// 主鍵的數量不同時無法確定對應關係(例如 INSERT IGNORE 略過了某些行)
+		if(i != to)
+			throw new SQLException("返回的自增主鍵數(" + (i - from) + ")與插入的行數(" + (to - from) + ")不同");
+		ps.clearBatch();
+		return to;
+	}
+	
+	// 以對象的屬性填入佔位符的增刪改操作, columns 為佔位符依序對應的欄位(屬性名或 @Column 的欄位名)
+	public int updateBean(Connection conn, String sql, T t, String ...columns) {
+		PreparedStatement ps = null;
+		try {
+			ps = conn.prepareStatement(sql);
+			// 有 MapperProcessor 產生的 Binder 時不使用反射
+			ParameterBinders.of(clazz, columns).bind(ps, t);
+			return ps.executeUpdate();
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			JDBCUtils.closeResource(null, ps);
+		}
+		return 0;
+	}
+	
 	// 通用的查詢操作, 用於返回資料表中的一條紀錄(version 2.0, 考慮交易)
 	public T getInstance(Connection conn, String sql, Object ...args){
 		PreparedStatement ps = null;
@@ -67,18 +387,10 @@ public abstract class BaseDAO<T> { // 不用於造對象, 用於提供通用方
 				ps.setObject(i + 1, args[i]); 
 			}
 			rs = ps.executeQuery();
-			ResultSetMetaData rsmd = rs.getMetaData();
-			int columnCount = rsmd.getColumnCount();
+			// 同樣的類與 SQL 只讀取一次 ResultSetMetaData 並編譯 RowMapper, 之後直接使用快取的執行計畫
+			RowMapper<T> mapper = QueryPlans.rowMapper(clazz, sql, rs);
 			if(rs.next()) {
-				T t = clazz.getDeclaredConstructor().newInstance();
-				for (int i = 0; i < columnCount; i++) {
-					Object columnValue = rs.getObject(i + 1);
-					String columnLabel = rsmd.getColumnLabel(i + 1);
-					Field field = clazz.getDeclaredField(columnLabel);
-					field.setAccessible(true);
-					field.set(t, columnValue);
-				}
-				return t;
+				return mapper.mapRow(rs);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -98,19 +410,16 @@ public abstract class BaseDAO<T> { // 不用於造對象, 用於提供通用方
 				ps.setObject(i + 1, args[i]); // 注意索引
 			}
 			rs = ps.executeQuery();
-			ResultSetMetaData rsmd = rs.getMetaData();
-			int columnCount = rsmd.getColumnCount();
+			RowMapper<T> mapper = QueryPlans.rowMapper(clazz, sql, rs);
 			ArrayList<T> list = new ArrayList<T>();
 			while(rs.next()) {
-				T t = clazz.getDeclaredConstructor().newInstance();
-				for (int i = 0; i < columnCount; i++) {
-					Object columnValue = rs.getObject(i + 1);
-					String columnLabel = rsmd.getColumnLabel(i + 1);
-					Field field = clazz.getDeclaredField(columnLabel);
-					field.setAccessible(true);
-					field.set(t, columnValue);
+				list.add(mapper.mapRow(rs));
+				if(list.size() == parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1) {
+					// 行數很多: 本執行緒只讀取, 轉換交給 ForkJoinPool
+					new PipelinedRowReader<T>(rs, QueryPlans.splitMapper(clazz, sql, rs), ForkJoinPool.commonPool(),
+							parallelBatchSize, keepOrder).drain(list);
+					break;
 				}
-				list.add(t);
 			}
 			return list;
 		} catch (Exception e) {
@@ -121,6 +430,141 @@ public abstract class BaseDAO<T> { // 不用於造對象, 用於提供通用方
 		return null;
 	}
 	
+	// 投影查詢: 只查詢 type(record 或介面)需要的欄位, 結果直接創建成 type, 不創建完整的 T.
+	// fromWhere 為 SELECT 欄位之後的部分, 例如 "FROM customers WHERE name = ?", 查詢的欄位由 Projections.columns(type) 決定.
+	public <P> List<P> getProjections(Connection conn, Class<P> type, String fromWhere, Object ...args) {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT " + Projections.columns(type) + " " + fromWhere;
+			ps = conn.prepareStatement(sql);
+			for(int i = 0; i < args.length; i++) {
+				ps.setObject(i + 1, args[i]);
+			}
+			rs = ps.executeQuery();
+			RowMapper<P> mapper = QueryPlans.projection(type, sql, rs);
+			ArrayList<P> list = new ArrayList<P>();
+			while(rs.next()) {
+				list.add(mapper.mapRow(rs));
+			}
+			return list;
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			JDBCUtils.closeResource(null, ps, rs);
+		}
+		return null;
+	}
+
+	// 投影查詢一條紀錄, 參數與 getProjections 相同
+	public <P> P getProjection(Connection conn, Class<P> type, String fromWhere, Object ...args) {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT " + Projections.columns(type) + " " + fromWhere;
+			ps = conn.prepareStatement(sql);
+			for(int i = 0; i < args.length; i++) {
+				ps.setObject(i + 1, args[i]);
+			}
+			rs = ps.executeQuery();
+			RowMapper<P> mapper = QueryPlans.projection(type, sql, rs);
+			if(rs.next()) {
+				return mapper.mapRow(rs);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			JDBCUtils.closeResource(null, ps, rs);
+		}
+		return null;
+	}
+
+	// 通用的查詢操作, 逐行讀取並轉換, 不會把所有紀錄都放進記憶體.
+	// 返回的 Stream 必須關閉(例如 try-with-resources), 關閉時才釋放結果集與 PreparedStatement; 讀完最後一行時也會自動釋放.
+	// MySQL 的逐行讀取在 Stream 關閉前, 同一個連接不能執行其他 SQL.
+	public Stream<T> stream(Connection conn, String sql, Object ...args) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			ps.setFetchSize(streamingFetchSize(conn));
+			for(int i = 0; i < args.length; i++) {
+				ps.setObject(i + 1, args[i]);
+			}
+			ResultSet rs = ps.executeQuery();
+			RowMapper<T> mapper = QueryPlans.rowMapper(clazz, sql, rs);
+			return ResultSetSpliterator.stream(ps, rs, mapper);
+		} catch (SQLException | RuntimeException e) {
+			JDBCUtils.closeResource(null, ps);
+			throw e;
+		}
+	}
+	
+	// 鍵集(keyset)分頁: 以上一頁最後一行的鍵代替 OFFSET, 資料庫直接在索引上定位, 每一頁的花費與第幾頁無關.
+	// sql 的最後兩個佔位符依序為 afterKey 與行數, 例如 "... WHERE id > ? ORDER BY id LIMIT ?"; key 取出一行的鍵.
+	// 多查詢一行來判斷是否還有下一頁, 不需要另外 count.
+	public Page<T> getPage(Connection conn, String sql, ToLongFunction<T> key, long afterKey, int limit, Object ...args) throws SQLException {
+		// 多讀一行判斷是否還有下一頁, limit + 1 不能溢出
+		if (limit <= 0 || limit == Integer.MAX_VALUE)
+			throw new IllegalArgumentException("limit 必須在 1 ~ " + (Integer.MAX_VALUE - 1) + " 之間: " + limit);
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = conn.prepareStatement(sql);
+			for(int i = 0; i < args.length; i++) {
+				ps.setObject(i + 1, args[i]);
+			}
+			ps.setLong(args.length + 1, afterKey);
+			ps.setInt(args.length + 2, limit + 1);
+			rs = ps.executeQuery();
+			RowMapper<T> mapper = QueryPlans.rowMapper(clazz, sql, rs);
+			ArrayList<T> list = new ArrayList<T>(Math.min(limit, 10_000));
+			String nextToken = null;
+			while(rs.next()) {
+				if(list.size() == limit) {
+					nextToken = Page.token(key.applyAsLong(list.get(limit - 1)));
+					break;
+				}
+				list.add(mapper.mapRow(rs));
+			}
+			return new Page<T>(list, nextToken);
+		} finally {
+			JDBCUtils.closeResource(null, ps, rs);
+		}
+	}
+
+	// 以 getPage 逐頁讀取所有的紀錄, 記憶體中最多只有一頁; 參數與 getPage 相同, 第一頁從 firstKey 之後開始.
+	public PageIterator<T> iterate(Connection conn, String sql, ToLongFunction<T> key, long firstKey, int pageSize, Object ...args) {
+		return new PageIterator<T>(token -> getPage(conn, sql, key, Page.afterKey(token, firstKey), pageSize, args));
+	}
+
+	// 讓驅動逐行(或分批)從資料庫讀取的 fetchSize: MySQL 需要 Integer.MIN_VALUE 才會逐行讀取, 其他驅動每次讀取 1000 行.
+	static int streamingFetchSize(Connection conn) throws SQLException {
+		String driver = conn.getMetaData().getDriverName();
+		if (driver != null && driver.startsWith("MySQL"))
+			return Integer.MIN_VALUE;
+		return 1000;
+	}
+
+	// 通用的查詢操作, 把結果以欄位為單位存放在基本類型的陣列中(不建立 T 的對象), 用於分析大量的紀錄.
+	// 驅動逐行讀取, 記憶體中只有 ColumnarResult 本身.
+	public ColumnarResult getColumnar(Connection conn, String sql, Object ...args) {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(streamingFetchSize(conn));
+			for(int i = 0; i < args.length; i++) {
+				ps.setObject(i + 1, args[i]);
+			}
+			rs = ps.executeQuery();
+			return ColumnarResult.from(rs);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			JDBCUtils.closeResource(null, ps, rs);
+		}
+		return null;
+	}
+
 	// 用於查詢特殊值的通用方法
 	public <E> E getValue(Connection conn, String sql, Object ...args) {
 		PreparedStatement ps = null;
@@ -0,0 +1,150 @@
+package p08_dao;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ClassName: BatchResult.java
+ * PackageName: p08_dao
+ * Description: BaseDAO.updateBatch 的結果: 每一行的更新數存放在一個 int 陣列中(行號從 0 開始),
+ * 				失敗的行為 Statement.EXECUTE_FAILED, 驅動不回報行數時為 Statement.SUCCESS_NO_INFO;
+ * 				只有失敗的行另外記錄 SQLException.
+ */
+public final class BatchResult {
+
+	private int[] counts = new int[64];
+
+	private int rows;
+
+	private long updated;
+
+	private final List<Failure> failures = new ArrayList<>();
+
+	private int batches;
+
+	private int lastBatchSize;
+
+	private long elapsedMillis;
+
+	BatchResult() {
+	}
+
+	void add(int count) {
+		if (rows == counts.length)
+			counts = Arrays.copyOf(counts, rows * 2);
+		counts[rows++] = count;
+		if (count > 0)
+			updated += count;
+	}
+
+	void fail(SQLException cause) {
+		failures.add(new Failure(rows, cause));
+		add(Statement.EXECUTE_FAILED);
+	}
+
+	void batch(int size) {
+		batches++;
+		lastBatchSize = size;
+	}
+
+	void finish(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * 執行的行數
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * 第 row 行(從 0 開始)的更新數
+	 */
+	public int getUpdateCount(int row) {
+		if (row < 0 || row >= rows)
+			throw new IndexOutOfBoundsException("row: " + row + ", rows: " + rows);
+		return counts[row];
+	}
+
+	/**
+	 * 所有行的更新數
+	 */
+	public int[] getUpdateCounts() {
+		return Arrays.copyOf(counts, rows);
+	}
+
+	/**
+	 * 更新數的總和(不含失敗與 SUCCESS_NO_INFO 的行)
+	 */
+	public long getTotalUpdated() {
+		return updated;
+	}
+
+	public boolean hasFailures() {
+		return !failures.isEmpty();
+	}
+
+	/**
+	 * 失敗的行, 依行號排序
+	 */
+	public List<Failure> getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * executeBatch 的次數
+	 */
+	public int getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * 最後一次 executeBatch 的行數, 開啟自動調整時可看出調整的結果
+	 */
+	public int getLastBatchSize() {
+		return lastBatchSize;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResult [rows=" + rows + ", updated=" + updated + ", failures=" + failures.size() + ", batches="
+				+ batches + ", lastBatchSize=" + lastBatchSize + ", elapsedMillis=" + elapsedMillis + "]";
+	}
+
+	/**
+	 * 失敗的一行
+	 */
+	public static final class Failure {
+
+		private final int row;
+
+		private final SQLException cause;
+
+		Failure(int row, SQLException cause) {
+			this.row = row;
+			this.cause = cause;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		public SQLException getCause() {
+			return cause;
+		}
+
+		@Override
+		public String toString() {
+			return "Failure [row=" + row + ", cause=" + cause + "]";
+		}
+	}
+}
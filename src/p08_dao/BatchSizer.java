@@ -0,0 +1,62 @@
+package p08_dao;
+
+/**
+ * ClassName: BatchSizer.java
+ * PackageName: p08_dao
+ * Description: 依照量測到的每秒行數調整批次大小(爬山法)
+ * 				每次 executeBatch 後以這一批的每秒行數與上一批比較: 變快就繼續朝同一個方向調整,
+ * 				變慢超過 5% 就反向並縮小調整的倍數, 最後在最快的大小附近小幅擺動.
+ * 				網路延遲高時大批次較快, 資料庫忙碌或行很大時小批次較快, 不需要事先知道.
+ */
+class BatchSizer {
+
+	private static final double TOLERANCE = 0.95;
+
+	private static final double MIN_STEP = 1.1;
+
+	private final int minSize;
+
+	private final int maxSize;
+
+	private final boolean adaptive;
+
+	private double size;
+
+	private double step = 2.0;
+
+	private int direction = 1;
+
+	private double lastRate;
+
+	BatchSizer(int initialSize, int minSize, int maxSize, boolean adaptive) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.adaptive = adaptive;
+		this.size = Math.max(minSize, Math.min(maxSize, initialSize));
+	}
+
+	/**
+	 * 下一批的行數
+	 */
+	int size() {
+		return (int) size;
+	}
+
+	/**
+	 * 記錄一批執行 rows 行花費 nanos 納秒
+	 */
+	void record(int rows, long nanos) {
+		if (!adaptive || rows < size() || nanos <= 0) // 最後不滿的一批不列入
+			return;
+		double rate = rows * 1e9 / nanos;
+		if (lastRate > 0 && rate < lastRate * TOLERANCE) {
+			direction = -direction;
+			step = Math.max(MIN_STEP, Math.sqrt(step));
+		}
+		lastRate = rate;
+		double next = direction > 0 ? size * step : size / step;
+		if (next <= minSize || next >= maxSize) // 碰到邊界時反向
+			direction = -direction;
+		size = Math.max(minSize, Math.min(maxSize, next));
+	}
+}
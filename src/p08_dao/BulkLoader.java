@@ -0,0 +1,385 @@
+package p08_dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import p02_util.JDBCUtils;
+
+/**
+ * ClassName: BulkLoader.java
+ * PackageName: p08_dao
+ * Description: 大量匯入資料: 生產者執行緒從 RowSource(CSV, Iterator, 另一個 ResultSet)讀取, 經過有界的 RowPipeline,
+ * 				寫入目標資料庫最快的方式:
+ * 				LOAD_DATA: MySQL 的 LOAD DATA LOCAL INFILE, 資料以記憶體中的 InputStream 邊產生邊送出, 不寫檔案, 不綁定參數;
+ * 				           需要 Connector/J 8 與 url 的 allowLoadLocalInfile=true, 伺服器也要開啟 local_infile.
+ * 				CSVREAD:   H2(內嵌模式)的 CSVREAD, 資料先寫到暫存的 CSV 檔, 再以一條 INSERT ... SELECT 讀入.
+ * 				BATCH:     BaseDAO.updateBatch(多行 VALUES 的改寫與自動調整批次大小), 任何資料庫都可以使用.
+ * 				AUTO 依照資料庫選擇; LOAD_DATA 在送出任何一行之前被驅動或伺服器拒絕時, 改用 BATCH.
+ * 				LOAD_DATA 與 CSVREAD 把值寫成文字: 字串, 數字(BigDecimal 不使用科學記號), Boolean(1/0), Character, enum, UUID,
+ * 				以及日期時間: java.sql.Date/Time/Timestamp 與 LocalDate/LocalTime/LocalDateTime 寫成 ISO 格式(日期與時間以空格分隔),
+ * 				java.util.Date, Instant, OffsetDateTime, ZonedDateTime 換成 JVM 預設時區的時間, Calendar 換成它自己時區的時間.
+ * 				其他類型(包括 byte[])不支援, 在遇到時拋出 IllegalArgumentException, 這時請使用 BATCH.
+ * 				資料表名稱(可以是 schema.table)與欄位名稱必須是識別字(或以 ` 或 " 包住且不含引號, 反斜線, 逗號), 在創建時檢查.
+ * 				以系統屬性設定: -Dbulk.sink=auto|load_data|csvread|batch, -Dbulk.chunkRows=1000(每個區塊的行數), -Dbulk.queueChunks=8(佇列的區塊數)
+ */
+public class BulkLoader {
+
+	public enum Sink {
+		AUTO, LOAD_DATA, CSVREAD, BATCH
+	}
+
+	// 識別字, 或以 ` 或 " 包住的名稱(不含引號, 反斜線, 逗號)
+	private static final String IDENTIFIER = "(?:[\\p{L}_][\\p{L}\\p{N}_$]*|`[^`'\"\\\\,]+`|\"[^`'\"\\\\,]+\")";
+
+	private static final Pattern TABLE = Pattern.compile(IDENTIFIER + "(?:\\." + IDENTIFIER + ")?");
+
+	private static final Pattern COLUMN = Pattern.compile(IDENTIFIER);
+
+	// 日期與時間以空格分隔, MySQL 與 H2 都接受
+	private static final DateTimeFormatter DATE_TIME = new DateTimeFormatterBuilder()
+			.append(DateTimeFormatter.ISO_LOCAL_DATE).appendLiteral(' ').append(DateTimeFormatter.ISO_LOCAL_TIME).toFormatter();
+
+	private final String table;
+
+	private final String[] columns;
+
+	private Sink sink = Sink.valueOf(System.getProperty("bulk.sink", "auto").toUpperCase());
+
+	private int chunkRows = Integer.getInteger("bulk.chunkRows", 1000);
+
+	private int queueChunks = Integer.getInteger("bulk.queueChunks", 8);
+
+	// BATCH 使用的 DAO, updateBatch 與 T 無關; 匯入不需要每一行的更新數, 開啟多行 VALUES 的改寫
+	private final BaseDAO<Object> dao = new BaseDAO<Object>() {
+	};
+
+	{
+		dao.setRewriteBatch(true);
+	}
+
+	/**
+	 * 匯入到 table 的 columns, RowSource 每一行的值依序對應 columns.
+	 * table 與 columns 會直接拼接到 SQL 中, 不是識別字時拋出 IllegalArgumentException.
+	 */
+	public BulkLoader(String table, String... columns) {
+		if (columns.length == 0)
+			throw new IllegalArgumentException("至少需要一個欄位");
+		if (table == null || !TABLE.matcher(table).matches())
+			throw new IllegalArgumentException("不合法的資料表名稱: " + table);
+		for (String column : columns) {
+			if (column == null || !COLUMN.matcher(column).matches())
+				throw new IllegalArgumentException("不合法的欄位名稱: " + column);
+		}
+		this.table = table;
+		this.columns = columns.clone();
+	}
+
+	public void setSink(Sink sink) {
+		this.sink = sink;
+	}
+
+	public void setChunkRows(int chunkRows) {
+		this.chunkRows = chunkRows;
+	}
+
+	public void setQueueChunks(int queueChunks) {
+		this.queueChunks = queueChunks;
+	}
+
+	/**
+	 * BATCH 使用的 DAO, 可以調整批次大小, 是否改寫等設定
+	 */
+	public BaseDAO<Object> getBatchDAO() {
+		return dao;
+	}
+
+	/**
+	 * 把 source 的所有行寫入 conn 的資料表, source 在讀完或失敗後被關閉.
+	 * 寫入失敗時拋出 SQLException, 已經寫入的行是否保留由寫入方式決定(LOAD DATA 與 CSVREAD 是一條 SQL, BATCH 見 updateBatch).
+	 */
+	public LoadReport load(Connection conn, RowSource source) throws SQLException {
+		long start = System.currentTimeMillis();
+		Sink chosen = sink == Sink.AUTO ? detect(conn) : sink;
+		try (RowPipeline pipeline = new RowPipeline(source, chunkRows, queueChunks)) {
+			long skipped = 0;
+			if (chosen == Sink.LOAD_DATA) {
+				long loaded = loadData(conn, pipeline);
+				if (loaded < 0)
+					chosen = Sink.BATCH;
+				else
+					skipped = pipeline.getRowCount() - loaded;
+			}
+			if (chosen == Sink.CSVREAD)
+				csvRead(conn, pipeline);
+			if (chosen == Sink.BATCH)
+				skipped = batch(conn, pipeline);
+			return new LoadReport(chosen, pipeline.getRowCount(), skipped, System.currentTimeMillis() - start);
+		}
+	}
+
+	// MySQL 使用 LOAD DATA; 內嵌的 H2(不是 tcp:, ssl: 的遠端伺服器)可以讀取本機的檔案, 使用 CSVREAD; 其他使用 BATCH.
+	static Sink detect(Connection conn) throws SQLException {
+		DatabaseMetaData meta = conn.getMetaData();
+		String product = meta.getDatabaseProductName();
+		if ("MySQL".equalsIgnoreCase(product))
+			return Sink.LOAD_DATA;
+		String url = meta.getURL();
+		if ("H2".equalsIgnoreCase(product) && url != null && url.startsWith("jdbc:h2:")
+				&& !url.startsWith("jdbc:h2:tcp:") && !url.startsWith("jdbc:h2:ssl:"))
+			return Sink.CSVREAD;
+		return Sink.BATCH;
+	}
+
+	// 返回 LOAD DATA 寫入的行數; 驅動不支援或在讀取任何一行之前被拒絕時返回 -1(改用 BATCH)
+	private long loadData(Connection conn, RowPipeline pipeline) throws SQLException {
+		TsvInputStream in = new TsvInputStream(pipeline);
+		Statement st = conn.createStatement();
+		try {
+			try {
+				// 以反射調用 Connector/J 的 JdbcStatement.setLocalInfileInputStream, 編譯時不依賴 MySQL 驅動
+				Class<?> type = Class.forName("com.mysql.cj.jdbc.JdbcStatement");
+				type.getMethod("setLocalInfileInputStream", InputStream.class).invoke(st.unwrap(type), in);
+			} catch (ReflectiveOperationException | SQLException e) {
+				return -1;
+			}
+			long loaded;
+			try {
+				loaded = st.executeLargeUpdate("LOAD DATA LOCAL INFILE 'bulk-loader' INTO TABLE " + table
+						+ " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' ("
+						+ String.join(", ", columns) + ")");
+			} catch (SQLException e) {
+				if (in.failure != null)
+					throw in.failure;
+				if (!in.started) // 例如沒有 allowLoadLocalInfile=true, 或伺服器關閉了 local_infile
+					return -1;
+				throw e;
+			}
+			if (in.failure != null) // 驅動沒有傳出讀取的錯誤
+				throw in.failure;
+			return loaded;
+		} finally {
+			JDBCUtils.closeResource(null, st);
+		}
+	}
+
+	private void csvRead(Connection conn, RowPipeline pipeline) throws SQLException {
+		Path file = null;
+		Statement st = null;
+		try {
+			file = Files.createTempFile("bulk-loader", ".csv");
+			try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+				List<Object[]> chunk;
+				while ((chunk = pipeline.take()) != null) {
+					for (Object[] row : chunk)
+						writeCsv(out, row);
+				}
+			}
+			// 指定了欄位名時 CSV 的第一行就是資料; 沒有引號的空欄位為 NULL.
+			// SELECT * 依照位置對應, CSV 的欄位名使用 C1, C2, ..., 不必把(可能有引號的)欄位名放進字串
+			StringBuilder names = new StringBuilder();
+			for (int i = 1; i <= columns.length; i++)
+				names.append(i > 1 ? ",C" : "C").append(i);
+			st = conn.createStatement();
+			st.executeUpdate("INSERT INTO " + table + "(" + String.join(", ", columns) + ") SELECT * FROM CSVREAD('"
+					+ file.toAbsolutePath().toString().replace("'", "''") + "', '" + names + "', 'charset=UTF-8')");
+		} catch (IOException e) {
+			throw new SQLException("寫入暫存的 CSV 檔失敗", e);
+		} finally {
+			JDBCUtils.closeResource(null, st);
+			if (file != null) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void writeCsv(Writer out, Object[] row) throws IOException {
+		for (int i = 0; i < row.length; i++) {
+			if (i > 0)
+				out.write(',');
+			if (row[i] != null) {
+				out.write('"');
+				out.write(text(row[i]).replace("\"", "\"\""));
+				out.write('"');
+			}
+		}
+		out.write('\n');
+	}
+
+	// 返回寫入失敗的行數
+	private long batch(Connection conn, RowPipeline pipeline) throws SQLException {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(').append(String.join(", ", columns)).append(") VALUES(?");
+		for (int i = 1; i < columns.length; i++)
+			sql.append(", ?");
+		try {
+			BatchResult result = dao.updateBatch(conn, sql.append(')').toString(), pipeline.rows());
+			return result.getFailures().size();
+		} catch (UncheckedSQLException e) { // 讀取來源失敗
+			throw e.getCause();
+		}
+	}
+
+	// LOAD DATA 與 CSV 中欄位值的文字, 不支援的類型拋出 IllegalArgumentException
+	private static String text(Object value) {
+		if (value instanceof CharSequence || value instanceof Character || value instanceof Enum || value instanceof UUID)
+			return value.toString();
+		if (value instanceof BigDecimal)
+			return ((BigDecimal) value).toPlainString();
+		if (value instanceof Number)
+			return value.toString();
+		if (value instanceof Boolean)
+			return (Boolean) value ? "1" : "0";
+		// java.sql 的類型是 java.util.Date 的子類, 先判斷; 它們的 toString 就是 ISO 格式
+		if (value instanceof java.sql.Date || value instanceof Time)
+			return value.toString();
+		if (value instanceof Timestamp)
+			return ((Timestamp) value).toLocalDateTime().format(DATE_TIME);
+		if (value instanceof Date)
+			return LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault()).format(DATE_TIME);
+		if (value instanceof Calendar) {
+			Calendar calendar = (Calendar) value;
+			return LocalDateTime.ofInstant(calendar.toInstant(), calendar.getTimeZone().toZoneId()).format(DATE_TIME);
+		}
+		if (value instanceof LocalDate || value instanceof LocalTime)
+			return value.toString();
+		if (value instanceof LocalDateTime)
+			return ((LocalDateTime) value).format(DATE_TIME);
+		if (value instanceof Instant)
+			return LocalDateTime.ofInstant((Instant) value, ZoneId.systemDefault()).format(DATE_TIME);
+		if (value instanceof OffsetDateTime)
+			return LocalDateTime.ofInstant(((OffsetDateTime) value).toInstant(), ZoneId.systemDefault()).format(DATE_TIME);
+		if (value instanceof ZonedDateTime)
+			return LocalDateTime.ofInstant(((ZonedDateTime) value).toInstant(), ZoneId.systemDefault()).format(DATE_TIME);
+		throw new IllegalArgumentException("LOAD_DATA 與 CSVREAD 不支援 " + value.getClass().getTypeName() + " 的欄位, 請使用 BATCH");
+	}
+
+	// 把管線的區塊轉成 LOAD DATA 的文字(Tab 分隔, 反斜線跳脫, NULL 為 \N), 驅動讀取時才從管線取出下一個區塊
+	private static final class TsvInputStream extends InputStream {
+
+		private final RowPipeline pipeline;
+
+		private final StringBuilder text = new StringBuilder();
+
+		private byte[] buffer = new byte[0];
+
+		private int position;
+
+		private boolean eof;
+
+		// 驅動是否已經開始讀取
+		private boolean started;
+
+		// 讀取來源失敗的原因(驅動可能把 IOException 包裝成別的錯誤)
+		private SQLException failure;
+
+		TsvInputStream(RowPipeline pipeline) {
+			this.pipeline = pipeline;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			while (position == buffer.length) {
+				if (eof)
+					return -1;
+				started = true;
+				List<Object[]> chunk;
+				try {
+					chunk = pipeline.take();
+				} catch (SQLException e) {
+					failure = e;
+					throw new IOException(e);
+				}
+				if (chunk == null) {
+					eof = true;
+					return -1;
+				}
+				try {
+					encode(chunk);
+				} catch (IllegalArgumentException e) {
+					failure = new SQLException(e.getMessage(), e);
+					throw new IOException(e);
+				}
+			}
+			int n = Math.min(len, buffer.length - position);
+			System.arraycopy(buffer, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		private void encode(List<Object[]> chunk) {
+			text.setLength(0);
+			for (Object[] row : chunk) {
+				for (int i = 0; i < row.length; i++) {
+					if (i > 0)
+						text.append('\t');
+					if (row[i] == null) {
+						text.append("\\N");
+						continue;
+					}
+					String s = text(row[i]);
+					for (int j = 0; j < s.length(); j++) {
+						char c = s.charAt(j);
+						switch (c) {
+						case '\\':
+							text.append("\\\\");
+							break;
+						case '\t':
+							text.append("\\t");
+							break;
+						case '\n':
+							text.append("\\n");
+							break;
+						case '\r':
+							text.append("\\r");
+							break;
+						case '\0':
+							text.append("\\0");
+							break;
+						default:
+							text.append(c);
+						}
+					}
+				}
+				text.append('\n');
+			}
+			buffer = text.toString().getBytes(StandardCharsets.UTF_8);
+			position = 0;
+		}
+	}
+}
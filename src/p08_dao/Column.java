@@ -0,0 +1,22 @@
+package p08_dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * ClassName: Column.java
+ * PackageName: p08_dao
+ * Description: 屬性對應的資料表欄位名, 例如 Order 的 orderId 對應 order_id.
+ * 				SQL 中不必再寫 order_id orderId 這樣的別名, 欄位名與屬性名都可以對應到這個屬性.
+ * 				也可以標記在投影(見 Projections)的 record 元件或介面方法上.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface Column {
+
+	String value();
+}
@@ -0,0 +1,304 @@
+package p08_dao;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * ClassName: ColumnReader.java
+ * PackageName: p08_dao
+ * Description: 讀取一個欄位並賦值給屬性, 依照屬性的類型在編譯 RowMapper 時決定使用哪個子類.
+ * 				int 屬性以 getInt 讀取, 再以 (Object, int) 的 MethodHandle 賦值, 中間沒有 Integer 的裝箱與拆箱;
+ * 				String, Date 等屬性以 getString, getDate 讀取, 不經過 getObject 的類型判斷.
+ * 				其他類型(包括 Integer 等包裝類型)與原本相同使用 getObject.
+ * 				管線化的轉換(見 PipelinedRowReader)把 read 拆成兩步: 讀取執行緒以 get 讀出值, 轉換執行緒以 set 賦值.
+ */
+abstract class ColumnReader {
+
+	final int index;
+
+	final MethodHandle setter;
+
+	// (Object, Object)void, 基本類型的屬性在賦值時拆箱
+	private final MethodHandle boxedSetter;
+
+	// setter 為 null 時只能使用 get
+	ColumnReader(int index, MethodHandle setter, Class<?> type) {
+		this.index = index;
+		this.setter = setter == null ? null : setter.asType(MethodType.methodType(void.class, Object.class, type));
+		this.boxedSetter = setter == null ? null : setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+	}
+
+	/**
+	 * 讀取第 index 個欄位並賦值給 t 的屬性
+	 */
+	abstract void read(Object t, ResultSet rs) throws Throwable;
+
+	/**
+	 * 只讀取第 index 個欄位, 以與 read 相同的 getXxx 方法(基本類型會裝箱)
+	 */
+	abstract Object get(ResultSet rs) throws SQLException;
+
+	/**
+	 * 把 get 讀出的值賦值給 t 的屬性
+	 */
+	void set(Object t, Object value) throws Throwable {
+		boxedSetter.invokeExact(t, value);
+	}
+
+	/**
+	 * 依照屬性的類型創建 ColumnReader, setter 的類型為 (bean, 屬性類型)void.
+	 */
+	static ColumnReader of(int index, MethodHandle setter) {
+		return of(index, setter.type().parameterType(1), setter);
+	}
+
+	/**
+	 * 只讀取不賦值的 ColumnReader(例如讀出建構子的參數), 依照 type 選擇 getXxx 方法.
+	 */
+	static ColumnReader of(int index, Class<?> type) {
+		return of(index, type, null);
+	}
+
+	private static ColumnReader of(int index, Class<?> type, MethodHandle setter) {
+		if (type == int.class)
+			return new IntReader(index, setter);
+		if (type == long.class)
+			return new LongReader(index, setter);
+		if (type == double.class)
+			return new DoubleReader(index, setter);
+		if (type == float.class)
+			return new FloatReader(index, setter);
+		if (type == short.class)
+			return new ShortReader(index, setter);
+		if (type == byte.class)
+			return new ByteReader(index, setter);
+		if (type == boolean.class)
+			return new BooleanReader(index, setter);
+		if (type == String.class)
+			return new StringReader(index, setter);
+		if (type == Date.class)
+			return new DateReader(index, setter);
+		if (type == Timestamp.class)
+			return new TimestampReader(index, setter);
+		if (type == Time.class)
+			return new TimeReader(index, setter);
+		if (type == BigDecimal.class)
+			return new BigDecimalReader(index, setter);
+		return new ObjectReader(index, setter);
+	}
+
+	private static final class IntReader extends ColumnReader {
+		IntReader(int index, MethodHandle setter) {
+			super(index, setter, int.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getInt(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getInt(index);
+		}
+	}
+
+	private static final class LongReader extends ColumnReader {
+		LongReader(int index, MethodHandle setter) {
+			super(index, setter, long.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getLong(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getLong(index);
+		}
+	}
+
+	private static final class DoubleReader extends ColumnReader {
+		DoubleReader(int index, MethodHandle setter) {
+			super(index, setter, double.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getDouble(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getDouble(index);
+		}
+	}
+
+	private static final class FloatReader extends ColumnReader {
+		FloatReader(int index, MethodHandle setter) {
+			super(index, setter, float.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getFloat(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getFloat(index);
+		}
+	}
+
+	private static final class ShortReader extends ColumnReader {
+		ShortReader(int index, MethodHandle setter) {
+			super(index, setter, short.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getShort(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getShort(index);
+		}
+	}
+
+	private static final class ByteReader extends ColumnReader {
+		ByteReader(int index, MethodHandle setter) {
+			super(index, setter, byte.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getByte(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getByte(index);
+		}
+	}
+
+	private static final class BooleanReader extends ColumnReader {
+		BooleanReader(int index, MethodHandle setter) {
+			super(index, setter, boolean.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getBoolean(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getBoolean(index);
+		}
+	}
+
+	private static final class StringReader extends ColumnReader {
+		StringReader(int index, MethodHandle setter) {
+			super(index, setter, String.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getString(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getString(index);
+		}
+	}
+
+	private static final class DateReader extends ColumnReader {
+		DateReader(int index, MethodHandle setter) {
+			super(index, setter, Date.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getDate(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getDate(index);
+		}
+	}
+
+	private static final class TimestampReader extends ColumnReader {
+		TimestampReader(int index, MethodHandle setter) {
+			super(index, setter, Timestamp.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getTimestamp(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getTimestamp(index);
+		}
+	}
+
+	private static final class TimeReader extends ColumnReader {
+		TimeReader(int index, MethodHandle setter) {
+			super(index, setter, Time.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getTime(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getTime(index);
+		}
+	}
+
+	private static final class BigDecimalReader extends ColumnReader {
+		BigDecimalReader(int index, MethodHandle setter) {
+			super(index, setter, BigDecimal.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getBigDecimal(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getBigDecimal(index);
+		}
+	}
+
+	// 包裝類型(Integer 等)與其他類型: 與原本相同使用 getObject, 由 MethodHandle 轉型
+	private static final class ObjectReader extends ColumnReader {
+		ObjectReader(int index, MethodHandle setter) {
+			super(index, setter, Object.class);
+		}
+
+		@Override
+		void read(Object t, ResultSet rs) throws Throwable {
+			setter.invokeExact(t, rs.getObject(index));
+		}
+
+		@Override
+		Object get(ResultSet rs) throws SQLException {
+			return rs.getObject(index);
+		}
+	}
+}
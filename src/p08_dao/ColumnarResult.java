@@ -0,0 +1,856 @@
+package p08_dao;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ClassName: ColumnarResult.java
+ * PackageName: p08_dao
+ * Description: 以欄位為單位存放的查詢結果, 用於分析大量的資料.
+ * 				每個欄位是一個基本類型的陣列, 不為每一行建立對象:
+ * 				1. 整數欄位(INTEGER, SMALLINT, TINYINT)存為 int[], BIGINT 存為 long[], 浮點數存為 double[].
+ * 				   DECIMAL/NUMERIC 不轉成 double(會失去精確度): 精度不超過 18 位時存為固定小數位數(scale)的未縮放 long[],
+ * 				   否則存為 BigDecimal 的 Object[].
+ * 				2. DATE 欄位存為 epoch day 的 int[](1970-01-01 為 0).
+ * 				3. 字串欄位以字典編碼: 每個不同的字串只存一次, 每一行只存字典中的編號(int[]).
+ * 				   不同字串的個數超過行數的一半(例如 email 這類幾乎不重複的欄位)時, 字典省不了記憶體,
+ * 				   還要多一個 int[] 與讀取時的 HashMap, 改為直接存放 String[].
+ * 				4. 其他類型存為 Object[].
+ * 				5. 每個欄位另有一個 null 的位元圖, 為 null 的行在陣列中的值為 0.
+ * 				過濾方法返回符合條件的行號(由小到大), 可以再用 and() 取交集, 迴圈內只有陣列的讀取與比較.
+ */
+public class ColumnarResult {
+
+	private final Column[] columns;
+
+	private final Map<String, Column> byLabel = new HashMap<>();
+
+	private final int size;
+
+	private ColumnarResult(Column[] columns, int size) {
+		this.columns = columns;
+		this.size = size;
+		for (Column column : columns)
+			byLabel.put(column.label, column);
+	}
+
+	/**
+	 * 讀取結果集剩下的所有行(不關閉結果集)
+	 */
+	public static ColumnarResult from(ResultSet rs) throws SQLException {
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int columnCount = rsmd.getColumnCount();
+		Builder[] builders = new Builder[columnCount];
+		for (int i = 0; i < columnCount; i++)
+			builders[i] = Builder.of(rsmd, i + 1);
+		int row = 0;
+		while (rs.next()) {
+			for (Builder builder : builders)
+				builder.read(rs, row);
+			row++;
+		}
+		Column[] columns = new Column[columnCount];
+		for (int i = 0; i < columnCount; i++)
+			columns[i] = builders[i].build(row);
+		return new ColumnarResult(columns, row);
+	}
+
+	/**
+	 * 行數
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public Column getColumn(int index) {
+		return columns[index];
+	}
+
+	public Column getColumn(String label) {
+		Column column = byLabel.get(label);
+		if (column == null)
+			throw new IllegalArgumentException("沒有欄位: " + label);
+		return column;
+	}
+
+	public IntColumn getInts(String label) {
+		return (IntColumn) getColumn(label);
+	}
+
+	public LongColumn getLongs(String label) {
+		return (LongColumn) getColumn(label);
+	}
+
+	public DoubleColumn getDoubles(String label) {
+		return (DoubleColumn) getColumn(label);
+	}
+
+	public DecimalColumn getDecimals(String label) {
+		return (DecimalColumn) getColumn(label);
+	}
+
+	public DateColumn getDates(String label) {
+		return (DateColumn) getColumn(label);
+	}
+
+	public StringColumn getStrings(String label) {
+		return (StringColumn) getColumn(label);
+	}
+
+	/**
+	 * 所有的行號: 0 ~ size - 1
+	 */
+	public int[] all() {
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++)
+			rows[i] = i;
+		return rows;
+	}
+
+	/**
+	 * 兩個由小到大排列的行號的交集
+	 */
+	public static int[] and(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * 一個欄位: 名稱與 null 的位元圖
+	 */
+	public abstract static class Column {
+
+		final String label;
+
+		final long[] nulls;
+
+		final int size;
+
+		Column(String label, long[] nulls, int size) {
+			this.label = label;
+			this.nulls = nulls;
+			this.size = size;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		public boolean isNull(int row) {
+			return (nulls[row >>> 6] & (1L << row)) != 0;
+		}
+
+		/**
+		 * 以對象的形式返回一格(用於顯示, 分析時應使用各類型的方法)
+		 */
+		public abstract Object getObject(int row);
+	}
+
+	public static final class IntColumn extends Column {
+
+		private final int[] values;
+
+		IntColumn(String label, long[] nulls, int size, int[] values) {
+			super(label, nulls, size);
+			this.values = values;
+		}
+
+		public int get(int row) {
+			return values[row];
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return isNull(row) ? null : values[row];
+		}
+
+		/**
+		 * min <= 值 <= max 的行號
+		 */
+		public int[] between(int min, int max) {
+			int[] result = new int[size];
+			int n = 0;
+			for (int row = 0; row < size; row++) {
+				int v = values[row];
+				if (v >= min && v <= max && !isNull(row))
+					result[n++] = row;
+			}
+			return Arrays.copyOf(result, n);
+		}
+
+		/**
+		 * 指定的行中不為 null 的值的總和
+		 */
+		public long sum(int[] rows) {
+			long sum = 0;
+			for (int row : rows)
+				sum += values[row];
+			return sum;
+		}
+	}
+
+	public static final class LongColumn extends Column {
+
+		private final long[] values;
+
+		LongColumn(String label, long[] nulls, int size, long[] values) {
+			super(label, nulls, size);
+			this.values = values;
+		}
+
+		public long get(int row) {
+			return values[row];
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return isNull(row) ? null : values[row];
+		}
+
+		public int[] between(long min, long max) {
+			int[] result = new int[size];
+			int n = 0;
+			for (int row = 0; row < size; row++) {
+				long v = values[row];
+				if (v >= min && v <= max && !isNull(row))
+					result[n++] = row;
+			}
+			return Arrays.copyOf(result, n);
+		}
+
+		public long sum(int[] rows) {
+			long sum = 0;
+			for (int row : rows)
+				sum += values[row];
+			return sum;
+		}
+	}
+
+	public static final class DoubleColumn extends Column {
+
+		private final double[] values;
+
+		DoubleColumn(String label, long[] nulls, int size, double[] values) {
+			super(label, nulls, size);
+			this.values = values;
+		}
+
+		public double get(int row) {
+			return values[row];
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return isNull(row) ? null : values[row];
+		}
+
+		public int[] between(double min, double max) {
+			int[] result = new int[size];
+			int n = 0;
+			for (int row = 0; row < size; row++) {
+				double v = values[row];
+				if (v >= min && v <= max && !isNull(row))
+					result[n++] = row;
+			}
+			return Arrays.copyOf(result, n);
+		}
+
+		public double sum(int[] rows) {
+			double sum = 0;
+			for (int row : rows)
+				sum += values[row];
+			return sum;
+		}
+	}
+
+	/**
+	 * DECIMAL/NUMERIC 欄位, 值為小數位數固定為 scale 的未縮放整數, 例如 scale 為 2 時 12.34 存為 1234
+	 */
+	public static final class DecimalColumn extends Column {
+
+		private final long[] unscaled;
+
+		private final int scale;
+
+		DecimalColumn(String label, long[] nulls, int size, long[] unscaled, int scale) {
+			super(label, nulls, size);
+			this.unscaled = unscaled;
+			this.scale = scale;
+		}
+
+		public int getScale() {
+			return scale;
+		}
+
+		public long getUnscaled(int row) {
+			return unscaled[row];
+		}
+
+		public BigDecimal get(int row) {
+			return isNull(row) ? null : BigDecimal.valueOf(unscaled[row], scale);
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return get(row);
+		}
+
+		/**
+		 * min <= 值 <= max 的行號: 邊界先換成未縮放的整數, 迴圈內只比較 long.
+		 */
+		public int[] between(BigDecimal min, BigDecimal max) {
+			long lo = toUnscaled(min, RoundingMode.CEILING);
+			long hi = toUnscaled(max, RoundingMode.FLOOR);
+			int[] result = new int[size];
+			int n = 0;
+			for (int row = 0; row < size; row++) {
+				long v = unscaled[row];
+				if (v >= lo && v <= hi && !isNull(row))
+					result[n++] = row;
+			}
+			return Arrays.copyOf(result, n);
+		}
+
+		// 超出 long 範圍的邊界換成 long 的最小或最大值
+		private long toUnscaled(BigDecimal value, RoundingMode mode) {
+			BigInteger v = value.setScale(scale, mode).unscaledValue();
+			if (v.bitLength() < 64)
+				return v.longValue();
+			return v.signum() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+
+		/**
+		 * 指定的行中不為 null 的值的總和, 不失去精確度
+		 */
+		public BigDecimal sum(int[] rows) {
+			long sum = 0;
+			for (int i = 0; i < rows.length; i++) {
+				long v = unscaled[rows[i]];
+				long next = sum + v;
+				if (((sum ^ next) & (v ^ next)) < 0) // 溢出時改用 BigInteger 加總剩下的行
+					return BigDecimal.valueOf(sum, scale).add(sumExact(rows, i));
+				sum = next;
+			}
+			return BigDecimal.valueOf(sum, scale);
+		}
+
+		private BigDecimal sumExact(int[] rows, int from) {
+			BigInteger sum = BigInteger.ZERO;
+			for (int i = from; i < rows.length; i++)
+				sum = sum.add(BigInteger.valueOf(unscaled[rows[i]]));
+			return new BigDecimal(sum, scale);
+		}
+	}
+
+	/**
+	 * DATE 欄位, 值為 epoch day
+	 */
+	public static final class DateColumn extends Column {
+
+		private final int[] epochDays;
+
+		DateColumn(String label, long[] nulls, int size, int[] epochDays) {
+			super(label, nulls, size);
+			this.epochDays = epochDays;
+		}
+
+		public int getEpochDay(int row) {
+			return epochDays[row];
+		}
+
+		public LocalDate get(int row) {
+			return isNull(row) ? null : LocalDate.ofEpochDay(epochDays[row]);
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return get(row);
+		}
+
+		/**
+		 * from <= 日期 <= to 的行號
+		 */
+		public int[] between(LocalDate from, LocalDate to) {
+			int min = (int) Math.max(from.toEpochDay(), Integer.MIN_VALUE);
+			int max = (int) Math.min(to.toEpochDay(), Integer.MAX_VALUE);
+			int[] result = new int[size];
+			int n = 0;
+			for (int row = 0; row < size; row++) {
+				int v = epochDays[row];
+				if (v >= min && v <= max && !isNull(row))
+					result[n++] = row;
+			}
+			return Arrays.copyOf(result, n);
+		}
+	}
+
+	/**
+	 * 字串欄位: 字典編碼(codes 與 dictionary), 或不同字串太多時直接存放的 values
+	 */
+	public static final class StringColumn extends Column {
+
+		private final int[] codes;
+
+		private final String[] dictionary;
+
+		// 沒有字典時使用, 為 null 的行是 null
+		private final String[] values;
+
+		StringColumn(String label, long[] nulls, int size, int[] codes, String[] dictionary) {
+			super(label, nulls, size);
+			this.codes = codes;
+			this.dictionary = dictionary;
+			this.values = null;
+		}
+
+		StringColumn(String label, long[] nulls, int size, String[] values) {
+			super(label, nulls, size);
+			this.codes = null;
+			this.dictionary = null;
+			this.values = values;
+		}
+
+		public String get(int row) {
+			if (values != null)
+				return values[row];
+			return isNull(row) ? null : dictionary[codes[row]];
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return get(row);
+		}
+
+		/**
+		 * 是否以字典編碼
+		 */
+		public boolean isDictionaryEncoded() {
+			return dictionary != null;
+		}
+
+		/**
+		 * 字典中的編號, 沒有以字典編碼時返回 -1.
+		 */
+		public int getCode(int row) {
+			return codes == null ? -1 : codes[row];
+		}
+
+		/**
+		 * 不同字串的個數(沒有以字典編碼時每次重新計算)
+		 */
+		public int getCardinality() {
+			if (dictionary != null)
+				return dictionary.length;
+			Set<String> distinct = new HashSet<>();
+			for (String value : values) {
+				if (value != null)
+					distinct.add(value);
+			}
+			return distinct.size();
+		}
+
+		/**
+		 * 等於 value 的行號: 以字典編碼時先在字典中找到編號, 再比較 int.
+		 */
+		public int[] equalTo(String value) {
+			if (values != null) {
+				int[] result = new int[size];
+				int n = 0;
+				for (int row = 0; row < size; row++) {
+					if (value.equals(values[row]))
+						result[n++] = row;
+				}
+				return Arrays.copyOf(result, n);
+			}
+			int code = -1;
+			for (int i = 0; i < dictionary.length; i++) {
+				if (dictionary[i].equals(value)) {
+					code = i;
+					break;
+				}
+			}
+			if (code < 0)
+				return new int[0];
+			int[] result = new int[size];
+			int n = 0;
+			for (int row = 0; row < size; row++) {
+				if (codes[row] == code && !isNull(row))
+					result[n++] = row;
+			}
+			return Arrays.copyOf(result, n);
+		}
+
+		/**
+		 * 以 prefix 開頭的行號: 以字典編碼時每個字典項目只比較一次.
+		 */
+		public int[] startsWith(String prefix) {
+			int[] result = new int[size];
+			int n = 0;
+			if (values != null) {
+				for (int row = 0; row < size; row++) {
+					if (values[row] != null && values[row].startsWith(prefix))
+						result[n++] = row;
+				}
+				return Arrays.copyOf(result, n);
+			}
+			boolean[] match = new boolean[dictionary.length];
+			for (int i = 0; i < dictionary.length; i++)
+				match[i] = dictionary[i].startsWith(prefix);
+			for (int row = 0; row < size; row++) {
+				if (!isNull(row) && match[codes[row]])
+					result[n++] = row;
+			}
+			return Arrays.copyOf(result, n);
+		}
+	}
+
+	public static final class ObjectColumn extends Column {
+
+		private final Object[] values;
+
+		ObjectColumn(String label, long[] nulls, int size, Object[] values) {
+			super(label, nulls, size);
+			this.values = values;
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return values[row];
+		}
+	}
+
+	// 讀取時的暫存: 陣列依需要加倍, 最後裁切成實際的行數
+	private abstract static class Builder {
+
+		final String label;
+
+		final int index;
+
+		long[] nulls = new long[16];
+
+		int capacity = 1024;
+
+		Builder(String label, int index) {
+			this.label = label;
+			this.index = index;
+		}
+
+		static Builder of(ResultSetMetaData rsmd, int index) throws SQLException {
+			String label = rsmd.getColumnLabel(index);
+			switch (rsmd.getColumnType(index)) {
+			case Types.INTEGER:
+			case Types.SMALLINT:
+			case Types.TINYINT:
+				return new IntBuilder(label, index);
+			case Types.BIGINT:
+				return new LongBuilder(label, index);
+			case Types.DOUBLE:
+			case Types.FLOAT:
+			case Types.REAL:
+				return new DoubleBuilder(label, index);
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				int precision = rsmd.getPrecision(index);
+				int scale = rsmd.getScale(index);
+				// 未縮放的值最多 18 位時一定放得進 long
+				if (precision > 0 && precision <= 18 && scale >= 0)
+					return new DecimalBuilder(label, index, scale);
+				return new ObjectBuilder(label, index);
+			case Types.DATE:
+				return new DateBuilder(label, index);
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return new DictionaryBuilder(label, index);
+			default:
+				return new ObjectBuilder(label, index);
+			}
+		}
+
+		void read(ResultSet rs, int row) throws SQLException {
+			if (row == capacity) {
+				capacity *= 2;
+				grow(capacity);
+			}
+			if (row >>> 6 == nulls.length)
+				nulls = Arrays.copyOf(nulls, nulls.length * 2);
+			if (!readValue(rs, row))
+				nulls[row >>> 6] |= 1L << row;
+		}
+
+		long[] nulls(int size) {
+			return Arrays.copyOf(nulls, (size + 63) >>> 6);
+		}
+
+		abstract void grow(int capacity);
+
+		// 讀取一格, 為 null 時返回 false
+		abstract boolean readValue(ResultSet rs, int row) throws SQLException;
+
+		abstract Column build(int size);
+	}
+
+	private static final class IntBuilder extends Builder {
+		int[] values = new int[capacity];
+
+		IntBuilder(String label, int index) {
+			super(label, index);
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean readValue(ResultSet rs, int row) throws SQLException {
+			values[row] = rs.getInt(index);
+			return !rs.wasNull();
+		}
+
+		@Override
+		Column build(int size) {
+			return new IntColumn(label, nulls(size), size, Arrays.copyOf(values, size));
+		}
+	}
+
+	private static final class LongBuilder extends Builder {
+		long[] values = new long[capacity];
+
+		LongBuilder(String label, int index) {
+			super(label, index);
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean readValue(ResultSet rs, int row) throws SQLException {
+			values[row] = rs.getLong(index);
+			return !rs.wasNull();
+		}
+
+		@Override
+		Column build(int size) {
+			return new LongColumn(label, nulls(size), size, Arrays.copyOf(values, size));
+		}
+	}
+
+	private static final class DoubleBuilder extends Builder {
+		double[] values = new double[capacity];
+
+		DoubleBuilder(String label, int index) {
+			super(label, index);
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean readValue(ResultSet rs, int row) throws SQLException {
+			values[row] = rs.getDouble(index);
+			return !rs.wasNull();
+		}
+
+		@Override
+		Column build(int size) {
+			return new DoubleColumn(label, nulls(size), size, Arrays.copyOf(values, size));
+		}
+	}
+
+	private static final class DecimalBuilder extends Builder {
+		long[] values = new long[capacity];
+
+		final int scale;
+
+		DecimalBuilder(String label, int index, int scale) {
+			super(label, index);
+			this.scale = scale;
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean readValue(ResultSet rs, int row) throws SQLException {
+			BigDecimal value = rs.getBigDecimal(index);
+			if (value == null)
+				return false;
+			try {
+				values[row] = value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+			} catch (ArithmeticException e) {
+				throw new SQLException("欄位 " + label + " 的值 " + value + " 不符合宣告的精度與小數位數", e);
+			}
+			return true;
+		}
+
+		@Override
+		Column build(int size) {
+			return new DecimalColumn(label, nulls(size), size, Arrays.copyOf(values, size), scale);
+		}
+	}
+
+	private static final class DateBuilder extends Builder {
+		int[] values = new int[capacity];
+
+		DateBuilder(String label, int index) {
+			super(label, index);
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean readValue(ResultSet rs, int row) throws SQLException {
+			Date date = rs.getDate(index);
+			if (date == null)
+				return false;
+			values[row] = (int) date.toLocalDate().toEpochDay();
+			return true;
+		}
+
+		@Override
+		Column build(int size) {
+			return new DateColumn(label, nulls(size), size, Arrays.copyOf(values, size));
+		}
+	}
+
+	private static final class DictionaryBuilder extends Builder {
+
+		// 不同字串的個數超過已讀行數的這個比例時改為直接存放字串
+		static final double MAX_CARDINALITY_RATIO = 0.5;
+
+		// 讀取中至少有這麼多個不同的字串才改為直接存放, 避免前幾行就放棄字典
+		static final int MIN_DICTIONARY_SIZE = 1024;
+
+		int[] codes = new int[capacity];
+
+		// 只在讀取時使用, 建立欄位後丟棄; 改為直接存放字串後為 null
+		Map<String, Integer> codeOf = new HashMap<>();
+
+		List<String> dictionary = new ArrayList<>();
+
+		// 改為直接存放字串前為 null
+		String[] values;
+
+		DictionaryBuilder(String label, int index) {
+			super(label, index);
+		}
+
+		@Override
+		void grow(int capacity) {
+			if (values != null)
+				values = Arrays.copyOf(values, capacity);
+			else
+				codes = Arrays.copyOf(codes, capacity);
+		}
+
+		@Override
+		boolean readValue(ResultSet rs, int row) throws SQLException {
+			String value = rs.getString(index);
+			if (value == null)
+				return false;
+			if (values != null) {
+				values[row] = value;
+				return true;
+			}
+			Integer code = codeOf.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				codeOf.put(value, code);
+				dictionary.add(value);
+			}
+			codes[row] = code;
+			if (dictionary.size() > MIN_DICTIONARY_SIZE && dictionary.size() > (row + 1) * MAX_CARDINALITY_RATIO)
+				decode(row + 1);
+			return true;
+		}
+
+		// 把已讀的 rows 行換成字串, 之後直接存放字串
+		private void decode(int rows) {
+			values = new String[codes.length];
+			for (int row = 0; row < rows; row++) {
+				if ((nulls[row >>> 6] & (1L << row)) == 0)
+					values[row] = dictionary.get(codes[row]);
+			}
+			codes = null;
+			codeOf = null;
+			dictionary = null;
+		}
+
+		@Override
+		Column build(int size) {
+			if (values == null && dictionary.size() > size * MAX_CARDINALITY_RATIO)
+				decode(size);
+			if (values != null)
+				return new StringColumn(label, nulls(size), size, Arrays.copyOf(values, size));
+			return new StringColumn(label, nulls(size), size, Arrays.copyOf(codes, size),
+					dictionary.toArray(new String[0]));
+		}
+	}
+
+	private static final class ObjectBuilder extends Builder {
+		Object[] values = new Object[capacity];
+
+		ObjectBuilder(String label, int index) {
+			super(label, index);
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean readValue(ResultSet rs, int row) throws SQLException {
+			values[row] = rs.getObject(index);
+			return values[row] != null;
+		}
+
+		@Override
+		Column build(int size) {
+			return new ObjectColumn(label, nulls(size), size, Arrays.copyOf(values, size));
+		}
+	}
+}
@@ -2,7 +2,10 @@ package p08_dao;
 
 import java.sql.Connection;
 import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import p04_bean.Customer;
 
@@ -17,6 +20,11 @@ public interface CustomerDAO {
 	 */
 	void insert(Connection conn, Customer cust);
 	
+	/**
+	 * 批次將 custs 添加到資料庫中, 並把自增的 id 寫回每個對象, 返回添加的條數.
+	 */
+	int insertAll(Connection conn, Collection<Customer> custs) throws SQLException;
+	
 	/**
 	 * 針對指定的 id, 刪除表中的一條紀錄.
 	 */
@@ -36,6 +44,26 @@ public interface CustomerDAO {
 	 */
 	List<Customer> getAll(Connection conn);
 	
+	/**
+	 * 逐行讀取表中的所有紀錄, 返回的 Stream 使用完必須關閉.
+	 */
+	Stream<Customer> streamAll(Connection conn) throws SQLException;
+	
+	/**
+	 * 以鍵集分頁查詢 id 大於 afterId 的 limit 條紀錄(依照 id 排序), 返回的 Page 中有下一頁的令牌.
+	 */
+	Page<Customer> getPage(Connection conn, int afterId, int limit) throws SQLException;
+	
+	/**
+	 * 以上一頁的令牌查詢下一頁, token 為 null 時查詢第一頁.
+	 */
+	Page<Customer> getPage(Connection conn, String token, int limit) throws SQLException;
+	
+	/**
+	 * 逐頁讀取表中的所有紀錄(依照 id 排序), 記憶體中最多只有一頁.
+	 */
+	PageIterator<Customer> iterateAll(Connection conn, int pageSize);
+	
 	/**
 	 * 返回資料表中的資料的條數
 	 */
@@ -2,7 +2,10 @@ package p08_dao;
 
 import java.sql.Connection;
 import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import p04_bean.Customer;
 
@@ -16,7 +19,13 @@ public class CustomerDAOImpl extends BaseDAO<Customer> implements CustomerDAO {
 	@Override
 	public void insert(Connection conn, Customer cust) {
 		String sql = "INSERT INTO customers(name, email, birth) VALUES(?, ?, ?)";
-		update(conn, sql, cust.getName(), cust.getEmail(), cust.getBirth());
+		updateBean(conn, sql, cust, "name", "email", "birth");
+	}
+
+	@Override
+	public int insertAll(Connection conn, Collection<Customer> custs) throws SQLException {
+		String sql = "INSERT INTO customers(name, email, birth) VALUES(?, ?, ?)";
+		return insertAll(conn, sql, custs, (cust, id) -> cust.setId((int) id), "name", "email", "birth");
 	}
 
 	@Override
@@ -28,7 +37,7 @@ public class CustomerDAOImpl extends BaseDAO<Customer> implements CustomerDAO {
 	@Override
 	public void update(Connection conn, Customer cust) {
 		String sql = "UPDATE customers SET name = ?, email = ?, birth = ? WHERE id = ?";
-		update(conn, sql, cust.getName(), cust.getEmail(), cust.getBirth(), cust.getId());
+		updateBean(conn, sql, cust, "name", "email", "birth", "id");
 	}
 
 	@Override
@@ -45,6 +54,33 @@ public class CustomerDAOImpl extends BaseDAO<Customer> implements CustomerDAO {
 		return list;
 	}
 
+	@Override
+	public Stream<Customer> streamAll(Connection conn) throws SQLException {
+		String sql = "SELECT id, name, email, birth FROM customers";
+		return stream(conn, sql);
+	}
+
+	@Override
+	public Page<Customer> getPage(Connection conn, int afterId, int limit) throws SQLException {
+		String sql = "SELECT id, name, email, birth FROM customers WHERE id > ? ORDER BY id LIMIT ?";
+		return getPage(conn, sql, Customer::getId, afterId, limit);
+	}
+
+	@Override
+	public Page<Customer> getPage(Connection conn, String token, int limit) throws SQLException {
+		long afterId = Page.afterKey(token, 0);
+		// id 是 int, 超出範圍的鍵不是這個 DAO 發出的令牌
+		if (afterId < Integer.MIN_VALUE || afterId > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("無效的令牌: " + token);
+		return getPage(conn, (int) afterId, limit);
+	}
+
+	@Override
+	public PageIterator<Customer> iterateAll(Connection conn, int pageSize) {
+		String sql = "SELECT id, name, email, birth FROM customers WHERE id > ? ORDER BY id LIMIT ?";
+		return iterate(conn, sql, Customer::getId, 0, pageSize);
+	}
+
 	@Override
 	public Long getCount(Connection conn) {
 		String sql = "SELECT count(*) FROM customers";
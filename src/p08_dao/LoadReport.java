@@ -0,0 +1,59 @@
+package p08_dao;
+
+/**
+ * ClassName: LoadReport.java
+ * PackageName: p08_dao
+ * Description: BulkLoader.load 的結果: 使用的寫入方式, 讀取的行數, 沒有寫入的行數, 花費的時間與每秒行數
+ */
+public final class LoadReport {
+
+	private final BulkLoader.Sink sink;
+
+	private final long rows;
+
+	private final long skippedRows;
+
+	private final long elapsedMillis;
+
+	LoadReport(BulkLoader.Sink sink, long rows, long skippedRows, long elapsedMillis) {
+		this.sink = sink;
+		this.rows = rows;
+		this.skippedRows = skippedRows;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * 實際使用的寫入方式(不會是 AUTO)
+	 */
+	public BulkLoader.Sink getSink() {
+		return sink;
+	}
+
+	/**
+	 * 從來源讀取的行數
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * 沒有寫入的行數: BATCH 為失敗的行, LOAD_DATA 為被略過的行(例如重複的鍵, LOCAL 模式下只產生警告)
+	 */
+	public long getSkippedRows() {
+		return skippedRows;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedMillis == 0 ? rows * 1000.0 : rows * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadReport [sink=" + sink + ", rows=" + rows + ", skippedRows=" + skippedRows + ", elapsedMillis=" + elapsedMillis + ", rowsPerSecond="
+				+ (long) getRowsPerSecond() + "]";
+	}
+}
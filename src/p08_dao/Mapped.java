@@ -0,0 +1,20 @@
+package p08_dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * ClassName: Mapped.java
+ * PackageName: p08_dao
+ * Description: 標記需要在編譯時期產生 RowMapper 與 ParameterBinder 的 JavaBean
+ * 				以 p08_dao.processor.MapperProcessor 編譯時, 在同一個套件中產生 <類名>RowMapper 與 <類名>Binder,
+ * 				BaseDAO 找得到產生的類時就不使用反射.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Mapped {
+}
@@ -0,0 +1,236 @@
+package p08_dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClassName: MultiRowInsert.java
+ * PackageName: p08_dao
+ * Description: 把 INSERT ... VALUES(?, ...) 改寫成一條多行的 INSERT ... VALUES(?, ...), (?, ...), ...
+ * 				與 MySQL 驅動的 rewriteBatchedStatements 相同的效果, 但不依賴驅動, 其他資料庫也適用.
+ * 				每條 SQL 的行數為 2 的次方(1, 2, 4, ..., maxRows), 同一個 SQL 最多只有 log2(maxRows) + 1 種形狀, 每種形狀的 SQL 只產生一次;
+ * 				行數同時受 maxPacketBytes 限制: 以參數的值估算每一行的大小, 超過時減少行數.
+ * 				只改寫 VALUES 後面只有一組括號(可以跟著沒有佔位符的 ON DUPLICATE KEY UPDATE ...)的 INSERT 與 REPLACE, 其他 SQL 返回 null.
+ * 				解析只認得以引號包住的字串與識別字(引號內兩個相同的引號表示引號本身). 各資料庫解讀不同的寫法不改寫:
+ * 				字串中的反斜線(MySQL 是跳脫字元, 標準 SQL 不是), 註解(--, #, 以及 /* 開始的區塊註解), 以及沒有結束的引號.
+ */
+public final class MultiRowInsert {
+
+	// 一條 SQL 中佔位符的上限(MySQL 的 prepared statement 最多 65535 個)
+	private static final int MAX_PARAMETERS = 65_535;
+
+	// 最多快取的 SQL 數, 與執行計畫的 dao.planCacheSize 分開設定
+	private static final int MAX_CACHED = Integer.getInteger("dao.rewriteCacheSize", 1024);
+
+	private static final Map<String, MultiRowInsert> CACHE = new ConcurrentHashMap<>();
+
+	// 不能改寫的 SQL 也快取, 不再重複解析
+	private static final MultiRowInsert NONE = new MultiRowInsert("", "", "", 0);
+
+	private final String prefix;
+
+	private final String group;
+
+	private final String suffix;
+
+	private final int parameters;
+
+	// 行數 -> SQL
+	private final Map<Integer, String> shapes = new ConcurrentHashMap<>();
+
+	private MultiRowInsert(String prefix, String group, String suffix, int parameters) {
+		this.prefix = prefix;
+		this.group = group;
+		this.suffix = suffix;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * 返回 sql 的改寫器, 不能改寫時返回 null
+	 */
+	public static MultiRowInsert of(String sql) {
+		MultiRowInsert insert = CACHE.get(sql);
+		if (insert == null) {
+			insert = parse(sql);
+			if (CACHE.size() < MAX_CACHED)
+				CACHE.put(sql, insert);
+		}
+		return insert == NONE ? null : insert;
+	}
+
+	private static MultiRowInsert parse(String sql) {
+		String head = sql.stripLeading();
+		if (!startsWithWord(head, "INSERT") && !startsWithWord(head, "REPLACE"))
+			return NONE;
+		if (!plainLexically(sql))
+			return NONE;
+		int open = valuesParenthesis(sql);
+		if (open < 0)
+			return NONE;
+		int close = matchingParenthesis(sql, open);
+		if (close < 0)
+			return NONE;
+		String prefix = sql.substring(0, open);
+		String group = sql.substring(open, close + 1);
+		String suffix = sql.substring(close + 1);
+		// 已經是多行, 或佔位符不在 VALUES 的括號中時, 無法以行為單位複製
+		if (suffix.stripLeading().startsWith(",") || countParameters(prefix) > 0 || countParameters(suffix) > 0)
+			return NONE;
+		int parameters = countParameters(group);
+		if (parameters == 0)
+			return NONE;
+		return new MultiRowInsert(prefix, group, suffix, parameters);
+	}
+
+	private static boolean startsWithWord(String s, String word) {
+		return s.regionMatches(true, 0, word, 0, word.length())
+				&& (s.length() == word.length() || !Character.isLetterOrDigit(s.charAt(word.length())));
+	}
+
+	// 引號外第一個後面跟著括號的 VALUES(或 VALUE)關鍵字, 返回括號的位置; 名為 value 的欄位後面不是括號, 會被略過.
+	private static int valuesParenthesis(String sql) {
+		char quote = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if ((c == 'V' || c == 'v') && (i == 0 || !isWordChar(sql.charAt(i - 1)))) {
+				for (String word : new String[] { "VALUES", "VALUE" }) {
+					int end = i + word.length();
+					if (!sql.regionMatches(true, i, word, 0, word.length()) || (end < sql.length() && isWordChar(sql.charAt(end))))
+						continue;
+					while (end < sql.length() && Character.isWhitespace(sql.charAt(end)))
+						end++;
+					if (end < sql.length() && sql.charAt(end) == '(')
+						return end;
+					break;
+				}
+			}
+		}
+		return -1;
+	}
+
+	// valuesParenthesis, matchingParenthesis 與 countParameters 只認得引號: 字串中有反斜線, 引號外有註解, 或引號沒有結束時返回 false
+	private static boolean plainLexically(String sql) {
+		char quote = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			char next = i + 1 < sql.length() ? sql.charAt(i + 1) : 0;
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+				else if (c == '\\' && quote != '`')
+					return false;
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '#' || (c == '-' && next == '-') || (c == '/' && next == '*')) {
+				return false;
+			}
+		}
+		return quote == 0;
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	private static int matchingParenthesis(String sql, int open) {
+		int depth = 0;
+		char quote = 0;
+		for (int i = open; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')' && --depth == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int countParameters(String s) {
+		int count = 0;
+		char quote = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '?') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 每一行的佔位符數
+	 */
+	public int getParameterCount() {
+		return parameters;
+	}
+
+	/**
+	 * rows 行的 SQL
+	 */
+	public String sql(int rows) {
+		return shapes.computeIfAbsent(rows, n -> {
+			StringBuilder sql = new StringBuilder(prefix.length() + (group.length() + 2) * n + suffix.length());
+			sql.append(prefix).append(group);
+			for (int i = 1; i < n; i++)
+				sql.append(", ").append(group);
+			return sql.append(suffix).toString();
+		});
+	}
+
+	/**
+	 * 從 pending 的第 from 行開始, 下一條 SQL 的行數: 不超過 maxRows 與佔位符的上限, 估算的大小不超過 maxPacketBytes(至少 1 行),
+	 * 再取不超過它的 2 的次方.
+	 */
+	int nextRows(List<Object[]> pending, int from, int maxRows, long maxPacketBytes) {
+		int limit = Math.min(pending.size() - from, Math.min(maxRows, MAX_PARAMETERS / parameters));
+		long bytes = prefix.length() + suffix.length();
+		int rows = 0;
+		while (rows < limit) {
+			long row = group.length() + 2;
+			for (Object value : pending.get(from + rows))
+				row += estimateBytes(value);
+			if (rows > 0 && bytes + row > maxPacketBytes)
+				break;
+			bytes += row;
+			rows++;
+		}
+		return Integer.highestOneBit(Math.max(rows, 1));
+	}
+
+	// 參數寫成 SQL 文字(或二進位協議)時大約的位元組數, 寧可多估
+	private static long estimateBytes(Object value) {
+		if (value == null)
+			return 4;
+		if (value instanceof Number || value instanceof Boolean)
+			return 24;
+		if (value instanceof CharSequence) {
+			CharSequence s = (CharSequence) value;
+			long bytes = 2;
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				bytes += c < 0x80 ? (c == '\'' || c == '\\' ? 2 : 1) : c < 0x800 ? 2 : 3;
+			}
+			return bytes;
+		}
+		if (value instanceof byte[])
+			return ((byte[]) value).length * 2L + 3;
+		return String.valueOf(value).length() + 2L;
+	}
+}
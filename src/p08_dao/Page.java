@@ -0,0 +1,91 @@
+package p08_dao;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ClassName: Page.java
+ * PackageName: p08_dao
+ * Description: 鍵集(keyset)分頁的一頁: 本頁的紀錄與取得下一頁的延續令牌(continuation token)
+ * 				令牌記錄本頁最後一行的鍵, 下一頁從這個鍵之後開始查詢, 不使用 OFFSET.
+ * 				令牌對使用者是不透明的字串(Base64), 可以放進 URL 或回傳給前端, 最後一頁的令牌為 null.
+ */
+public final class Page<T> implements Iterable<T> {
+
+	private static final String PREFIX = "k:";
+
+	private final List<T> items;
+
+	private final String nextToken;
+
+	Page(List<T> items, String nextToken) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextToken = nextToken;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public int size() {
+		return items.size();
+	}
+
+	/**
+	 * 是否還有下一頁
+	 */
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+
+	/**
+	 * 下一頁的延續令牌, 沒有下一頁時為 null
+	 */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return items.iterator();
+	}
+
+	@Override
+	public String toString() {
+		return "Page [size=" + items.size() + ", nextToken=" + nextToken + "]";
+	}
+
+	/**
+	 * 把鍵編碼成令牌
+	 */
+	static String token(long key) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + key).getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * 令牌中的鍵; token 為 null 時(第一頁)返回 defaultKey
+	 */
+	public static long afterKey(String token, long defaultKey) {
+		if (token == null)
+			return defaultKey;
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+			if (decoded.startsWith(PREFIX))
+				return Long.parseLong(decoded.substring(PREFIX.length()));
+		} catch (IllegalArgumentException e) { // 包括 NumberFormatException
+		}
+		throw new IllegalArgumentException("無效的令牌: " + token);
+	}
+
+	/**
+	 * 依照令牌取得一頁
+	 */
+	@FunctionalInterface
+	public interface Loader<T> {
+		Page<T> load(String token) throws SQLException;
+	}
+}
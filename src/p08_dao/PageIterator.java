@@ -0,0 +1,59 @@
+package p08_dao;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ClassName: PageIterator.java
+ * PackageName: p08_dao
+ * Description: 逐頁讀取的 Iterator, 記憶體中最多只有一頁
+ * 				目前的頁讀完後才以令牌查詢下一頁, 每一頁各自執行一次查詢, 頁與頁之間不佔用連接上的結果集.
+ * 				查詢失敗時拋出 UncheckedSQLException.
+ */
+public class PageIterator<T> implements Iterator<T> {
+
+	private final Page.Loader<T> loader;
+
+	private Page<T> page;
+
+	private Iterator<T> items;
+
+	private int pageCount;
+
+	public PageIterator(Page.Loader<T> loader) {
+		this.loader = loader;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (items == null || !items.hasNext()) {
+			if (page != null && !page.hasNext())
+				return false;
+			String token = page == null ? null : page.getNextToken();
+			page = null; // 讓上一頁可以被回收
+			try {
+				page = loader.load(token);
+			} catch (SQLException e) {
+				throw new UncheckedSQLException(e);
+			}
+			items = page.iterator();
+			pageCount++;
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return items.next();
+	}
+
+	/**
+	 * 已經查詢的頁數
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+}
@@ -0,0 +1,15 @@
+package p08_dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * ClassName: ParameterBinder.java
+ * PackageName: p08_dao
+ * Description: 將對象的屬性依照創建時給定的欄位順序填入 PreparedStatement 的佔位符
+ */
+@FunctionalInterface
+public interface ParameterBinder<T> {
+
+	void bind(PreparedStatement ps, T t) throws SQLException;
+}
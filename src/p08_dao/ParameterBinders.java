@@ -0,0 +1,73 @@
+package p08_dao;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClassName: ParameterBinders.java
+ * PackageName: p08_dao
+ * Description: 創建並快取 ParameterBinder
+ * 				類上有 @Mapped 且產生了 <類名>Binder 時使用產生的類;
+ * 				否則以 MethodHandle 讀取屬性, 再以 setObject 填入佔位符.
+ */
+public class ParameterBinders {
+
+	private static final Map<RowMappers.Shape, ParameterBinder<?>> CACHE = new ConcurrentHashMap<>();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private ParameterBinders() {
+	}
+
+	/**
+	 * 返回依照 columns 的順序填入 clazz 對象屬性的 ParameterBinder, 欄位名可以是屬性名或 @Column 指定的欄位名.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ParameterBinder<T> of(Class<T> clazz, String... columns) {
+		return (ParameterBinder<T>) CACHE.computeIfAbsent(new RowMappers.Shape(clazz, columns.clone()),
+				ParameterBinders::compile);
+	}
+
+	private static ParameterBinder<?> compile(RowMappers.Shape shape) {
+		Class<?> clazz = shape.getBeanClass();
+		String[] columns = shape.getLabels();
+		try {
+			Object generated = RowMappers.newGenerated(clazz, "Binder", columns);
+			if (generated != null)
+				return (ParameterBinder<?>) generated;
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+			MethodHandle[] getters = new MethodHandle[columns.length];
+			for (int i = 0; i < getters.length; i++)
+				getters[i] = lookup.unreflectGetter(RowMappers.findField(clazz, columns[i])).asType(GETTER_TYPE);
+			return new CompiledBinder<>(getters);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(clazz.getName() + " 無法對應欄位 " + String.join(", ", columns), e);
+		}
+	}
+
+	private static class CompiledBinder<T> implements ParameterBinder<T> {
+
+		private final MethodHandle[] getters;
+
+		CompiledBinder(MethodHandle[] getters) {
+			this.getters = getters;
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, T t) throws SQLException {
+			try {
+				for (int i = 0; i < getters.length; i++)
+					ps.setObject(i + 1, (Object) getters[i].invokeExact((Object) t));
+			} catch (SQLException | RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new SQLException("填入佔位符失敗", e);
+			}
+		}
+	}
+}
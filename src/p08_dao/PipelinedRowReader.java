@@ -0,0 +1,136 @@
+package p08_dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import p08_dao.RowMappers.SplitRowMapper;
+
+/**
+ * ClassName: PipelinedRowReader.java
+ * PackageName: p08_dao
+ * Description: 管線化的結果集轉換
+ * 				結果集不是執行緒安全的, 所以調用的執行緒作為讀取執行緒: 逐行 next 並把每一格的值讀入批次的緩衝區;
+ * 				每讀滿一個批次就交給 ForkJoinPool 的工作執行緒創建對象並賦值, 讀取執行緒接著讀下一個批次.
+ * 				緩衝區的個數固定(環形使用), 批次加入 list 後歸還, 轉換跟不上時讀取執行緒等待最早的批次, 記憶體不會無限增加.
+ * 				keepOrder 為 true 時按照結果集的順序加入 list; 為 false 時按照批次完成的順序加入.
+ */
+final class PipelinedRowReader<T> {
+
+	private final ResultSet rs;
+
+	private final SplitRowMapper<T> mapper;
+
+	private final ForkJoinPool pool;
+
+	private final int batchSize;
+
+	private final boolean keepOrder;
+
+	// 空閒的緩衝區, 只有讀取執行緒使用
+	private final Queue<Batch> free = new ArrayDeque<>();
+
+	// 轉換中的批次, 依照提交的順序
+	private final Queue<ForkJoinTask<Batch>> pending = new ArrayDeque<>();
+
+	PipelinedRowReader(ResultSet rs, SplitRowMapper<T> mapper, ForkJoinPool pool, int batchSize, boolean keepOrder) {
+		this.rs = rs;
+		this.mapper = mapper;
+		this.pool = pool;
+		this.batchSize = batchSize;
+		this.keepOrder = keepOrder;
+		int buffers = Math.max(2, pool.getParallelism() * 2);
+		for (int i = 0; i < buffers; i++)
+			free.add(new Batch(batchSize, mapper.getColumnCount()));
+	}
+
+	/**
+	 * 讀取結果集剩下的所有行, 轉換後加入 list
+	 */
+	void drain(List<T> list) throws SQLException {
+		boolean more = true;
+		while (more) {
+			Batch batch = free.poll();
+			if (batch == null) {
+				// 所有的緩衝區都在轉換中: 等待最早的批次
+				add(list, pending.poll());
+				batch = free.poll();
+			}
+			batch.size = 0;
+			while (batch.size < batchSize && (more = rs.next()))
+				mapper.fetch(rs, batch.rows[batch.size++]);
+			if (batch.size > 0)
+				submit(batch);
+			else
+				free.add(batch);
+			collect(list, false);
+		}
+		collect(list, true);
+	}
+
+	private void submit(Batch batch) {
+		pending.add(pool.submit(() -> {
+			try {
+				for (int i = 0; i < batch.size; i++)
+					batch.mapped[i] = mapper.map(batch.rows[i]);
+			} catch (SQLException e) {
+				throw new UncheckedSQLException(e);
+			}
+			return batch;
+		}));
+	}
+
+	// 把轉換完畢的批次加入 list; all 為 true 時等待所有的批次
+	private void collect(List<T> list, boolean all) throws SQLException {
+		if (keepOrder) {
+			ForkJoinTask<Batch> head;
+			while ((head = pending.peek()) != null && (all || head.isDone()))
+				add(list, pending.poll());
+		} else {
+			Iterator<ForkJoinTask<Batch>> it = pending.iterator();
+			while (it.hasNext()) {
+				ForkJoinTask<Batch> task = it.next();
+				if (all || task.isDone()) {
+					it.remove();
+					add(list, task);
+				}
+			}
+		}
+	}
+
+	// 等待一個批次, 加入 list 後歸還緩衝區
+	@SuppressWarnings("unchecked")
+	private void add(List<T> list, ForkJoinTask<Batch> task) throws SQLException {
+		Batch batch;
+		try {
+			batch = task.join();
+		} catch (UncheckedSQLException e) {
+			throw e.getCause();
+		}
+		for (int i = 0; i < batch.size; i++) {
+			list.add((T) batch.mapped[i]);
+			batch.mapped[i] = null;
+		}
+		free.add(batch);
+	}
+
+	// 一個批次: 讀取的值與轉換後的對象, 重複使用
+	private static final class Batch {
+
+		final Object[][] rows;
+
+		final Object[] mapped;
+
+		int size;
+
+		Batch(int batchSize, int columnCount) {
+			rows = new Object[batchSize][columnCount];
+			mapped = new Object[batchSize];
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package p08_dao;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.RecordComponent;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClassName: Projections.java
+ * PackageName: p08_dao
+ * Description: 投影(projection): 以 record 或介面描述查詢需要的欄位, 結果直接創建成這個類型, 不創建完整的 JavaBean.
+ * 				1. record: 每個元件對應一個欄位, 讀出所有欄位後調用標準建構子(canonical constructor), 沒有反射的賦值.
+ * 				2. 介面: 每個無參的方法(getName(), name() 等)對應一個欄位, 返回以讀出的值回答方法調用的代理對象.
+ * 				元件或方法上可以用 @Column 指定欄位名. columns 返回 SELECT 需要的欄位, 不需要的欄位不會被查詢.
+ * 				與 RowMappers 相同, 同一個 (類型, 欄位別名) 組合只編譯一次.
+ */
+public class Projections {
+
+	private static final Map<RowMappers.Shape, RowMapper<?>> CACHE = new ConcurrentHashMap<>();
+
+	private static final Map<Class<?>, String> COLUMNS = new ConcurrentHashMap<>();
+
+	private Projections() {
+	}
+
+	/**
+	 * 返回將結果集的一行轉換成 type(record 或介面)的 RowMapper
+	 */
+	@SuppressWarnings("unchecked")
+	public static <P> RowMapper<P> of(Class<P> type, ResultSetMetaData rsmd) throws SQLException {
+		int columnCount = rsmd.getColumnCount();
+		String[] labels = new String[columnCount];
+		for (int i = 0; i < columnCount; i++)
+			labels[i] = rsmd.getColumnLabel(i + 1);
+		return (RowMapper<P>) CACHE.computeIfAbsent(new RowMappers.Shape(type, labels), Projections::compile);
+	}
+
+	/**
+	 * type 需要的欄位, 用於 SELECT, 例如 "name, email"
+	 */
+	public static String columns(Class<?> type) {
+		return COLUMNS.computeIfAbsent(type, t -> {
+			StringJoiner joiner = new StringJoiner(", ");
+			for (Property property : properties(t))
+				joiner.add(property.column);
+			return joiner.toString();
+		});
+	}
+
+	private static RowMapper<?> compile(RowMappers.Shape shape) {
+		Class<?> type = shape.getBeanClass();
+		List<Property> properties = properties(type);
+		ColumnReader[] readers = new ColumnReader[properties.size()];
+		for (int i = 0; i < readers.length; i++) {
+			Property property = properties.get(i);
+			readers[i] = ColumnReader.of(property.indexIn(shape.getLabels(), type) + 1, property.type);
+		}
+		if (type.isRecord())
+			return new RecordMapper<>(constructor(type, properties), readers);
+		return new InterfaceMapper<>(type, properties, readers);
+	}
+
+	// record 的標準建構子, 類型為 (Object[])Object
+	private static MethodHandle constructor(Class<?> type, List<Property> properties) {
+		Class<?>[] parameterTypes = new Class<?>[properties.size()];
+		for (int i = 0; i < parameterTypes.length; i++)
+			parameterTypes[i] = properties.get(i).type;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+			return lookup.findConstructor(type, MethodType.methodType(void.class, parameterTypes))
+					.asSpreader(Object[].class, parameterTypes.length)
+					.asType(MethodType.methodType(Object.class, Object[].class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(type.getName() + " 沒有可以使用的標準建構子", e);
+		}
+	}
+
+	// record 的元件(依照宣告的順序)或介面的無參方法
+	private static List<Property> properties(Class<?> type) {
+		List<Property> properties = new ArrayList<>();
+		if (type.isRecord()) {
+			for (RecordComponent component : type.getRecordComponents())
+				properties.add(new Property(component.getName(), component.getType(), component.getAccessor()));
+		} else if (type.isInterface()) {
+			for (Method method : type.getMethods()) {
+				if (method.isDefault() || Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0
+						|| method.getReturnType() == void.class)
+					continue;
+				properties.add(new Property(propertyName(method.getName()), method.getReturnType(), method));
+			}
+		} else {
+			throw new IllegalArgumentException(type.getName() + " 不是 record 或介面");
+		}
+		return properties;
+	}
+
+	// getName -> name, isActive -> active, name -> name
+	private static String propertyName(String methodName) {
+		int prefix = methodName.startsWith("get") ? 3 : methodName.startsWith("is") ? 2 : 0;
+		if (prefix == 0 || methodName.length() == prefix || !Character.isUpperCase(methodName.charAt(prefix)))
+			return methodName;
+		return Character.toLowerCase(methodName.charAt(prefix)) + methodName.substring(prefix + 1);
+	}
+
+	// 一個投影的屬性: 名稱, 欄位名, 類型與對應的方法
+	private static final class Property {
+
+		final String name;
+
+		final String column;
+
+		final Class<?> type;
+
+		final Method method;
+
+		Property(String name, Class<?> type, Method method) {
+			Column annotation = method.getAnnotation(Column.class);
+			this.name = name;
+			this.column = annotation == null ? name : annotation.value();
+			this.type = type;
+			this.method = method;
+		}
+
+		// 在結果集的欄位別名中找到對應的欄位(不分大小寫)
+		int indexIn(String[] labels, Class<?> owner) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i].equalsIgnoreCase(column) || labels[i].equalsIgnoreCase(name))
+					return i;
+			}
+			throw new IllegalArgumentException(owner.getName() + "." + name + " 在結果集中沒有對應的欄位 " + column);
+		}
+	}
+
+	// 讀出所有欄位後調用標準建構子
+	private static final class RecordMapper<P> implements RowMapper<P> {
+
+		private final MethodHandle constructor;
+
+		private final ColumnReader[] readers;
+
+		RecordMapper(MethodHandle constructor, ColumnReader[] readers) {
+			this.constructor = constructor;
+			this.readers = readers;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public P mapRow(ResultSet rs) throws SQLException {
+			Object[] args = new Object[readers.length];
+			for (int i = 0; i < readers.length; i++)
+				args[i] = readers[i].get(rs);
+			try {
+				return (P) (Object) constructor.invokeExact(args);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new SQLException("轉換結果集失敗", e);
+			}
+		}
+	}
+
+	// 介面的代理: 每一行一個 Object[], 方法調用返回對應的值
+	private static final class InterfaceMapper<P> implements RowMapper<P> {
+
+		private final Class<?> type;
+
+		private final Map<Method, Integer> indexes = new HashMap<>();
+
+		private final String[] names;
+
+		private final ColumnReader[] readers;
+
+		InterfaceMapper(Class<?> type, List<Property> properties, ColumnReader[] readers) {
+			this.type = type;
+			this.readers = readers;
+			this.names = new String[properties.size()];
+			for (int i = 0; i < names.length; i++) {
+				indexes.put(properties.get(i).method, i);
+				names[i] = properties.get(i).name;
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public P mapRow(ResultSet rs) throws SQLException {
+			Object[] values = new Object[readers.length];
+			for (int i = 0; i < readers.length; i++)
+				values[i] = readers[i].get(rs);
+			return (P) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new Handler(values));
+		}
+
+		private final class Handler implements InvocationHandler {
+
+			private final Object[] values;
+
+			Handler(Object[] values) {
+				this.values = values;
+			}
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				Integer index = indexes.get(method);
+				if (index != null)
+					return values[index];
+				if (method.isDefault())
+					return InvocationHandler.invokeDefault(proxy, method, args);
+				switch (method.getName()) {
+				case "toString":
+					StringJoiner joiner = new StringJoiner(", ", type.getSimpleName() + "[", "]");
+					for (int i = 0; i < names.length; i++)
+						joiner.add(names[i] + "=" + values[i]);
+					return joiner.toString();
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				default:
+					throw new UnsupportedOperationException(method.toString());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package p08_dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: QueryPlans.java
+ * PackageName: p08_dao
+ * Description: 以 SQL 為鍵的執行計畫快取: 同一個 (類, SQL) 第一次執行時讀取 ResultSetMetaData 並編譯 RowMapper,
+ * 				之後再執行同一個 SQL 時直接使用快取的 RowMapper, 完全不調用 getMetaData, 也不再比對欄位別名.
+ * 				欄位別名由 SQL 的文字決定, 所以 SQL 相同時結果集的形狀也相同; 例外是 SELECT *,
+ * 				資料表的欄位改變時結果集也跟著改變, 所以含有 * 的 SQL 不快取, 每次都讀取 ResultSetMetaData.
+ * 				資料表的結構改變(例如欄位類型改變)使快取的 RowMapper 轉換失敗時, 以這次的 ResultSetMetaData 重新編譯並重試這一行.
+ * 				getForList 管線化轉換使用的 SplitRowMapper 也以同樣的鍵快取, RowMapper 重新編譯時一起移除.
+ * 				-Ddao.planCacheSize 為兩種計畫各自最多快取的數量(預設 1024).
+ */
+public class QueryPlans {
+
+	private static final int MAX_SIZE = Integer.getInteger("dao.planCacheSize", 1024);
+
+	private static final Map<Key, RowMapper<?>> CACHE = new ConcurrentHashMap<>();
+
+	private static final Map<Key, RowMappers.SplitRowMapper<?>> SPLITS = new ConcurrentHashMap<>();
+
+	private static final LongAdder HITS = new LongAdder();
+
+	private static final LongAdder MISSES = new LongAdder();
+
+	private static final LongAdder INVALIDATIONS = new LongAdder();
+
+	private QueryPlans() {
+	}
+
+	/**
+	 * 以 sql 查詢 clazz 的結果集 rs 所用的 RowMapper(見 RowMappers.of)
+	 */
+	public static <T> RowMapper<T> rowMapper(Class<T> clazz, String sql, ResultSet rs) throws SQLException {
+		return lookup(new Key(clazz, sql, false), rs);
+	}
+
+	/**
+	 * 以 sql 查詢投影 type 的結果集 rs 所用的 RowMapper(見 Projections.of)
+	 */
+	public static <P> RowMapper<P> projection(Class<P> type, String sql, ResultSet rs) throws SQLException {
+		return lookup(new Key(type, sql, true), rs);
+	}
+
+	/**
+	 * 以 sql 查詢 clazz 的結果集 rs 做管線化轉換所用的 SplitRowMapper(見 RowMappers.split)
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> RowMappers.SplitRowMapper<T> splitMapper(Class<T> clazz, String sql, ResultSet rs) throws SQLException {
+		Key key = new Key(clazz, sql, false);
+		RowMappers.SplitRowMapper<T> cached = (RowMappers.SplitRowMapper<T>) SPLITS.get(key);
+		if (cached != null) {
+			HITS.increment();
+			return cached;
+		}
+		MISSES.increment();
+		RowMappers.SplitRowMapper<T> mapper = RowMappers.split(clazz, rs.getMetaData());
+		if (sql.indexOf('*') < 0 && SPLITS.size() < MAX_SIZE)
+			SPLITS.put(key, mapper);
+		return mapper;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> RowMapper<T> lookup(Key key, ResultSet rs) throws SQLException {
+		RowMapper<T> cached = (RowMapper<T>) CACHE.get(key);
+		if (cached != null) {
+			HITS.increment();
+			return new CheckedRowMapper<>(key, cached);
+		}
+		MISSES.increment();
+		RowMapper<T> mapper = compile(key, rs);
+		if (key.sql.indexOf('*') < 0 && CACHE.size() < MAX_SIZE)
+			CACHE.put(key, mapper);
+		return mapper;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> RowMapper<T> compile(Key key, ResultSet rs) throws SQLException {
+		if (key.projection)
+			return (RowMapper<T>) Projections.of(key.clazz, rs.getMetaData());
+		return (RowMapper<T>) RowMappers.of(key.clazz, rs.getMetaData());
+	}
+
+	/**
+	 * 快取的計畫數
+	 */
+	public static int size() {
+		return CACHE.size() + SPLITS.size();
+	}
+
+	public static long getHitCount() {
+		return HITS.sum();
+	}
+
+	public static long getMissCount() {
+		return MISSES.sum();
+	}
+
+	/**
+	 * 因為轉換失敗而重新編譯的次數
+	 */
+	public static long getInvalidationCount() {
+		return INVALIDATIONS.sum();
+	}
+
+	public static void clear() {
+		CACHE.clear();
+		SPLITS.clear();
+	}
+
+	// 使用快取的 RowMapper 轉換, 第一次失敗時以結果集的 ResultSetMetaData 重新編譯, 取代快取中的計畫後重試.
+	private static final class CheckedRowMapper<T> implements RowMapper<T> {
+
+		private final Key key;
+
+		private RowMapper<T> mapper;
+
+		private boolean recompiled;
+
+		CheckedRowMapper(Key key, RowMapper<T> mapper) {
+			this.key = key;
+			this.mapper = mapper;
+		}
+
+		@Override
+		public T mapRow(ResultSet rs) throws SQLException {
+			try {
+				return mapper.mapRow(rs);
+			} catch (SQLException | RuntimeException e) {
+				if (recompiled)
+					throw e;
+				recompiled = true;
+				INVALIDATIONS.increment();
+				RowMapper<T> fresh;
+				try {
+					fresh = compile(key, rs);
+				} catch (SQLException | RuntimeException suppressed) {
+					e.addSuppressed(suppressed);
+					throw e;
+				}
+				if (fresh == mapper) // 結果集的形狀沒有改變, 是資料本身的問題
+					throw e;
+				CACHE.put(key, fresh);
+				SPLITS.remove(key);
+				mapper = fresh;
+				return mapper.mapRow(rs);
+			}
+		}
+	}
+
+	// 快取的鍵: 類, SQL 與是否為投影
+	private static final class Key {
+
+		private final Class<?> clazz;
+
+		private final String sql;
+
+		private final boolean projection;
+
+		private final int hash;
+
+		Key(Class<?> clazz, String sql, boolean projection) {
+			this.clazz = clazz;
+			this.sql = sql;
+			this.projection = projection;
+			this.hash = (31 * clazz.hashCode() + sql.hashCode()) * 2 + (projection ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return clazz == other.clazz && projection == other.projection && sql.equals(other.sql);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package p08_dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import p02_util.JDBCUtils;
+
+/**
+ * ClassName: ResultSetSpliterator.java
+ * PackageName: p08_dao
+ * Description: 以只能向前的結果集為來源的 Spliterator, 每次 tryAdvance 才讀取並轉換一行.
+ * 				讀完最後一行, 或 Stream 被 close() 時, 關閉結果集與 PreparedStatement(只關閉一次).
+ */
+class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+	private final PreparedStatement ps;
+
+	private final ResultSet rs;
+
+	private final RowMapper<T> mapper;
+
+	private boolean closed;
+
+	ResultSetSpliterator(PreparedStatement ps, ResultSet rs, RowMapper<T> mapper) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+		this.ps = ps;
+		this.rs = rs;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * 返回關閉時會釋放資源的 Stream
+	 */
+	static <T> Stream<T> stream(PreparedStatement ps, ResultSet rs, RowMapper<T> mapper) {
+		ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(ps, rs, mapper);
+		return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		if (closed)
+			return false;
+		try {
+			if (!rs.next()) {
+				close();
+				return false;
+			}
+			action.accept(mapper.mapRow(rs));
+			return true;
+		} catch (SQLException e) {
+			close();
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	void close() {
+		if (closed)
+			return;
+		closed = true;
+		JDBCUtils.closeResource(null, ps, rs);
+	}
+}
@@ -0,0 +1,15 @@
+package p08_dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * ClassName: RowMapper.java
+ * PackageName: p08_dao
+ * Description: 將結果集目前的一行轉換成一個對象(不移動游標)
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+	T mapRow(ResultSet rs) throws SQLException;
+}
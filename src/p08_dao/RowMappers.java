@@ -0,0 +1,416 @@
+package p08_dao;
+
+import java.beans.ConstructorProperties;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClassName: RowMappers.java
+ * PackageName: p08_dao
+ * Description: 編譯並快取 RowMapper
+ * 				第一次遇到某個 (類, 結果集的欄位別名) 組合時, 找出每個別名對應的屬性並建立 MethodHandle,
+ * 				之後同樣的組合直接使用快取的 RowMapper, 每一行只剩讀取與賦值,
+ * 				不再調用 getDeclaredField 與 setAccessible, 也不經過 Field.set 的存取檢查.
+ * 				每個欄位依照屬性的類型以 getInt, getString 等方法讀取(見 ColumnReader), 基本類型的屬性不需要裝箱.
+ * 				類上有 @Mapped 且以 MapperProcessor 產生了 <類名>RowMapper 時, 使用產生的類, 完全不使用反射.
+ * 				欄位別名可以是屬性名, 也可以是屬性上 @Column 指定的欄位名.
+ * 				類有參數名稱已知的建構子(@ConstructorProperties, 或以 javac -parameters 編譯), 參數恰好是結果集所有欄位對應的屬性
+ * 				(以名稱對應, 類型相同)時, 以這個建構子創建對象, 不逐一調用 setter, final 屬性與不可變的類也可以使用;
+ * 				每個參數在編譯時綁定了對應欄位的 getXxx(filterArguments), 每行直接調用建構子, 不建立參數陣列, 也不裝箱;
+ * 				結果集缺少任何一個參數時不使用建構子(避免把沒有查詢的屬性設為 null 或 0), 改用無參建構子與 setter.
+ */
+public class RowMappers {
+
+	private static final Map<Shape, RowMapper<?>> CACHE = new ConcurrentHashMap<>();
+
+	private static final Map<Shape, SplitRowMapper<?>> SPLIT_CACHE = new ConcurrentHashMap<>();
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private static final MethodType ROW_TYPE = MethodType.methodType(Object.class, ResultSet.class);
+
+	// 屬性類型對應的 getXxx(int), 與 ColumnReader 的選擇相同, 其他類型使用 getObject
+	private static final Map<Class<?>, String> GETTERS = Map.ofEntries(
+			Map.entry(int.class, "getInt"), Map.entry(long.class, "getLong"), Map.entry(double.class, "getDouble"),
+			Map.entry(float.class, "getFloat"), Map.entry(short.class, "getShort"), Map.entry(byte.class, "getByte"),
+			Map.entry(boolean.class, "getBoolean"), Map.entry(String.class, "getString"),
+			Map.entry(Date.class, "getDate"), Map.entry(Timestamp.class, "getTimestamp"),
+			Map.entry(Time.class, "getTime"), Map.entry(BigDecimal.class, "getBigDecimal"));
+
+	private RowMappers() {
+	}
+
+	/**
+	 * 返回將結果集的一行轉換成 clazz 對象的 RowMapper, 欄位的別名即為屬性名.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> RowMapper<T> of(Class<T> clazz, ResultSetMetaData rsmd) throws SQLException {
+		return (RowMapper<T>) CACHE.computeIfAbsent(shape(clazz, rsmd), RowMappers::compile);
+	}
+
+	/**
+	 * 返回把讀取與轉換分開的 SplitRowMapper, 用於管線化的轉換(不使用 MapperProcessor 產生的類).
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> SplitRowMapper<T> split(Class<T> clazz, ResultSetMetaData rsmd) throws SQLException {
+		return (SplitRowMapper<T>) SPLIT_CACHE.computeIfAbsent(shape(clazz, rsmd), shape -> {
+			try {
+				ConstructorRowMapper<?> mapper = compileConstructor(shape);
+				if (mapper != null)
+					return new SplitRowMapper<>(mapper.constructor, mapper.readers, mapper.positions);
+				return new SplitRowMapper<>(constructor(shape.clazz), readers(shape), null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalArgumentException(shape.clazz.getName() + " 無法對應欄位 " + String.join(", ", shape.labels), e);
+			}
+		});
+	}
+
+	private static Shape shape(Class<?> clazz, ResultSetMetaData rsmd) throws SQLException {
+		int columnCount = rsmd.getColumnCount();
+		String[] labels = new String[columnCount];
+		for (int i = 0; i < columnCount; i++)
+			labels[i] = rsmd.getColumnLabel(i + 1);
+		return new Shape(clazz, labels);
+	}
+
+	/**
+	 * 快取中的 RowMapper 數
+	 */
+	public static int cacheSize() {
+		return CACHE.size();
+	}
+
+	private static RowMapper<?> compile(Shape shape) {
+		try {
+			Object generated = newGenerated(shape.clazz, "RowMapper", shape.labels);
+			if (generated != null)
+				return (RowMapper<?>) generated;
+			ConstructorRowMapper<?> mapper = compileConstructor(shape);
+			if (mapper != null)
+				return mapper;
+			return new CompiledRowMapper<>(constructor(shape.clazz), readers(shape));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(shape.clazz.getName() + " 無法對應欄位 " + String.join(", ", shape.labels), e);
+		}
+	}
+
+	/**
+	 * 不快取, 以無參建構子與 setter 編譯 RowMapper(用於比較不同的轉換方式)
+	 */
+	public static <T> RowMapper<T> bySetters(Class<T> clazz, ResultSetMetaData rsmd) throws SQLException {
+		Shape shape = shape(clazz, rsmd);
+		try {
+			return new CompiledRowMapper<>(constructor(clazz), readers(shape));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(clazz.getName() + " 無法對應欄位 " + String.join(", ", shape.labels), e);
+		}
+	}
+
+	/**
+	 * 不快取, 以建構子編譯 RowMapper(用於比較不同的轉換方式), 沒有參數與結果集欄位對應的建構子時拋出 IllegalArgumentException.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> RowMapper<T> byConstructor(Class<T> clazz, ResultSetMetaData rsmd) throws SQLException {
+		Shape shape = shape(clazz, rsmd);
+		RowMapper<T> mapper;
+		try {
+			mapper = (RowMapper<T>) compileConstructor(shape);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(clazz.getName() + " 無法對應欄位 " + String.join(", ", shape.labels), e);
+		}
+		if (mapper == null)
+			throw new IllegalArgumentException(clazz.getName() + " 沒有參數為 " + String.join(", ", shape.labels)
+					+ " 的建構子(需要 @ConstructorProperties 或以 -parameters 編譯)");
+		return mapper;
+	}
+
+	// 讀取第 index 個欄位的 (ResultSet)type, 基本類型直接返回基本類型, 不裝箱
+	private static MethodHandle getter(int index, Class<?> type) throws ReflectiveOperationException {
+		String name = GETTERS.getOrDefault(type, "getObject");
+		Class<?> returnType = name.equals("getObject") ? Object.class : type;
+		MethodHandle getter = MethodHandles.publicLookup().findVirtual(ResultSet.class, name,
+				MethodType.methodType(returnType, int.class));
+		return MethodHandles.insertArguments(getter, 1, index).asType(MethodType.methodType(type, ResultSet.class));
+	}
+
+	// 建構子的參數依序對應的屬性: 參數名稱取自 @ConstructorProperties 或 -parameters, 屬性的類型必須與參數相同.
+	// 參數名稱未知或不能對應時返回 null
+	private static Field[] parameterFields(Constructor<?> constructor) {
+		Parameter[] parameters = constructor.getParameters();
+		if (parameters.length == 0)
+			return null;
+		ConstructorProperties properties = constructor.getAnnotation(ConstructorProperties.class);
+		if (properties == null && !parameters[0].isNamePresent())
+			return null;
+		if (properties != null && properties.value().length != parameters.length)
+			return null;
+		Field[] fields = new Field[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			String name = properties != null ? properties.value()[i] : parameters[i].getName();
+			Field field;
+			try {
+				field = constructor.getDeclaringClass().getDeclaredField(name);
+			} catch (NoSuchFieldException e) {
+				return null;
+			}
+			if (Modifier.isStatic(field.getModifiers()) || field.getType() != parameters[i].getType())
+				return null;
+			fields[i] = field;
+		}
+		return fields;
+	}
+
+	// 以參數恰好是結果集所有欄位對應的屬性的建構子創建對象, 沒有這樣的建構子時返回 null
+	private static ConstructorRowMapper<?> compileConstructor(Shape shape) throws ReflectiveOperationException {
+		Field[] columns = new Field[shape.labels.length];
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = findField(shape.clazz, shape.labels[i]);
+		Set<Field> bound = new HashSet<>(Arrays.asList(columns));
+		for (Constructor<?> candidate : shape.clazz.getDeclaredConstructors()) {
+			Field[] parameters = parameterFields(candidate);
+			if (parameters == null || parameters.length != columns.length || !bound.equals(new HashSet<>(Arrays.asList(parameters))))
+				continue;
+			List<Field> order = Arrays.asList(parameters);
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(shape.clazz, MethodHandles.lookup());
+			MethodHandle target = lookup.unreflectConstructor(candidate);
+			MethodHandle constructor = target.asSpreader(Object[].class, parameters.length)
+					.asType(MethodType.methodType(Object.class, Object[].class));
+			ColumnReader[] readers = new ColumnReader[columns.length];
+			int[] positions = new int[columns.length];
+			MethodHandle[] getters = new MethodHandle[columns.length];
+			for (int i = 0; i < readers.length; i++) {
+				positions[i] = order.indexOf(columns[i]);
+				readers[i] = ColumnReader.of(i + 1, columns[i].getType());
+				getters[positions[i]] = getter(i + 1, columns[i].getType());
+			}
+			// 每個參數先以自己的 getXxx 讀取, 所有參數共用同一個結果集: (ResultSet)Object
+			MethodHandle row = MethodHandles.filterArguments(target, 0, getters);
+			row = MethodHandles.permuteArguments(row, ROW_TYPE.changeReturnType(shape.clazz), new int[getters.length])
+					.asType(ROW_TYPE);
+			return new ConstructorRowMapper<>(row, constructor, readers, positions);
+		}
+		return null;
+	}
+
+	// 無參建構子, 類型為 ()Object
+	private static MethodHandle constructor(Class<?> clazz) throws ReflectiveOperationException {
+		MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+		return lookup.findConstructor(clazz, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+	}
+
+	// 每個欄位依照屬性類型的 ColumnReader
+	private static ColumnReader[] readers(Shape shape) throws ReflectiveOperationException {
+		MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(shape.clazz, MethodHandles.lookup());
+		ColumnReader[] readers = new ColumnReader[shape.labels.length];
+		for (int i = 0; i < readers.length; i++) {
+			Field field = findField(shape.clazz, shape.labels[i]);
+			readers[i] = ColumnReader.of(i + 1, lookup.unreflectSetter(field));
+		}
+		return readers;
+	}
+
+	/**
+	 * 找出欄位對應的屬性: 先找同名的屬性, 再找 @Column 為該欄位名的屬性.
+	 */
+	static Field findField(Class<?> clazz, String column) throws NoSuchFieldException {
+		try {
+			return clazz.getDeclaredField(column);
+		} catch (NoSuchFieldException e) {
+			for (Field field : clazz.getDeclaredFields()) {
+				Column annotation = field.getAnnotation(Column.class);
+				if (annotation != null && annotation.value().equals(column))
+					return field;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 創建 MapperProcessor 為 clazz 產生的類(例如 CustomerRowMapper), 沒有產生時返回 null.
+	 */
+	static Object newGenerated(Class<?> clazz, String suffix, String[] columns) throws ReflectiveOperationException {
+		if (!clazz.isAnnotationPresent(Mapped.class))
+			return null;
+		Class<?> generated;
+		try {
+			generated = Class.forName(clazz.getName() + suffix, true, clazz.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null; // 編譯時沒有使用 MapperProcessor
+		}
+		try {
+			return generated.getConstructor(String[].class).newInstance((Object) columns);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IllegalArgumentException)
+				throw (IllegalArgumentException) e.getCause();
+			throw e;
+		}
+	}
+
+	// 編譯好的 RowMapper: 無參建構子與每個欄位依照屬性類型的 ColumnReader
+	private static class CompiledRowMapper<T> implements RowMapper<T> {
+
+		private final MethodHandle constructor;
+
+		private final ColumnReader[] readers;
+
+		CompiledRowMapper(MethodHandle constructor, ColumnReader[] readers) {
+			this.constructor = constructor;
+			this.readers = readers;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T mapRow(ResultSet rs) throws SQLException {
+			try {
+				Object t = (Object) constructor.invokeExact();
+				for (ColumnReader reader : readers)
+					reader.read(t, rs);
+				return (T) t;
+			} catch (SQLException | RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new SQLException("轉換結果集失敗", e);
+			}
+		}
+	}
+
+	// 以建構子創建對象: 每個參數綁定了自己的 getXxx, 不建立參數陣列, 基本類型的參數也不裝箱.
+	// constructor, readers 與 positions(以陣列傳參的建構子)只供 SplitRowMapper 使用
+	private static class ConstructorRowMapper<T> implements RowMapper<T> {
+
+		private final MethodHandle row;
+
+		private final MethodHandle constructor;
+
+		private final ColumnReader[] readers;
+
+		private final int[] positions;
+
+		ConstructorRowMapper(MethodHandle row, MethodHandle constructor, ColumnReader[] readers, int[] positions) {
+			this.row = row;
+			this.constructor = constructor;
+			this.readers = readers;
+			this.positions = positions;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T mapRow(ResultSet rs) throws SQLException {
+			try {
+				return (T) (Object) row.invokeExact(rs);
+			} catch (SQLException | RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new SQLException("轉換結果集失敗", e);
+			}
+		}
+	}
+
+	// 讀取與轉換分開: fetch 只能在擁有結果集的執行緒調用, map 可以在任何執行緒調用
+	static final class SplitRowMapper<T> {
+
+		private final MethodHandle constructor;
+
+		private final ColumnReader[] readers;
+
+		// 使用建構子時每個欄位對應的參數位置, 使用 setter 時為 null
+		private final int[] positions;
+
+		SplitRowMapper(MethodHandle constructor, ColumnReader[] readers, int[] positions) {
+			this.constructor = constructor;
+			this.readers = readers;
+			this.positions = positions;
+		}
+
+		int getColumnCount() {
+			return readers.length;
+		}
+
+		/**
+		 * 把結果集目前的一行讀入 values
+		 */
+		void fetch(ResultSet rs, Object[] values) throws SQLException {
+			for (int i = 0; i < readers.length; i++)
+				values[i] = readers[i].get(rs);
+		}
+
+		/**
+		 * 以 fetch 讀出的值創建對象
+		 */
+		@SuppressWarnings("unchecked")
+		T map(Object[] values) throws SQLException {
+			try {
+				if (positions != null) {
+					Object[] args = new Object[readers.length];
+					for (int i = 0; i < readers.length; i++)
+						args[positions[i]] = values[i];
+					return (T) (Object) constructor.invokeExact(args);
+				}
+				Object t = (Object) constructor.invokeExact();
+				for (int i = 0; i < readers.length; i++)
+					readers[i].set(t, values[i]);
+				return (T) t;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new SQLException("轉換結果集失敗", e);
+			}
+		}
+	}
+
+	// 快取的鍵: 類與欄位別名
+	static final class Shape {
+
+		private final Class<?> clazz;
+
+		private final String[] labels;
+
+		private final int hash;
+
+		Shape(Class<?> clazz, String[] labels) {
+			this.clazz = clazz;
+			this.labels = labels;
+			this.hash = 31 * clazz.hashCode() + Arrays.hashCode(labels);
+		}
+
+		Class<?> getBeanClass() {
+			return clazz;
+		}
+
+		String[] getLabels() {
+			return labels;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Shape))
+				return false;
+			Shape other = (Shape) obj;
+			return clazz == other.clazz && Arrays.equals(labels, other.labels);
+		}
+	}
+}
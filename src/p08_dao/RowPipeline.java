@@ -0,0 +1,138 @@
+package p08_dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * ClassName: RowPipeline.java
+ * PackageName: p08_dao
+ * Description: BulkLoader 的有界管線: 生產者執行緒從 RowSource 讀取, 每 chunkRows 行放進一個區塊,
+ * 				區塊放進容量為 capacity 的佇列; 寫入的一方(調用 BulkLoader.load 的執行緒)依序取出.
+ * 				寫入較慢時佇列滿了, 生產者就停下來等待, 記憶體中最多只有 (capacity + 2) * chunkRows 行.
+ * 				讀取來源失敗時, 寫入的一方在取到最後一個區塊後收到 SQLException.
+ */
+final class RowPipeline implements AutoCloseable {
+
+	// 結束的標記
+	private static final List<Object[]> END = Collections.emptyList();
+
+	private final BlockingQueue<List<Object[]>> queue;
+
+	private final Thread producer;
+
+	private volatile Throwable failure;
+
+	private boolean finished;
+
+	private long rows;
+
+	RowPipeline(RowSource source, int chunkRows, int capacity) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.producer = new Thread(() -> produce(source, chunkRows), "bulk-loader-producer");
+		this.producer.setDaemon(true);
+		this.producer.start();
+	}
+
+	private void produce(RowSource source, int chunkRows) {
+		try (RowSource s = source) {
+			List<Object[]> chunk = new ArrayList<>(chunkRows);
+			Object[] row;
+			while ((row = s.next()) != null) {
+				chunk.add(row);
+				if (chunk.size() == chunkRows) {
+					queue.put(chunk);
+					chunk = new ArrayList<>(chunkRows);
+				}
+			}
+			if (!chunk.isEmpty())
+				queue.put(chunk);
+		} catch (InterruptedException e) {
+			return; // close(): 寫入的一方已經不再取出
+		} catch (Throwable e) {
+			failure = e;
+		}
+		try {
+			queue.put(END);
+		} catch (InterruptedException e) {
+			// close()
+		}
+	}
+
+	/**
+	 * 下一個區塊, 沒有更多的行時返回 null
+	 */
+	List<Object[]> take() throws SQLException {
+		if (finished)
+			return null;
+		List<Object[]> chunk;
+		try {
+			chunk = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("等待來源的資料時被中斷", e);
+		}
+		if (chunk == END) {
+			finished = true;
+			Throwable e = failure;
+			if (e instanceof SQLException)
+				throw new SQLException("讀取來源失敗: " + e.getMessage(), ((SQLException) e).getSQLState(), e);
+			if (e != null)
+				throw new SQLException("讀取來源失敗: " + e, e);
+			return null;
+		}
+		rows += chunk.size();
+		return chunk;
+	}
+
+	/**
+	 * 已經取出的行數
+	 */
+	long getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * 以逐行的方式取出(給 BaseDAO.updateBatch 使用), 讀取來源失敗時拋出 UncheckedSQLException
+	 */
+	Iterable<Object[]> rows() {
+		return () -> new Iterator<Object[]>() {
+
+			private Iterator<Object[]> chunk = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!chunk.hasNext()) {
+					List<Object[]> next;
+					try {
+						next = take();
+					} catch (SQLException e) {
+						throw new UncheckedSQLException(e);
+					}
+					if (next == null)
+						return false;
+					chunk = next.iterator();
+				}
+				return true;
+			}
+
+			@Override
+			public Object[] next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return chunk.next();
+			}
+		};
+	}
+
+	// 寫入失敗時停止生產者
+	@Override
+	public void close() {
+		producer.interrupt();
+	}
+}
@@ -0,0 +1,131 @@
+package p08_dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ClassName: RowSource.java
+ * PackageName: p08_dao
+ * Description: BulkLoader 讀取的來源, 每次返回一行的欄位值, 讀完時返回 null.
+ * 				提供 CSV, Iterator 與另一個 ResultSet 三種來源; BulkLoader 在自己的執行緒中讀取, 讀完後調用 close().
+ */
+@FunctionalInterface
+public interface RowSource extends AutoCloseable {
+
+	/**
+	 * 下一行的欄位值, 沒有更多的行時返回 null
+	 */
+	Object[] next() throws Exception;
+
+	@Override
+	default void close() throws Exception {
+	}
+
+	/**
+	 * 依序返回 rows 的元素
+	 */
+	static RowSource of(Iterator<Object[]> rows) {
+		return () -> rows.hasNext() ? rows.next() : null;
+	}
+
+	/**
+	 * 逐行讀取 rs 的所有欄位(getObject), 例如從另一個資料庫複製資料表; rs 由調用者關閉.
+	 * rs 在生產者執行緒中讀取, 不可以與寫入使用同一條連接.
+	 */
+	static RowSource of(ResultSet rs) throws SQLException {
+		int columns = rs.getMetaData().getColumnCount();
+		return () -> {
+			if (!rs.next())
+				return null;
+			Object[] row = new Object[columns];
+			for (int i = 0; i < columns; i++)
+				row[i] = rs.getObject(i + 1);
+			return row;
+		};
+	}
+
+	/**
+	 * 逐行讀取以逗號分隔的 CSV(RFC 4180: 欄位可以用雙引號括起來, 引號中的 "" 為一個雙引號, 可以換行),
+	 * 欄位值為 String, 沒有引號的空欄位為 null, 空行略過. header 為 true 時略過第一行. 讀完後關閉 reader.
+	 * 引號的格式錯誤(結束的引號後面不是逗號或換行, 沒有引號的欄位中有引號, 引號沒有結束)時拋出 IOException.
+	 */
+	static RowSource csv(Reader reader, boolean header) {
+		BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+		return new RowSource() {
+
+			private final List<Object> fields = new ArrayList<>();
+
+			private final StringBuilder field = new StringBuilder();
+
+			private boolean skipHeader = header;
+
+			@Override
+			public Object[] next() throws IOException {
+				Object[] row = read();
+				if (skipHeader && row != null) {
+					skipHeader = false;
+					row = read();
+				}
+				return row;
+			}
+
+			private Object[] read() throws IOException {
+				int c = in.read();
+				while (c == '\n' || c == '\r') // 空行
+					c = in.read();
+				if (c == -1)
+					return null;
+				fields.clear();
+				while (true) {
+					field.setLength(0);
+					boolean quoted = false;
+					if (c == '"') {
+						quoted = true;
+						while (true) {
+							c = in.read();
+							if (c == -1)
+								throw new IOException("CSV 的引號沒有結束");
+							if (c == '"') {
+								c = in.read();
+								if (c != '"')
+									break;
+							}
+							field.append((char) c);
+						}
+						if (c != ',' && c != '\n' && c != '\r' && c != -1)
+							throw new IOException("CSV 的引號結束後有多餘的字元: " + (char) c);
+					} else {
+						while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+							if (c == '"')
+								throw new IOException("CSV 沒有引號的欄位中有引號: " + field + '"');
+							field.append((char) c);
+							c = in.read();
+						}
+					}
+					fields.add(!quoted && field.length() == 0 ? null : field.toString());
+					if (c == ',') {
+						c = in.read();
+						continue;
+					}
+					if (c == '\r') {
+						in.mark(1);
+						if (in.read() != '\n')
+							in.reset();
+					}
+					return fields.toArray();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+}
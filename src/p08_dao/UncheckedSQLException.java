@@ -0,0 +1,26 @@
+package p08_dao;
+
+import java.sql.SQLException;
+
+/**
+ * ClassName: UncheckedSQLException.java
+ * PackageName: p08_dao
+ * Description: 在 Stream, Iterator 等不能拋出 SQLException 的地方包裝 SQLException(與 java.io.UncheckedIOException 相同)
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedSQLException(SQLException cause) {
+		super(cause);
+	}
+
+	public UncheckedSQLException(String message, SQLException cause) {
+		super(message, cause);
+	}
+
+	@Override
+	public synchronized SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+}
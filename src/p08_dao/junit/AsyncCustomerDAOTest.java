@@ -0,0 +1,147 @@
+package p08_dao.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import p08_dao.AsyncCustomerDAO;
+import p08_dao.CustomerDAOImpl;
+import p09_util.BagDataSource;
+import p09_util.PoolFactory;
+import p09_util.SemaphoreDataSource;
+
+/**
+ * ClassName: AsyncCustomerDAOTest.java
+ * PackageName: p08_dao.junit
+ * Description: 以 100000 條虛擬執行緒同時調用 getCustomerById/update 的壓力測試
+ * 				在 Java 21 上使用 -Djdk.tracePinnedThreads=full 執行(其他情況略過這個測試),
+ * 				虛擬執行緒被釘住時 JDK 會把堆疊印到 System.out, 測試檢查其中沒有 p08_dao/p09_util 的程式碼,
+ * 				並檢查任務確實在虛擬執行緒上執行, 查詢返回 id 為 12 的客戶, 更新返回 1 行.
+ * 				注意: MySQL Connector/J 8.x 內部使用 synchronized, 要完全不釘住需換成 9.x 以上的驅動.
+ */
+class AsyncCustomerDAOTest {
+
+	private static final int TASKS = 100_000;
+
+	// 以原來的名字更新 id 為 12 的客戶, 返回更新的行數
+	private static final String UPDATE = "UPDATE customers SET name = ? WHERE id = ?";
+
+	@Test
+	void testVirtualThreads() throws Exception {
+		assumeTrue(Runtime.version().feature() >= 21 && System.getProperty("jdk.tracePinnedThreads") != null,
+				"需要 Java 21 與 -Djdk.tracePinnedThreads");
+		Properties overrides = new Properties();
+		overrides.setProperty("threadAffinity", "false");
+		BagDataSource pool = PoolFactory.createBag(overrides);
+		SemaphoreDataSource source = new SemaphoreDataSource(pool, pool.getMaxPoolSize(), 60_000);
+
+		// 攔截 System.out, 收集 jdk.tracePinnedThreads 的輸出
+		PrintStream out = System.out;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(new TeeOutputStream(out, captured), true));
+
+		// BaseDAO 的查詢與更新出錯時只印出堆疊並返回 null/0, 所以檢查實際的結果而不只是例外
+		AtomicInteger failures = new AtomicInteger();
+		AtomicInteger missing = new AtomicInteger();
+		AtomicInteger notUpdated = new AtomicInteger();
+		AtomicInteger platformTasks = new AtomicInteger();
+		CustomerDAOImpl customers = new CustomerDAOImpl();
+		long start = System.currentTimeMillis();
+		ExecutorService executor = AsyncCustomerDAO.newVirtualThreadExecutor(200);
+		try {
+			AsyncCustomerDAO dao = new AsyncCustomerDAO(source, executor);
+			List<CompletableFuture<?>> futures = new ArrayList<>(TASKS);
+			for (int i = 0; i < TASKS; i++) {
+				CompletableFuture<?> future;
+				if (i % 10 == 0)
+					future = dao.getCustomerById(12).thenCompose(cust -> {
+						if (cust == null || cust.getId() != 12) {
+							missing.incrementAndGet();
+							return CompletableFuture.completedFuture(null);
+						}
+						return dao.submit(conn -> customers.update(conn, UPDATE, cust.getName(), cust.getId()))
+								.thenAccept(rows -> {
+									if (rows != 1)
+										notUpdated.incrementAndGet();
+								});
+					});
+				else if (i % 100 == 1) // 檢查執行任務的執行緒
+					future = dao.submit(conn -> isVirtual(Thread.currentThread()) ? 0 : platformTasks.incrementAndGet());
+				else
+					future = dao.getCustomerById(12).thenAccept(cust -> {
+						if (cust == null || cust.getId() != 12)
+							missing.incrementAndGet();
+					});
+				futures.add(future.exceptionally(e -> {
+					failures.incrementAndGet();
+					return null;
+				}));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+			System.setOut(out);
+			source.close();
+		}
+		long end = System.currentTimeMillis();
+		System.out.println(TASKS + " 個任務花費時間: " + (end - start) + ", 失敗: " + failures.get() + ", 查不到: "
+				+ missing.get() + ", 沒有更新: " + notUpdated.get());
+
+		assertEquals(0, failures.get());
+		assertEquals(0, missing.get(), "getCustomerById(12) 沒有返回 id 為 12 的客戶");
+		assertEquals(0, notUpdated.get(), "update 沒有更新一行");
+		assertEquals(0, platformTasks.get(), "任務沒有在虛擬執行緒上執行");
+		for (String line : captured.toString().split("\\R")) {
+			if (line.contains("<== monitors"))
+				assertTrue(!line.contains("p08_dao.") && !line.contains("p09_util."), "虛擬執行緒被釘住: " + line);
+		}
+	}
+
+	// Thread.isVirtual() 是 Java 21 的方法, 以反射調用(與 AsyncCustomerDAO.newVirtualThreadExecutor 相同)
+	private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+		return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+	}
+
+	// 同時寫到兩個輸出流
+	private static class TeeOutputStream extends OutputStream {
+		private final OutputStream first;
+		private final OutputStream second;
+
+		TeeOutputStream(OutputStream first, OutputStream second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public void write(int b) throws java.io.IOException {
+			first.write(b);
+			second.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws java.io.IOException {
+			first.write(b, off, len);
+			second.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws java.io.IOException {
+			first.flush();
+			second.flush();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package p08_dao.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.AbstractList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p08_dao.BatchResult;
+import p08_dao.CustomerDAOImpl;
+
+/**
+ * ClassName: BatchUpdateBenchmark.java
+ * PackageName: p08_dao.junit
+ * Description: 以 BaseDAO.updateBatch 重做 InsertTest.InsertTest3 的批量插入, 比較固定 500 行一批與自動調整批次大小,
+ * 				並測試失敗的行(重複的唯一鍵)的回報. 插入到 batch_goods 表, 測試完畢後刪除.
+ * 				-Dbench.rows 為插入的行數(預設 1000000)
+ */
+class BatchUpdateBenchmark {
+
+	private static final String INSERT = "INSERT INTO batch_goods(name) VALUES(?)";
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	@Test
+	void testFixedVsAdaptive() throws Exception {
+		int rows = Integer.getInteger("bench.rows", 1_000_000);
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			create(conn);
+			dao.setAdaptiveBatch(false);
+			BatchResult fixed = dao.updateBatch(conn, INSERT, names("fixed_", rows));
+			System.out.println("固定 500 行一批: " + fixed);
+
+			dao.update(conn, "TRUNCATE TABLE batch_goods");
+			dao.setAdaptiveBatch(true);
+			BatchResult adaptive = dao.updateBatch(conn, INSERT, names("adaptive_", rows));
+			System.out.println("自動調整批次大小: " + adaptive);
+
+			assertEquals(rows, fixed.getTotalUpdated() + countNoInfo(fixed));
+			assertEquals(rows, adaptive.getTotalUpdated() + countNoInfo(adaptive));
+		} finally {
+			dao.update(conn, "DROP TABLE IF EXISTS batch_goods");
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	@Test
+	void testFailures() throws Exception {
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			create(conn);
+			dao.update(conn, INSERT, "dup_7");
+			dao.update(conn, INSERT, "dup_1500");
+			BatchResult result = dao.updateBatch(conn, INSERT, new AbstractList<Object[]>() {
+				@Override
+				public Object[] get(int index) {
+					return new Object[] { index == 7 || index == 1500 ? "dup_" + index : "name_" + index };
+				}
+
+				@Override
+				public int size() {
+					return 2000;
+				}
+			});
+			System.out.println(result);
+			result.getFailures().forEach(System.out::println);
+			assertEquals(2, result.getFailures().size());
+			assertEquals(Statement.EXECUTE_FAILED, result.getUpdateCount(7));
+			assertEquals(Statement.EXECUTE_FAILED, result.getUpdateCount(1500));
+			assertEquals(2000, ((Number) dao.getValue(conn, "SELECT count(*) FROM batch_goods")).intValue());
+		} finally {
+			dao.update(conn, "DROP TABLE IF EXISTS batch_goods");
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	private void create(Connection conn) {
+		dao.update(conn, "DROP TABLE IF EXISTS batch_goods");
+		dao.update(conn, "CREATE TABLE batch_goods(id INT PRIMARY KEY AUTO_INCREMENT, name VARCHAR(25) UNIQUE)");
+	}
+
+	// 不建立 rows 個陣列的 List
+	private static List<Object[]> names(String prefix, int rows) {
+		return new AbstractList<Object[]>() {
+			@Override
+			public Object[] get(int index) {
+				return new Object[] { prefix + (index + 1) };
+			}
+
+			@Override
+			public int size() {
+				return rows;
+			}
+		};
+	}
+
+	// rewriteBatchedStatements 時 MySQL 回報 SUCCESS_NO_INFO
+	private static int countNoInfo(BatchResult result) {
+		int count = 0;
+		for (int c : result.getUpdateCounts())
+			if (c == Statement.SUCCESS_NO_INFO)
+				count++;
+		return count;
+	}
+}
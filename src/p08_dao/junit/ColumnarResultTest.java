@@ -0,0 +1,227 @@
+package p08_dao.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p08_dao.ColumnarResult;
+import p08_dao.ColumnarResult.DateColumn;
+import p08_dao.ColumnarResult.DecimalColumn;
+import p08_dao.ColumnarResult.DoubleColumn;
+import p08_dao.ColumnarResult.IntColumn;
+import p08_dao.ColumnarResult.LongColumn;
+import p08_dao.ColumnarResult.StringColumn;
+import p08_dao.CustomerDAOImpl;
+
+/**
+ * ClassName: ColumnarResultTest.java
+ * PackageName: p08_dao.junit
+ * Description: 比較 List<Customer> 與 ColumnarResult 的記憶體用量與掃描速度
+ * 				以 customers 表自己交叉連接產生大量的行, -Dbench.rows 為行數(預設 2000000).
+ * 				掃描的條件: 1990 年以後出生且 id 在 1 ~ 10 之間, 計算符合條件的行數與 id 的總和(兩者必須相同).
+ * 				testTypes, testHighCardinality 以內嵌的 H2 資料庫(記憶體模式, 需要 h2 的 jar)檢查每種欄位的類型, null 的位元圖,
+ * 				過濾返回的行號, DECIMAL 的精確度, 以及不同字串太多時改為直接存放字串.
+ */
+class ColumnarResultTest {
+
+	private static final String SQL = "SELECT c1.id, c1.name, c1.email, c1.birth "
+			+ "FROM customers c1, customers c2, customers c3, customers c4, customers c5 LIMIT ?";
+
+	private static final LocalDate FROM = LocalDate.of(1990, 1, 1);
+
+	private static final String H2_URL = "jdbc:h2:mem:columnar;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	@Test
+	void testColumnar() throws Exception {
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			ColumnarResult result = dao.getColumnar(conn, "SELECT id, name, email, birth FROM customers");
+			StringColumn name = result.getStrings("name");
+			DateColumn birth = result.getDates("birth");
+			for (int row = 0; row < Math.min(result.size(), 5); row++)
+				System.out.println(result.getInts("id").get(row) + ", " + name.get(row) + ", " + birth.get(row));
+			System.out.println("行數: " + result.size() + ", 不同的 name: " + name.getCardinality());
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	@Test
+	void testHeapAndScan() throws Exception {
+		long rows = Long.getLong("bench.rows", 2_000_000);
+		Runtime runtime = Runtime.getRuntime();
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			long before = used(runtime);
+			List<Customer> list = dao.getForList(conn, SQL, rows);
+			long listHeap = used(runtime) - before;
+			System.out.println("List<Customer>: " + list.size() + " 行, 記憶體: " + listHeap / 1024 / 1024 + "MB");
+
+			scanList(list); // 預熱
+			long start = System.currentTimeMillis();
+			long[] listAnswer = scanList(list);
+			long[] answer = listAnswer;
+			long end = System.currentTimeMillis();
+			System.out.println("List<Customer> 掃描: " + answer[0] + " 行, id 總和 " + answer[1] + ", 花費時間: " + (end - start) + "ms");
+			list = null;
+
+			before = used(runtime);
+			ColumnarResult result = dao.getColumnar(conn, SQL, rows);
+			long columnarHeap = used(runtime) - before;
+			System.out.println("ColumnarResult: " + result.size() + " 行, 記憶體: " + columnarHeap / 1024 / 1024 + "MB");
+
+			scanColumnar(result);
+			start = System.currentTimeMillis();
+			answer = scanColumnar(result);
+			end = System.currentTimeMillis();
+			System.out.println("ColumnarResult 掃描: " + answer[0] + " 行, id 總和 " + answer[1] + ", 花費時間: " + (end - start) + "ms");
+			assertEquals(rows, result.size());
+			assertEquals(listAnswer[0], answer[0]);
+			assertEquals(listAnswer[1], answer[1]);
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	// 每種類型與 null: 第 4 行(從 0 開始)的 id, 第 1 行的 big 與 ratio, 第 2 行的 price, birth, city, 第 3 行的 code 為 null
+	@Test
+	void testTypes() throws Exception {
+		try (Connection conn = DriverManager.getConnection(H2_URL)) {
+			try (Statement st = conn.createStatement()) {
+				st.execute("CREATE TABLE t(id INT, big BIGINT, price DECIMAL(10, 2), ratio DOUBLE, birth DATE, "
+						+ "city VARCHAR(10), code VARCHAR(10))");
+				st.execute("INSERT INTO t VALUES"
+						+ "(1, 10000000000, 0.10, 0.5, DATE '1985-03-01', 'Taipei', 'A1'),"
+						+ "(2, NULL, 0.20, NULL, DATE '1990-01-01', 'Tainan', 'A2'),"
+						+ "(3, 30000000000, NULL, 1.5, NULL, NULL, 'A3'),"
+						+ "(4, 40000000000, 12345678.99, 2.5, DATE '1999-12-31', 'Taipei', NULL),"
+						+ "(NULL, 5, 0.30, 3.5, DATE '2000-01-01', 'Taipei', 'A5'),"
+						+ "(6, 6, -0.01, 4.5, DATE '1995-06-15', 'Tainan', 'A6')");
+			}
+			ColumnarResult result;
+			try {
+				result = dao.getColumnar(conn, "SELECT id, big, price, ratio, birth, city, code FROM t");
+			} finally {
+				try (Statement st = conn.createStatement()) {
+					st.execute("DROP TABLE t");
+				}
+			}
+			assertEquals(6, result.size());
+			assertTrue(result.getColumn("id") instanceof IntColumn);
+			assertTrue(result.getColumn("big") instanceof LongColumn);
+			assertTrue(result.getColumn("price") instanceof DecimalColumn);
+			assertTrue(result.getColumn("ratio") instanceof DoubleColumn);
+			assertTrue(result.getColumn("birth") instanceof DateColumn);
+			assertTrue(result.getColumn("city") instanceof StringColumn);
+			assertTrue(result.getColumn("code") instanceof StringColumn);
+
+			// null 的位元圖
+			IntColumn id = result.getInts("id");
+			assertTrue(id.isNull(4));
+			assertNull(id.getObject(4));
+			assertFalse(id.isNull(0));
+			assertTrue(result.getLongs("big").isNull(1));
+			assertEquals(30_000_000_000L, result.getLongs("big").get(2));
+			assertTrue(result.getDoubles("ratio").isNull(1));
+			assertTrue(result.getDates("birth").isNull(2));
+			assertNull(result.getStrings("city").get(2));
+			assertNull(result.getStrings("code").get(3));
+
+			// 過濾: 為 null 的行(陣列中的值為 0)不在結果中
+			assertRows(id.between(0, 6), 0, 1, 2, 3, 5);
+			assertEquals(16, id.sum(id.between(0, 6)));
+			assertRows(result.getDates("birth").between(LocalDate.of(1990, 1, 1), LocalDate.of(1999, 12, 31)), 1, 3, 5);
+			StringColumn city = result.getStrings("city");
+			assertTrue(city.isDictionaryEncoded());
+			assertEquals(2, city.getCardinality());
+			assertRows(city.equalTo("Taipei"), 0, 3, 4);
+			assertRows(city.equalTo("Nowhere"));
+			assertRows(ColumnarResult.and(city.equalTo("Tainan"), id.between(2, 6)), 1, 5);
+
+			// DECIMAL 不經過 double: 0.10 + 0.20 + 0.30 恰好是 0.60
+			DecimalColumn price = result.getDecimals("price");
+			assertEquals(2, price.getScale());
+			assertTrue(price.isNull(2));
+			assertEquals(new BigDecimal("12345678.99"), price.get(3));
+			assertEquals(new BigDecimal("-0.01"), price.get(5));
+			int[] cheap = price.between(BigDecimal.ZERO, BigDecimal.ONE);
+			assertRows(cheap, 0, 1, 4);
+			assertEquals(new BigDecimal("0.60"), price.sum(cheap));
+			// 邊界的小數位數比欄位多: 0.105 以上即 0.11 以上
+			assertRows(price.between(new BigDecimal("0.105"), new BigDecimal("0.3")), 1, 4);
+
+			// code 幾乎不重複(5 個不同的字串, 6 行), 直接存放字串
+			StringColumn code = result.getStrings("code");
+			assertFalse(code.isDictionaryEncoded());
+			assertEquals(-1, code.getCode(0));
+			assertEquals(5, code.getCardinality());
+			assertRows(code.equalTo("A5"), 4);
+			assertRows(code.startsWith("A"), 0, 1, 2, 4, 5);
+		}
+	}
+
+	// 讀取中不同字串的個數超過行數的一半時改為直接存放字串, 重複多的欄位仍以字典編碼
+	@Test
+	void testHighCardinality() throws Exception {
+		int rows = 5000;
+		try (Connection conn = DriverManager.getConnection(H2_URL)) {
+			ColumnarResult result = dao.getColumnar(conn, "SELECT CONCAT('c', x) AS unique_name, "
+					+ "CONCAT('c', MOD(x, 10)) AS repeated_name FROM SYSTEM_RANGE(1, ?)", rows);
+			assertEquals(rows, result.size());
+			StringColumn unique = result.getStrings("unique_name");
+			assertFalse(unique.isDictionaryEncoded());
+			assertEquals(rows, unique.getCardinality());
+			for (int row = 0; row < rows; row++)
+				assertEquals("c" + (row + 1), unique.get(row));
+			assertRows(unique.equalTo("c4321"), 4320);
+			StringColumn repeated = result.getStrings("repeated_name");
+			assertTrue(repeated.isDictionaryEncoded());
+			assertEquals(10, repeated.getCardinality());
+			assertEquals(rows / 10, repeated.equalTo("c7").length);
+		}
+	}
+
+	private static void assertRows(int[] actual, int... expected) {
+		assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+	}
+
+	private static long[] scanList(List<Customer> list) {
+		Date from = Date.from(FROM.atStartOfDay(ZoneId.systemDefault()).toInstant());
+		long count = 0, sum = 0;
+		for (Customer cust : list) {
+			if (cust.getBirth() != null && !cust.getBirth().before(from) && cust.getId() >= 1 && cust.getId() <= 10) {
+				count++;
+				sum += cust.getId();
+			}
+		}
+		return new long[] { count, sum };
+	}
+
+	private static long[] scanColumnar(ColumnarResult result) {
+		IntColumn id = result.getInts("id");
+		int[] rows = ColumnarResult.and(result.getDates("birth").between(FROM, LocalDate.MAX), id.between(1, 10));
+		return new long[] { rows.length, id.sum(rows) };
+	}
+
+	private static long used(Runtime runtime) {
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,79 @@
+package p08_dao.junit;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p04_bean.Order;
+import p08_dao.RowMapper;
+import p08_dao.RowMappers;
+
+/**
+ * ClassName: ConstructorMappingBenchmark.java
+ * PackageName: p08_dao.junit
+ * Description: 比較以無參建構子加 setter 與以全參建構子轉換結果集
+ * 				每次與 getForList 相同: 執行查詢, 逐行轉換並加入 ArrayList, 測量花費時間與每行分配的記憶體.
+ * 				-Dbench.loops 為查詢的次數(預設 2000)
+ */
+class ConstructorMappingBenchmark {
+
+	@Test
+	void testCustomer() throws Exception {
+		run(Customer.class, "SELECT id, name, email, birth FROM customers");
+	}
+
+	@Test
+	void testOrder() throws Exception {
+		run(Order.class, "SELECT order_id, order_name, order_date FROM `order`");
+	}
+
+	private <T> void run(Class<T> clazz, String sql) throws Exception {
+		int loops = Integer.getInteger("bench.loops", 2000);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			RowMapper<T> setters;
+			RowMapper<T> constructor;
+			try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+				setters = RowMappers.bySetters(clazz, rs.getMetaData());
+				constructor = RowMappers.byConstructor(clazz, rs.getMetaData());
+			}
+			for (int i = 0; i < loops / 10; i++) { // 預熱
+				list(conn, sql, setters);
+				list(conn, sql, constructor);
+			}
+			for (RowMapper<T> mapper : new RowMapper[] { setters, constructor }) {
+				String name = mapper == setters ? "無參建構子 + setter" : "全參建構子";
+				long rows = 0;
+				long before = threads.getThreadAllocatedBytes(thread);
+				long start = System.currentTimeMillis();
+				for (int i = 0; i < loops; i++)
+					rows += list(conn, sql, mapper).size();
+				long end = System.currentTimeMillis();
+				long after = threads.getThreadAllocatedBytes(thread);
+				System.out.println(clazz.getSimpleName() + " " + name + ": " + rows + " 行, 花費時間: " + (end - start)
+						+ "ms, 每行分配 " + (after - before) / Math.max(rows, 1) + " bytes(包括驅動讀取資料)");
+			}
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	// 與 BaseDAO.getForList 相同的迴圈, 只是使用指定的 RowMapper
+	private static <T> List<T> list(Connection conn, String sql, RowMapper<T> mapper) throws Exception {
+		try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+			List<T> list = new ArrayList<>();
+			while (rs.next())
+				list.add(mapper.mapRow(rs));
+			return list;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package p08_dao.junit;
 
 import java.sql.Connection;
 import java.sql.Date;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -9,6 +10,8 @@ import org.junit.jupiter.api.Test;
 import p02_util.JDBCUtils;
 import p04_bean.Customer;
 import p08_dao.CustomerDAOImpl;
+import p08_dao.Page;
+import p08_dao.PageIterator;
 
 class CustomerDAOImplTest {
 	
@@ -30,6 +33,24 @@ class CustomerDAOImplTest {
 		}
 	}
 
+	@Test
+	void testInsertAll() {
+		Connection conn = null;
+		try {
+			conn = JDBCUtils.getConnection();
+			List<Customer> custs = Arrays.asList(new Customer(0, "小明", "ming@cc.com", new Date(43534646435L)),
+					new Customer(0, "小華", "hua@cc.com", new Date(43534646435L)),
+					new Customer(0, "小美", "mei@cc.com", new Date(43534646435L)));
+			int count = dao.insertAll(conn, custs);
+			System.out.println("添加了 " + count + " 條: " + custs); // id 為資料庫產生的自增主鍵
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
 	@Test
 	void testDeleteById() {
 		Connection conn = null;
@@ -120,4 +141,41 @@ class CustomerDAOImplTest {
 			JDBCUtils.closeResource(conn, null);
 		}
 	}
+
+	@Test
+	void testGetPage() {
+		Connection conn = null;
+		try {
+			conn = JDBCUtils.getConnection();
+			Page<Customer> page = dao.getPage(conn, (String) null, 3);
+			while (true) {
+				System.out.println(page + ": " + page.getItems());
+				if (!page.hasNext())
+					break;
+				page = dao.getPage(conn, page.getNextToken(), 3);
+			}
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	@Test
+	void testIterateAll() {
+		Connection conn = null;
+		try {
+			conn = JDBCUtils.getConnection();
+			PageIterator<Customer> it = dao.iterateAll(conn, 5);
+			while (it.hasNext())
+				System.out.println(it.next());
+			System.out.println("共查詢了 " + it.getPageCount() + " 頁");
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
 }
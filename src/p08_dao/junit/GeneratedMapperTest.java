@@ -0,0 +1,68 @@
+package p08_dao.junit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p04_bean.Order;
+import p06_transaction.User;
+import p08_dao.BaseDAO;
+import p08_dao.CustomerDAOImpl;
+import p08_dao.RowMappers;
+
+/**
+ * ClassName: GeneratedMapperTest.java
+ * PackageName: p08_dao.junit
+ * Description: 測試 MapperProcessor 產生的 RowMapper 與 Binder
+ * 				以 javac -processor p08_dao.processor.MapperProcessor 編譯時使用產生的類,
+ * 				沒有使用 MapperProcessor 時自動改用 MethodHandle, 結果相同.
+ */
+class GeneratedMapperTest {
+
+	// Order 的屬性上有 @Column, SQL 中不需要 order_id orderId 這樣的別名
+	@Test
+	void testOrderWithoutAlias() throws Exception {
+		BaseDAO<Order> dao = new BaseDAO<Order>() {
+		};
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			String sql = "SELECT order_id, order_name, order_date FROM `order` WHERE order_id = ?";
+			System.out.println(dao.getInstance(conn, sql, 1));
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	@Test
+	void testUser() throws Exception {
+		BaseDAO<User> dao = new BaseDAO<User>() {
+		};
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			String sql = "SELECT user, password, balance FROM user_table WHERE user = ?";
+			System.out.println(dao.getInstance(conn, sql, "AA"));
+			try (PreparedStatement ps = conn.prepareStatement(sql)) {
+				System.out.println("使用的 RowMapper: " + RowMappers.of(User.class, ps.getMetaData()).getClass());
+			}
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	// CustomerDAOImpl 的 insert 與 update 以 Binder 填入佔位符
+	@Test
+	void testUpdateBean() throws Exception {
+		CustomerDAOImpl dao = new CustomerDAOImpl();
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			Customer cust = dao.getCustomerById(conn, 12);
+			dao.update(conn, cust);
+			System.out.println(dao.getCustomerById(conn, 12));
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+}
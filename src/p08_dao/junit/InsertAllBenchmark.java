@@ -0,0 +1,69 @@
+package p08_dao.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p08_dao.CustomerDAOImpl;
+
+/**
+ * ClassName: InsertAllBenchmark.java
+ * PackageName: p08_dao.junit
+ * Description: 比較逐條 insert 後再查詢 id 與 CustomerDAO.insertAll 批次插入並取回自增主鍵的花費
+ * 				兩種方式都在交易中執行, 結束後回滾, 不改變 customers 表.
+ * 				-Dbench.rows 為插入的條數(預設 20000)
+ */
+class InsertAllBenchmark {
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	@Test
+	void testInsertAll() throws Exception {
+		int rows = Integer.getInteger("bench.rows", 20_000);
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			conn.setAutoCommit(false);
+
+			List<Customer> custs = customers("one_", rows);
+			long start = System.currentTimeMillis();
+			for (Customer cust : custs) {
+				dao.insert(conn, cust);
+				cust.setId(((Number) dao.getValue(conn, "SELECT LAST_INSERT_ID()")).intValue());
+			}
+			long end = System.currentTimeMillis();
+			System.out.println("逐條 insert 再查詢 id: " + rows + " 條, 花費時間: " + (end - start) + "ms");
+			conn.rollback();
+
+			custs = customers("batch_", rows);
+			start = System.currentTimeMillis();
+			int count = dao.insertAll(conn, custs);
+			end = System.currentTimeMillis();
+			System.out.println("insertAll: " + count + " 條, 花費時間: " + (end - start) + "ms");
+
+			// 寫回的 id 依照插入的順序遞增, 且與資料庫中的紀錄一致
+			for (int i = 1; i < custs.size(); i++)
+				assertTrue(custs.get(i).getId() > custs.get(i - 1).getId());
+			for (int i = 0; i < custs.size(); i += custs.size() / 10 + 1)
+				assertEquals(custs.get(i).getName(), dao.getCustomerById(conn, custs.get(i).getId()).getName());
+		} finally {
+			conn.rollback();
+			conn.setAutoCommit(true);
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	private static List<Customer> customers(String prefix, int rows) {
+		List<Customer> custs = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++)
+			custs.add(new Customer(0, prefix + i, prefix + i + "@cc.com", new Date(43534646435L)));
+		return custs;
+	}
+}
@@ -0,0 +1,84 @@
+package p08_dao.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import p08_dao.MultiRowInsert;
+
+/**
+ * ClassName: MultiRowInsertTest.java
+ * PackageName: p08_dao.junit
+ * Description: 測試 MultiRowInsert 對 SQL 的解析(不需要資料庫)
+ * 				能改寫的 INSERT 產生正確的多行 SQL; 引號中的 ?, 括號與兩個相同的引號不影響解析;
+ * 				多行, 佔位符在 VALUES 外, 字串中有反斜線, 有註解, 引號沒有結束的 SQL 不改寫.
+ */
+class MultiRowInsertTest {
+
+	@Test
+	void testRewrite() {
+		MultiRowInsert insert = parse("INSERT INTO t(a, b) VALUES(?, ?)");
+		assertEquals(2, insert.getParameterCount());
+		assertEquals("INSERT INTO t(a, b) VALUES(?, ?)", insert.sql(1));
+		assertEquals("INSERT INTO t(a, b) VALUES(?, ?), (?, ?), (?, ?)", insert.sql(3));
+
+		// 小寫, VALUE, 名為 value 的欄位
+		assertEquals("insert into t(value, b) value (?, now()), (?, now())",
+				parse("insert into t(value, b) value (?, now())").sql(2));
+		assertEquals(1, parse("REPLACE INTO t(a) VALUES(?)").getParameterCount());
+
+		// 沒有佔位符的 ON DUPLICATE KEY UPDATE 留在最後
+		assertEquals("INSERT INTO t(a) VALUES(?), (?) ON DUPLICATE KEY UPDATE a = VALUES(a)",
+				parse("INSERT INTO t(a) VALUES(?) ON DUPLICATE KEY UPDATE a = VALUES(a)").sql(2));
+	}
+
+	@Test
+	void testQuotes() {
+		// 引號中的 ? 不是佔位符, 引號中的括號不影響配對
+		assertEquals(1, parse("INSERT INTO t(a, b) VALUES(?, '?')").getParameterCount());
+		assertEquals("INSERT INTO t(a, b) VALUES(?, ')'), (?, ')')", parse("INSERT INTO t(a, b) VALUES(?, ')')").sql(2));
+		// 兩個相同的引號表示引號本身
+		assertEquals(1, parse("INSERT INTO t(a, b) VALUES(?, 'it''s (?')").getParameterCount());
+		assertEquals(2, parse("INSERT INTO \"my \"\"t\"\"\"(a, b) VALUES(?, ?)").getParameterCount());
+		// 識別字中的反斜線沒有跳脫的意思
+		assertEquals(1, parse("INSERT INTO `a\\b`(c) VALUES(?)").getParameterCount());
+		// 識別字中的 VALUES( 不是關鍵字
+		assertEquals("INSERT INTO `VALUES(`(a) VALUES(?), (?)", parse("INSERT INTO `VALUES(`(a) VALUES(?)").sql(2));
+	}
+
+	@Test
+	void testNotRewritten() {
+		assertNull(MultiRowInsert.of("SELECT * FROM t WHERE a = ?"));
+		assertNull(MultiRowInsert.of("UPDATE t SET a = ? WHERE b = ?"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) VALUES(1)"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) VALUES(?), (?)"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) SELECT a FROM s WHERE b = ?"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) VALUES(?) ON DUPLICATE KEY UPDATE a = ?"));
+	}
+
+	// 各資料庫解讀不同, 或以目前的掃描無法正確解析的寫法
+	@Test
+	void testAmbiguous() {
+		// MySQL 中 \' 是字串中的引號, 標準 SQL 中字串在 \ 之後就結束了
+		assertNull(MultiRowInsert.of("INSERT INTO t(a, b) VALUES(?, 'C:\\')"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a, b) VALUES(?, 'it\\'s ?')"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a, b) VALUES(?, \"a\\\"b\")"));
+		// 註解
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) -- VALUES(?)\nVALUES(?)"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) VALUES(?) -- 'note"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) /* ? */ VALUES(?)"));
+		assertNull(MultiRowInsert.of("INSERT INTO t(a) VALUES(?) # note"));
+		// 引號沒有結束
+		assertNull(MultiRowInsert.of("INSERT INTO t(a, b) VALUES(?, 'x)"));
+		// 引號中的 --, #, /* 不是註解
+		assertEquals(1, parse("INSERT INTO t(a, b) VALUES(?, '-- # /*')").getParameterCount());
+	}
+
+	private static MultiRowInsert parse(String sql) {
+		MultiRowInsert insert = MultiRowInsert.of(sql);
+		assertNotNull(insert, sql);
+		return insert;
+	}
+}
@@ -0,0 +1,91 @@
+package p08_dao.junit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p08_dao.CustomerDAOImpl;
+import p08_dao.Page;
+
+/**
+ * ClassName: PaginationBenchmark.java
+ * PackageName: p08_dao.junit
+ * Description: 比較鍵集分頁與 OFFSET 分頁在不同位置取得一頁的花費
+ * 				先以 customers 表交叉連接複製出 paging_customers 表(-Dbench.rows 行, 預設 1000000), 測試完畢後刪除.
+ * 				OFFSET 分頁要先掃過前面所有的行, 越後面越慢; 鍵集分頁以主鍵索引定位, 每一頁的花費都差不多.
+ */
+class PaginationBenchmark {
+
+	private static final String KEYSET = "SELECT id, name, email, birth FROM paging_customers WHERE id > ? ORDER BY id LIMIT ?";
+
+	private static final String OFFSET = "SELECT id, name, email, birth FROM paging_customers ORDER BY id LIMIT ? OFFSET ?";
+
+	private static final int PAGE_SIZE = 100;
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	@Test
+	void testKeysetVsOffset() throws Exception {
+		long rows = Long.getLong("bench.rows", 1_000_000);
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			create(conn, rows);
+			long maxId = ((Number) dao.getValue(conn, "SELECT max(id) FROM paging_customers")).longValue();
+			long minId = ((Number) dao.getValue(conn, "SELECT min(id) FROM paging_customers")).longValue();
+			for (double position : new double[] { 0, 0.25, 0.5, 0.75, 0.99 }) {
+				long offset = (long) (rows * position);
+				long afterId = minId - 1 + offset; // 複製出的 id 是連續的
+
+				long start = System.nanoTime();
+				List<Customer> byOffset = null;
+				for (int i = 0; i < 10; i++)
+					byOffset = dao.getForList(conn, OFFSET, PAGE_SIZE, offset);
+				long offsetNanos = (System.nanoTime() - start) / 10;
+
+				start = System.nanoTime();
+				Page<Customer> byKeyset = null;
+				for (int i = 0; i < 10; i++)
+					byKeyset = dao.getPage(conn, KEYSET, Customer::getId, afterId, PAGE_SIZE);
+				long keysetNanos = (System.nanoTime() - start) / 10;
+
+				System.out.println("第 " + offset + " 行開始的一頁: OFFSET " + offsetNanos / 1000 + "µs(" + byOffset.size()
+						+ " 行), 鍵集 " + keysetNanos / 1000 + "µs(" + byKeyset.size() + " 行)");
+			}
+
+			// 以令牌走完整個表
+			long start = System.currentTimeMillis();
+			long count = 0;
+			int pages = 0;
+			Page<Customer> page = dao.getPage(conn, KEYSET, Customer::getId, 0, 1000);
+			while (true) {
+				count += page.size();
+				pages++;
+				if (!page.hasNext())
+					break;
+				page = dao.getPage(conn, KEYSET, Customer::getId, Page.afterKey(page.getNextToken(), 0), 1000);
+			}
+			long end = System.currentTimeMillis();
+			System.out.println("鍵集分頁走完 " + count + " 行(最大 id " + maxId + "), " + pages + " 頁, 花費時間: " + (end - start) + "ms");
+		} finally {
+			dao.update(conn, "DROP TABLE IF EXISTS paging_customers");
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	private void create(Connection conn, long rows) throws Exception {
+		dao.update(conn, "DROP TABLE IF EXISTS paging_customers");
+		dao.update(conn, "CREATE TABLE paging_customers LIKE customers");
+		String sql = "INSERT INTO paging_customers(name, email, birth) SELECT c1.name, c1.email, c1.birth "
+				+ "FROM customers c1, customers c2, customers c3, customers c4, customers c5 LIMIT ?";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setLong(1, rows);
+			long start = System.currentTimeMillis();
+			ps.executeUpdate();
+			System.out.println("建立 paging_customers: " + rows + " 行, 花費時間: " + (System.currentTimeMillis() - start) + "ms");
+		}
+	}
+}
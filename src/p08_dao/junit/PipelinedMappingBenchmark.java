@@ -0,0 +1,56 @@
+package p08_dao.junit;
+
+import java.sql.Connection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p08_dao.CustomerDAOImpl;
+
+/**
+ * ClassName: PipelinedMappingBenchmark.java
+ * PackageName: p08_dao.junit
+ * Description: 比較 getForList 單執行緒的轉換與管線化的平行轉換
+ * 				以 customers 表自己交叉連接產生大量的行, -Dbench.rows 為行數(預設 2000000).
+ * 				管線化時讀取執行緒仍然要逐行讀取, 所以多核心的機器上才看得出差別.
+ */
+class PipelinedMappingBenchmark {
+
+	private static final String SQL = "SELECT c1.id, c1.name, c1.email, c1.birth "
+			+ "FROM customers c1, customers c2, customers c3, customers c4, customers c5 LIMIT ?";
+
+	@Test
+	void testSingleVsPipelined() throws Exception {
+		long rows = Long.getLong("bench.rows", 2_000_000);
+		System.out.println("CPU 核心數: " + Runtime.getRuntime().availableProcessors());
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			CustomerDAOImpl single = new CustomerDAOImpl();
+			single.setParallelThreshold(0);
+			CustomerDAOImpl ordered = new CustomerDAOImpl();
+			ordered.setParallelThreshold(10_000);
+			CustomerDAOImpl unordered = new CustomerDAOImpl();
+			unordered.setParallelThreshold(10_000);
+			unordered.setKeepOrder(false);
+
+			// 預熱
+			single.getForList(conn, SQL, rows / 10);
+			ordered.getForList(conn, SQL, rows / 10);
+
+			run("單執行緒", single, conn, rows);
+			run("管線化(保持順序)", ordered, conn, rows);
+			run("管線化(不保持順序)", unordered, conn, rows);
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	private static void run(String name, CustomerDAOImpl dao, Connection conn, long rows) {
+		long start = System.currentTimeMillis();
+		List<Customer> list = dao.getForList(conn, SQL, rows);
+		long end = System.currentTimeMillis();
+		System.out.println(name + ": " + list.size() + " 行, 花費時間: " + (end - start) + "ms");
+	}
+}
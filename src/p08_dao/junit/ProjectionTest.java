@@ -0,0 +1,84 @@
+package p08_dao.junit;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p08_dao.CustomerDAOImpl;
+
+/**
+ * ClassName: ProjectionTest.java
+ * PackageName: p08_dao.junit
+ * Description: 測試投影查詢, 並與查詢完整的 Customer 比較花費時間與分配的記憶體
+ * 				-Dbench.loops 為重複查詢的次數(預設 1000)
+ */
+class ProjectionTest {
+
+	// 只需要 name 與 email
+	record CustomerContact(String name, String email) {
+	}
+
+	interface CustomerName {
+		String getName();
+	}
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	@Test
+	void testProjection() throws Exception {
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			// 與 CustomerForQuery.testQueryForCustomers 相同的查詢, 不再創建其他屬性為預設值的 Customer
+			CustomerContact contact = dao.getProjection(conn, CustomerContact.class, "FROM customers WHERE name = ?", "汪風8");
+			System.out.println(contact);
+			List<CustomerName> names = dao.getProjections(conn, CustomerName.class, "FROM customers WHERE id < ?", 5);
+			names.forEach(System.out::println);
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	@Test
+	void testProjectionVsBean() throws Exception {
+		int loops = Integer.getInteger("bench.loops", 1000);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			for (int i = 0; i < loops / 10; i++) { // 預熱
+				dao.getAll(conn);
+				dao.getProjections(conn, CustomerContact.class, "FROM customers");
+			}
+
+			long rows = 0;
+			long before = threads.getThreadAllocatedBytes(thread);
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < loops; i++) {
+				List<Customer> list = dao.getAll(conn);
+				rows += list.size();
+			}
+			long end = System.currentTimeMillis();
+			long after = threads.getThreadAllocatedBytes(thread);
+			System.out.println("完整的 Customer: " + rows + " 行, 花費時間: " + (end - start) + "ms, 每行分配 "
+					+ (after - before) / Math.max(rows, 1) + " bytes");
+
+			rows = 0;
+			before = threads.getThreadAllocatedBytes(thread);
+			start = System.currentTimeMillis();
+			for (int i = 0; i < loops; i++) {
+				List<CustomerContact> list = dao.getProjections(conn, CustomerContact.class, "FROM customers");
+				rows += list.size();
+			}
+			end = System.currentTimeMillis();
+			after = threads.getThreadAllocatedBytes(thread);
+			System.out.println("CustomerContact 投影: " + rows + " 行, 花費時間: " + (end - start) + "ms, 每行分配 "
+					+ (after - before) / Math.max(rows, 1) + " bytes");
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package p08_dao.junit;
+
+import java.sql.Connection;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p08_dao.CustomerDAOImpl;
+import p08_dao.QueryPlans;
+
+/**
+ * ClassName: QueryPlanBenchmark.java
+ * PackageName: p08_dao.junit
+ * Description: 比較使用與不使用 SQL 執行計畫快取時 getCustomerById 的花費
+ * 				不使用快取時每次查詢前清空 QueryPlans, 每次都要讀取 ResultSetMetaData 並比對欄位別名.
+ * 				-Dbench.loops 為查詢的次數(預設 20000)
+ */
+class QueryPlanBenchmark {
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	@Test
+	void testPlanCache() throws Exception {
+		int loops = Integer.getInteger("bench.loops", 20_000);
+		Connection conn = JDBCUtils.getConnection();
+		try {
+			run(conn, loops / 10, false); // 預熱
+			run(conn, loops / 10, true);
+
+			long start = System.currentTimeMillis();
+			run(conn, loops, false);
+			long end = System.currentTimeMillis();
+			System.out.println("每次讀取 ResultSetMetaData: " + loops + " 次查詢, 花費時間: " + (end - start) + "ms");
+
+			long hits = QueryPlans.getHitCount();
+			start = System.currentTimeMillis();
+			run(conn, loops, true);
+			end = System.currentTimeMillis();
+			System.out.println("使用執行計畫快取: " + loops + " 次查詢, 花費時間: " + (end - start) + "ms, 命中 "
+					+ (QueryPlans.getHitCount() - hits) + " 次");
+		} finally {
+			JDBCUtils.closeResource(conn, null);
+		}
+	}
+
+	private void run(Connection conn, int loops, boolean cached) {
+		for (int i = 0; i < loops; i++) {
+			if (!cached)
+				QueryPlans.clear();
+			dao.getCustomerById(conn, 1 + i % 10);
+		}
+	}
+}
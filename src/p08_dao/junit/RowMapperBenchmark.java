@@ -0,0 +1,133 @@
+package p08_dao.junit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p08_dao.CustomerDAOImpl;
+import p08_dao.RowMapper;
+import p08_dao.RowMappers;
+
+/**
+ * ClassName: RowMapperBenchmark.java
+ * PackageName: p08_dao.junit
+ * Description: 比較 BaseDAO 原本逐格反射的轉換與編譯後快取的 RowMapper(花費時間與每行分配的記憶體)
+ * 				查詢一次 customers 後在記憶體中的結果集上重複轉換, 只測量轉換的花費, 不包括網路與資料庫.
+ * 				-Dbench.rows=1000000 為總共要轉換的行數(預設 1000000)
+ */
+class RowMapperBenchmark {
+
+	private static final String SQL = "SELECT id, name, email, birth FROM customers";
+
+	@Test
+	void testReflectionVsCompiled() throws Exception {
+		long rows = Long.getLong("bench.rows", 1_000_000);
+		Connection conn = JDBCUtils.getConnection();
+		PreparedStatement ps = conn.prepareStatement(SQL, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		ResultSet rs = ps.executeQuery();
+		try {
+			// 預熱
+			reflection(rs, rows / 10);
+			compiled(rs, rows / 10);
+
+			long start = System.currentTimeMillis();
+			long n = reflection(rs, rows);
+			long end = System.currentTimeMillis();
+			System.out.println("逐格反射: " + n + " 行, 花費時間: " + (end - start) + "ms");
+
+			start = System.currentTimeMillis();
+			n = compiled(rs, rows);
+			end = System.currentTimeMillis();
+			System.out.println("編譯的 RowMapper: " + n + " 行, 花費時間: " + (end - start) + "ms");
+		} finally {
+			JDBCUtils.closeResource(conn, ps, rs);
+		}
+	}
+
+	// 每轉換一行分配的記憶體: 逐格反射(getObject) 與依照類型讀取的 RowMapper, 以及 CustomerDAOImpl.getAll 整體
+	@Test
+	void testAllocation() throws Exception {
+		long rows = Long.getLong("bench.rows", 1_000_000);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		Connection conn = JDBCUtils.getConnection();
+		PreparedStatement ps = conn.prepareStatement(SQL, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		ResultSet rs = ps.executeQuery();
+		try {
+			reflection(rs, rows / 10);
+			compiled(rs, rows / 10);
+
+			long before = threads.getThreadAllocatedBytes(thread);
+			long n = reflection(rs, rows);
+			long after = threads.getThreadAllocatedBytes(thread);
+			System.out.println("逐格反射: 每行分配 " + (after - before) / Math.max(n, 1) + " bytes");
+
+			before = threads.getThreadAllocatedBytes(thread);
+			n = compiled(rs, rows);
+			after = threads.getThreadAllocatedBytes(thread);
+			System.out.println("依照類型讀取的 RowMapper: 每行分配 " + (after - before) / Math.max(n, 1) + " bytes");
+
+			CustomerDAOImpl dao = new CustomerDAOImpl();
+			dao.getAll(conn);
+			before = threads.getThreadAllocatedBytes(thread);
+			List<Customer> list = dao.getAll(conn);
+			after = threads.getThreadAllocatedBytes(thread);
+			System.out.println("CustomerDAOImpl.getAll: " + list.size() + " 行, 每行分配 "
+					+ (after - before) / Math.max(list.size(), 1) + " bytes(包括驅動讀取資料)");
+		} finally {
+			JDBCUtils.closeResource(conn, ps, rs);
+		}
+	}
+
+	// BaseDAO 原本的寫法: 每一行每一格都 getColumnLabel, getDeclaredField, setAccessible, Field.set
+	private long reflection(ResultSet rs, long rows) throws Exception {
+		long count = 0;
+		int hash = 0;
+		while (count < rows) {
+			if (!rs.first())
+				break; // 沒有資料
+			rs.beforeFirst();
+			ResultSetMetaData rsmd = rs.getMetaData();
+			int columnCount = rsmd.getColumnCount();
+			while (rs.next() && count < rows) {
+				Customer t = Customer.class.getDeclaredConstructor().newInstance();
+				for (int i = 0; i < columnCount; i++) {
+					Object columnValue = rs.getObject(i + 1);
+					String columnLabel = rsmd.getColumnLabel(i + 1);
+					Field field = Customer.class.getDeclaredField(columnLabel);
+					field.setAccessible(true);
+					field.set(t, columnValue);
+				}
+				hash += t.getId();
+				count++;
+			}
+		}
+		System.out.print(hash == 42 ? "" : ""); // 避免 JIT 消除未使用的結果
+		return count;
+	}
+
+	private long compiled(ResultSet rs, long rows) throws Exception {
+		long count = 0;
+		int hash = 0;
+		while (count < rows) {
+			if (!rs.first())
+				break; // 沒有資料
+			rs.beforeFirst();
+			RowMapper<Customer> mapper = RowMappers.of(Customer.class, rs.getMetaData());
+			while (rs.next() && count < rows) {
+				hash += mapper.mapRow(rs).getId();
+				count++;
+			}
+		}
+		System.out.print(hash == 42 ? "" : "");
+		return count;
+	}
+}
@@ -0,0 +1,146 @@
+package p08_dao.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import p02_util.JDBCUtils;
+import p04_bean.Customer;
+import p08_dao.BaseDAO;
+import p08_dao.CustomerDAOImpl;
+
+/**
+ * ClassName: StreamTest.java
+ * PackageName: p08_dao.junit
+ * Description: 以內嵌的 H2 資料庫(記憶體模式, 需要 h2 的 jar)測試逐行讀取的 BaseDAO.stream
+ * 				以 SYSTEM_RANGE 產生大量的行(LAZY_QUERY_EXECUTION 讓 H2 逐行產生, 不先把結果放進記憶體),
+ * 				比較讀取 10 行與 -Dbench.rows 行(預設 2000000)時記憶體用量的峰值:
+ * 				兩者的差距必須小於與行數無關的 MAX_GROWTH, 把所有行放進記憶體時遠遠超過.
+ * 				並檢查 Stream 關閉(或讀完)後 PreparedStatement 已經關閉.
+ */
+class StreamTest {
+
+	private static final String URL = "jdbc:h2:mem:stream;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;LAZY_QUERY_EXECUTION=TRUE";
+
+	private static final String SQL = "SELECT x AS id, CONCAT('name_', x) AS name, CONCAT('mail_', x) AS email, "
+			+ "DATE '2000-01-01' AS birth FROM SYSTEM_RANGE(1, ?)";
+
+	// 讀取大量的行時, 記憶體峰值比讀取 10 行時最多多出的 bytes
+	private static final long MAX_GROWTH = 32L * 1024 * 1024;
+
+	private final BaseDAO<Customer> dao = new CustomerDAOImpl();
+
+	private Connection conn;
+
+	@BeforeEach
+	void setUp() throws SQLException {
+		conn = DriverManager.getConnection(URL);
+		try (Statement st = conn.createStatement()) {
+			st.execute("CREATE TABLE customers(id INT PRIMARY KEY AUTO_INCREMENT, name VARCHAR(15), email VARCHAR(20), birth DATE)");
+			st.execute("INSERT INTO customers(name, email, birth) "
+					+ "SELECT CONCAT('name_', x), CONCAT('mail_', x), DATE '2000-01-01' FROM SYSTEM_RANGE(1, 10)");
+		}
+	}
+
+	@AfterEach
+	void tearDown() throws SQLException {
+		try (Statement st = conn.createStatement()) {
+			st.execute("DROP TABLE customers");
+		}
+		JDBCUtils.closeResource(conn, null);
+	}
+
+	@Test
+	void testStreamAll() throws Exception {
+		List<PreparedStatement> statements = new ArrayList<>();
+		Connection tracking = tracking(conn, statements);
+		try (Stream<Customer> customers = new CustomerDAOImpl().streamAll(tracking)) {
+			customers.limit(5).forEach(System.out::println);
+			assertEquals(1, statements.size());
+			assertFalse(statements.get(0).isClosed());
+		}
+		// 沒有讀完, 由 Stream.close() 關閉 PreparedStatement
+		assertTrue(statements.get(0).isClosed(), "Stream 關閉後 PreparedStatement 沒有關閉");
+		// Stream 關閉後同一個連接可以繼續使用
+		assertEquals(10, new CustomerDAOImpl().getCount(conn).longValue());
+	}
+
+	// 讀完最後一行時自動關閉, 之後再 close() 也不會出錯
+	@Test
+	void testStreamExhausted() throws Exception {
+		List<PreparedStatement> statements = new ArrayList<>();
+		Connection tracking = tracking(conn, statements);
+		try (Stream<Customer> customers = dao.stream(tracking, SQL, 100)) {
+			assertEquals(100, customers.count());
+			assertTrue(statements.get(0).isClosed(), "讀完後 PreparedStatement 沒有關閉");
+		}
+		assertTrue(statements.get(0).isClosed());
+	}
+
+	@Test
+	void testFlatMemory() throws Exception {
+		long rows = Long.getLong("bench.rows", 2_000_000);
+		peak(10); // 預熱
+		long small = peak(10);
+		long start = System.currentTimeMillis();
+		long large = peak(rows);
+		long end = System.currentTimeMillis();
+		System.out.println("讀取 10 行時記憶體峰值: " + small / 1024 / 1024 + "MB");
+		System.out.println("讀取 " + rows + " 行時記憶體峰值: " + large / 1024 / 1024 + "MB, 花費時間: " + (end - start) + "ms");
+		assertTrue(large - small < MAX_GROWTH, "讀取 " + rows + " 行時記憶體峰值多出 " + (large - small) / 1024 / 1024
+				+ "MB, 超過 " + MAX_GROWTH / 1024 / 1024 + "MB");
+	}
+
+	// 讀取 rows 行, 每 100000 行記錄一次 GC 後的記憶體用量, 返回最大值.
+	private long peak(long rows) throws Exception {
+		Runtime runtime = Runtime.getRuntime();
+		AtomicLong count = new AtomicLong();
+		AtomicLong peak = new AtomicLong(used(runtime));
+		try (Stream<Customer> customers = dao.stream(conn, SQL, rows)) {
+			customers.forEach(cust -> {
+				if (count.incrementAndGet() % 100_000 == 0)
+					peak.accumulateAndGet(used(runtime), Math::max);
+			});
+		}
+		peak.accumulateAndGet(used(runtime), Math::max);
+		System.out.println("讀取了 " + count.get() + " 行");
+		assertEquals(rows, count.get());
+		return peak.get();
+	}
+
+	private static long used(Runtime runtime) {
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	// 記下 conn 創建的 PreparedStatement
+	private static Connection tracking(Connection conn, List<PreparedStatement> statements) {
+		return (Connection) Proxy.newProxyInstance(StreamTest.class.getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					try {
+						Object result = method.invoke(conn, args);
+						if (result instanceof PreparedStatement)
+							statements.add((PreparedStatement) result);
+						return result;
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+}
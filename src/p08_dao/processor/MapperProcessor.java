@@ -0,0 +1,260 @@
+package p08_dao.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import p08_dao.Column;
+
+/**
+ * ClassName: MapperProcessor.java
+ * PackageName: p08_dao.processor
+ * Description: 為標記了 @Mapped 的 JavaBean 產生 <類名>RowMapper 與 <類名>Binder
+ * 				產生的程式碼透過 getter/setter 存取屬性, 並依照屬性的類型使用 getInt, getString, setDate 等方法,
+ * 				沒有反射與 setAccessible, JIT 可以直接內聯.
+ * 				使用方式: 先編譯本類, 再以 javac -processor p08_dao.processor.MapperProcessor 編譯 JavaBean.
+ */
+@SupportedAnnotationTypes("p08_dao.Mapped")
+public class MapperProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.CLASS) {
+					error(element, "@Mapped 只能用於類");
+					continue;
+				}
+				try {
+					generate((TypeElement) element);
+				} catch (IOException e) {
+					error(element, "產生 " + element + " 的 RowMapper 失敗: " + e);
+				}
+			}
+		}
+		return true;
+	}
+
+	private void generate(TypeElement bean) throws IOException {
+		List<Property> properties = new ArrayList<>();
+		for (VariableElement field : ElementFilter.fieldsIn(bean.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC))
+				continue;
+			Property property = new Property(field, bean, processingEnv.getTypeUtils());
+			if (property.setter == null || property.getter == null) {
+				error(field, bean.getSimpleName() + "." + field.getSimpleName() + " 缺少 getter 或 setter");
+				return;
+			}
+			properties.add(property);
+		}
+		String packageName = ((PackageElement) bean.getEnclosingElement()).getQualifiedName().toString();
+		String beanName = bean.getSimpleName().toString();
+		write(packageName, beanName + "RowMapper", rowMapper(packageName, beanName, properties), bean);
+		write(packageName, beanName + "Binder", binder(packageName, beanName, properties), bean);
+	}
+
+	private String rowMapper(String packageName, String beanName, List<Property> properties) {
+		StringBuilder src = header(packageName);
+		src.append("import java.sql.ResultSet;\n");
+		src.append("import java.sql.SQLException;\n\n");
+		src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+		src.append("public final class ").append(beanName).append("RowMapper implements p08_dao.RowMapper<")
+				.append(beanName).append("> {\n\n");
+		src.append("\tprivate final int[] properties;\n\n");
+		src.append("\tpublic ").append(beanName).append("RowMapper(String[] labels) {\n");
+		src.append("\t\tproperties = ").append(beanName).append("Binder.resolve(labels);\n");
+		src.append("\t}\n\n");
+		src.append("\t@Override\n");
+		src.append("\tpublic ").append(beanName).append(" mapRow(ResultSet rs) throws SQLException {\n");
+		src.append("\t\t").append(beanName).append(" t = new ").append(beanName).append("();\n");
+		src.append("\t\tfor (int i = 0; i < properties.length; i++) {\n");
+		src.append("\t\t\tswitch (properties[i]) {\n");
+		for (int p = 0; p < properties.size(); p++) {
+			Property property = properties.get(p);
+			src.append("\t\t\tcase ").append(p).append(":\n");
+			src.append("\t\t\t\tt.").append(property.setter).append('(').append(property.read("rs", "i + 1"))
+					.append(");\n");
+			src.append("\t\t\t\tbreak;\n");
+		}
+		src.append("\t\t\tdefault:\n");
+		src.append("\t\t\t\tbreak;\n");
+		src.append("\t\t\t}\n");
+		src.append("\t\t}\n");
+		src.append("\t\treturn t;\n");
+		src.append("\t}\n");
+		src.append("}\n");
+		return src.toString();
+	}
+
+	private String binder(String packageName, String beanName, List<Property> properties) {
+		StringBuilder src = header(packageName);
+		src.append("import java.sql.PreparedStatement;\n");
+		src.append("import java.sql.SQLException;\n\n");
+		src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+		src.append("public final class ").append(beanName).append("Binder implements p08_dao.ParameterBinder<")
+				.append(beanName).append("> {\n\n");
+		src.append("\tprivate final int[] properties;\n\n");
+		src.append("\tpublic ").append(beanName).append("Binder(String[] columns) {\n");
+		src.append("\t\tproperties = resolve(columns);\n");
+		src.append("\t}\n\n");
+		// 欄位名(屬性名或 @Column)對應到屬性的編號, RowMapper 共用
+		src.append("\tstatic int[] resolve(String[] columns) {\n");
+		src.append("\t\tint[] properties = new int[columns.length];\n");
+		src.append("\t\tfor (int i = 0; i < columns.length; i++) {\n");
+		src.append("\t\t\tswitch (columns[i]) {\n");
+		for (int p = 0; p < properties.size(); p++) {
+			Property property = properties.get(p);
+			src.append("\t\t\tcase \"").append(property.name).append("\":\n");
+			if (property.column != null && !property.column.equals(property.name))
+				src.append("\t\t\tcase \"").append(property.column).append("\":\n");
+			src.append("\t\t\t\tproperties[i] = ").append(p).append(";\n");
+			src.append("\t\t\t\tbreak;\n");
+		}
+		src.append("\t\t\tdefault:\n");
+		src.append("\t\t\t\tthrow new IllegalArgumentException(\"").append(beanName)
+				.append(" 沒有對應欄位 \" + columns[i] + \" 的屬性\");\n");
+		src.append("\t\t\t}\n");
+		src.append("\t\t}\n");
+		src.append("\t\treturn properties;\n");
+		src.append("\t}\n\n");
+		src.append("\t@Override\n");
+		src.append("\tpublic void bind(PreparedStatement ps, ").append(beanName).append(" t) throws SQLException {\n");
+		src.append("\t\tfor (int i = 0; i < properties.length; i++) {\n");
+		src.append("\t\t\tswitch (properties[i]) {\n");
+		for (int p = 0; p < properties.size(); p++) {
+			Property property = properties.get(p);
+			src.append("\t\t\tcase ").append(p).append(":\n");
+			src.append("\t\t\t\t").append(property.write("ps", "i + 1", "t." + property.getter + "()")).append(";\n");
+			src.append("\t\t\t\tbreak;\n");
+		}
+		src.append("\t\t\tdefault:\n");
+		src.append("\t\t\t\tbreak;\n");
+		src.append("\t\t\t}\n");
+		src.append("\t\t}\n");
+		src.append("\t}\n");
+		src.append("}\n");
+		return src.toString();
+	}
+
+	private StringBuilder header(String packageName) {
+		StringBuilder src = new StringBuilder();
+		if (!packageName.isEmpty())
+			src.append("package ").append(packageName).append(";\n\n");
+		return src;
+	}
+
+	private void write(String packageName, String className, String source, TypeElement origin) throws IOException {
+		String name = packageName.isEmpty() ? className : packageName + "." + className;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(name, origin).openWriter()) {
+			writer.write(source);
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	// 一個屬性: 名稱, @Column 欄位名, 類型與 getter/setter
+	private static class Property {
+
+		private final String name;
+
+		private final String column;
+
+		private final String type;
+
+		private String getter;
+
+		private String setter;
+
+		Property(VariableElement field, TypeElement bean, Types types) {
+			name = field.getSimpleName().toString();
+			Column annotation = field.getAnnotation(Column.class);
+			column = annotation == null ? null : annotation.value();
+			type = types.erasure(field.asType()).toString();
+			String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			for (ExecutableElement method : ElementFilter.methodsIn(bean.getEnclosedElements())) {
+				if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC))
+					continue;
+				String methodName = method.getSimpleName().toString();
+				if (methodName.equals("set" + capitalized) && method.getParameters().size() == 1)
+					setter = methodName;
+				else if ((methodName.equals("get" + capitalized) || (methodName.equals("is" + capitalized)
+						&& type.equals("boolean"))) && method.getParameters().isEmpty())
+					getter = methodName;
+			}
+		}
+
+		// JDBC 的 getXxx/setXxx 名稱, 沒有對應時為 null(使用 getObject/setObject)
+		private String accessor() {
+			switch (type) {
+			case "int":
+				return "Int";
+			case "long":
+				return "Long";
+			case "double":
+				return "Double";
+			case "float":
+				return "Float";
+			case "short":
+				return "Short";
+			case "byte":
+				return "Byte";
+			case "boolean":
+				return "Boolean";
+			case "java.lang.String":
+				return "String";
+			case "java.math.BigDecimal":
+				return "BigDecimal";
+			case "java.sql.Date":
+				return "Date";
+			case "java.sql.Time":
+				return "Time";
+			case "java.sql.Timestamp":
+				return "Timestamp";
+			case "byte[]":
+				return "Bytes";
+			case "java.sql.Blob":
+				return "Blob";
+			default:
+				return null;
+			}
+		}
+
+		String read(String rs, String index) {
+			String accessor = accessor();
+			if (accessor != null)
+				return rs + ".get" + accessor + "(" + index + ")";
+			return rs + ".getObject(" + index + ", " + type + ".class)";
+		}
+
+		String write(String ps, String index, String value) {
+			String accessor = accessor();
+			if (accessor != null)
+				return ps + ".set" + accessor + "(" + index + ", " + value + ")";
+			return ps + ".setObject(" + index + ", " + value + ")";
+		}
+	}
+}
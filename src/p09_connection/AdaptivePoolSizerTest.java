@@ -0,0 +1,173 @@
+package p09_connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+import org.junit.jupiter.api.Test;
+
+import p09_util.AdaptivePoolSizer;
+import p09_util.BagDataSource;
+import p09_util.LatencyHistogram;
+import p09_util.MeteredDataSource;
+import p09_util.PoolFactory;
+
+/**
+ * ClassName: AdaptivePoolSizerTest.java
+ * PackageName: p09_connection
+ * Description: 以模擬的突發流量比較固定大小與自動調整大小的連接池
+ * 				流量: 平穩(4 條執行緒) 與 突發(48 條執行緒) 交替, 每次借出後持有連接約 5ms.
+ * 				輸出每種設定的 p99 借出等待時間與連接數的峰值.
+ * 				並檢查突發流量下最多連接數會擴大, 流量消失後逐步縮回 minSize, 以及 c3p0 不能使用.
+ */
+public class AdaptivePoolSizerTest {
+
+	private static final int CALM_THREADS = 4;
+
+	private static final int BURST_THREADS = 48;
+
+	private static final int PHASE_MILLIS = 3000;
+
+	private static final int HOLD_MILLIS = 5;
+
+	private static final int MIN_SIZE = 5;
+
+	private static final int MAX_SIZE = 40;
+
+	@Test
+	public void testFixedVsAdaptive() throws Exception {
+		// 固定大小(與 bag.properties 相同)
+		LatencyHistogram fixed = run(10, null);
+		System.out.println("固定 10 條: " + fixed);
+
+		// 自動調整: 從 5 條開始, 最多 40 條
+		int[] peak = new int[1];
+		LatencyHistogram adaptive = run(MIN_SIZE, source -> {
+			AdaptivePoolSizer sizer = new AdaptivePoolSizer(source, MIN_SIZE, MAX_SIZE);
+			sizer.setTargetWaitMillis(2);
+			sizer.start(200);
+			return () -> {
+				peak[0] = sizer.getPeakSize();
+				System.out.println("調整次數: " + sizer.getResizeCount() + ", 最後大小: " + sizer.getCurrentSize());
+				sizer.close();
+			};
+		});
+		System.out.println("自動調整(峰值 " + peak[0] + " 條): " + adaptive);
+		assertTrue(peak[0] > MIN_SIZE, "突發流量下沒有擴大: " + peak[0]);
+		assertTrue(peak[0] <= MAX_SIZE, "超過 maxSize: " + peak[0]);
+
+		// 固定在自動調整的峰值, 比較兩者在同樣峰值下的表現
+		LatencyHistogram fixedAtPeak = run(peak[0], null);
+		System.out.println("固定 " + peak[0] + " 條: " + fixedAtPeak);
+	}
+
+	// 以 tick() 逐個窗口檢查: 突發流量下擴大, 之後沒有流量的窗口逐步縮回 MIN_SIZE
+	@Test
+	public void testGrowAndShrink() throws Exception {
+		Properties overrides = new Properties();
+		overrides.setProperty("initialSize", String.valueOf(MIN_SIZE));
+		overrides.setProperty("maxPoolSize", String.valueOf(MIN_SIZE));
+		BagDataSource pool = PoolFactory.createBag(overrides);
+		try (MeteredDataSource source = new MeteredDataSource(pool);
+				AdaptivePoolSizer sizer = new AdaptivePoolSizer(source, MIN_SIZE, MAX_SIZE)) {
+			sizer.setTargetWaitMillis(2);
+			sizer.setShrinkAfterWindows(2);
+			sizer.setCooldownWindows(1);
+			assertEquals(MIN_SIZE, pool.getMaxPoolSize());
+
+			Thread burst = new Thread(() -> {
+				try {
+					load(source, BURST_THREADS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			burst.start();
+			while (burst.isAlive()) {
+				Thread.sleep(200);
+				sizer.tick();
+			}
+			int grown = pool.getMaxPoolSize();
+			System.out.println("突發後: " + grown + " 條, 調整次數: " + sizer.getResizeCount());
+			assertTrue(grown > MIN_SIZE, "突發流量下沒有擴大: " + grown);
+			assertTrue(grown <= MAX_SIZE, "超過 maxSize: " + grown);
+			assertEquals(grown, sizer.getPeakSize());
+
+			// 沒有流量: 每 shrinkAfterWindows 個平靜的窗口(加上冷卻)縮小 1 條
+			int windows = 0;
+			while (pool.getMaxPoolSize() > MIN_SIZE && windows < (grown - MIN_SIZE) * 4) {
+				sizer.tick();
+				windows++;
+			}
+			System.out.println("經過 " + windows + " 個窗口縮回 " + pool.getMaxPoolSize() + " 條");
+			assertEquals(MIN_SIZE, pool.getMaxPoolSize());
+			// 已經是 minSize, 不再縮小
+			for (int i = 0; i < 10; i++)
+				sizer.tick();
+			assertEquals(MIN_SIZE, sizer.getCurrentSize());
+		}
+	}
+
+	// c3p0 調整大小會重設連接池, 沒有 Resizer
+	@Test
+	public void testC3P0Refused() throws Exception {
+		ComboPooledDataSource c3p0 = PoolFactory.createC3P0();
+		try (MeteredDataSource source = new MeteredDataSource(c3p0)) {
+			assertThrows(IllegalArgumentException.class, () -> new AdaptivePoolSizer(source, MIN_SIZE, MAX_SIZE));
+		}
+	}
+
+	private LatencyHistogram run(int maxPoolSize, SizerStarter starter) throws Exception {
+		Properties overrides = new Properties();
+		overrides.setProperty("initialSize", String.valueOf(Math.min(5, maxPoolSize)));
+		overrides.setProperty("maxPoolSize", String.valueOf(maxPoolSize));
+		BagDataSource pool = PoolFactory.createBag(overrides);
+		MeteredDataSource source = new MeteredDataSource(pool);
+		Runnable stopper = starter == null ? () -> {
+		} : starter.start(source);
+		try {
+			// 平穩 -> 突發 -> 平穩 -> 突發
+			for (int phase = 0; phase < 4; phase++)
+				load(source, phase % 2 == 0 ? CALM_THREADS : BURST_THREADS);
+			return source.getHistogram();
+		} finally {
+			stopper.run();
+			pool.close();
+		}
+	}
+
+	private void load(MeteredDataSource source, int threads) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + PHASE_MILLIS;
+		CountDownLatch latch = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			new Thread(() -> {
+				try {
+					while (System.currentTimeMillis() < deadline) {
+						try (Connection conn = source.getConnection();
+								PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+							ps.executeQuery().close();
+							Thread.sleep(HOLD_MILLIS); // 模擬持有連接的業務處理
+						}
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					latch.countDown();
+				}
+			}).start();
+		}
+		latch.await();
+	}
+
+	@FunctionalInterface
+	private interface SizerStarter {
+		Runnable start(MeteredDataSource source);
+	}
+}
@@ -0,0 +1,184 @@
+package p09_connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import p04_bean.Customer;
+import p08_dao.CustomerDAOImpl;
+import p09_util.BagDataSource;
+import p09_util.JDBCUtils;
+import p09_util.PoolFactory;
+
+/**
+ * ClassName: BagDataSourceTest.java
+ * PackageName: p09_connection
+ * Description: 測試專案自己的 BagDataSource 資料庫連接池, 並與 c3p0, DBCP, Druid 比較高並發下借出/歸還的花費時間
+ * 				正確性: 高並發下同一條物理連接不會同時借給兩條執行緒, 結束後連接數與閒置數一致,
+ * 				連接用完時等待 connectionTimeout 後拋出 SQLException, 關閉後不再借出連接.
+ */
+public class BagDataSourceTest {
+
+	private static final int THREADS = 64;
+
+	private static final int LOOPS = 2000;
+
+	private static final int POOL_SIZE = 8;
+
+	@Test
+	public void testGetConnection() throws Exception {
+		Connection conn = JDBCUtils.getConnection4();
+		System.out.println(conn);
+		conn.close();
+	}
+
+	@Test
+	public void testGetCustomerById() throws Exception {
+		DataSource source = JDBCUtils.getDataSource4();
+		CustomerDAOImpl dao = new CustomerDAOImpl();
+		try (Connection conn = source.getConnection()) {
+			Customer cust = dao.getCustomerById(conn, 12);
+			System.out.println(cust);
+		}
+	}
+
+	// 64 條執行緒同時借出/歸還, 比較 4 種連接池
+	@Test
+	public void testBorrowReturn() throws Exception {
+		run("c3p0", JDBCUtils::getConnection1);
+		run("DBCP", JDBCUtils::getConnection2);
+		run("Druid", JDBCUtils::getConnection3);
+		run("Bag", JDBCUtils::getConnection4);
+		BagDataSource bag = JDBCUtils.getDataSource4().unwrap(BagDataSource.class);
+		System.out.println("Bag 連接數: " + bag.getTotalConnections() + ", 閒置: " + bag.getIdleConnections());
+	}
+
+	private void run(String name, ConnectionSupplier supplier) throws Exception {
+		supplier.get().close(); // 預熱
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CountDownLatch endLatch = new CountDownLatch(THREADS);
+		AtomicInteger failures = new AtomicInteger();
+		for (int i = 0; i < THREADS; i++) {
+			new Thread(() -> {
+				try {
+					startLatch.await();
+					for (int j = 0; j < LOOPS; j++) {
+						Connection conn = supplier.get();
+						conn.close();
+					}
+				} catch (Exception e) {
+					failures.incrementAndGet();
+				} finally {
+					endLatch.countDown();
+				}
+			}).start();
+		}
+		long start = System.nanoTime();
+		startLatch.countDown();
+		endLatch.await();
+		long end = System.nanoTime();
+		long total = (long) THREADS * LOOPS;
+		System.out.println(name + ": " + THREADS + " 條執行緒, 共 " + total + " 次借出/歸還, 花費時間: "
+				+ (end - start) / 1_000_000 + "ms, 平均每次: " + (end - start) / total + "ns, 失敗: " + failures.get());
+	}
+
+	// THREADS 條執行緒搶 POOL_SIZE 條連接: 借出期間物理連接不能已經在別的執行緒手上
+	@Test
+	public void testExclusiveBorrow() throws Exception {
+		try (BagDataSource bag = createBag(POOL_SIZE, 30_000)) {
+			Set<Connection> inUse = ConcurrentHashMap.newKeySet();
+			AtomicInteger shared = new AtomicInteger();
+			AtomicInteger failures = new AtomicInteger();
+			CountDownLatch startLatch = new CountDownLatch(1);
+			CountDownLatch endLatch = new CountDownLatch(THREADS);
+			for (int i = 0; i < THREADS; i++) {
+				new Thread(() -> {
+					try {
+						startLatch.await();
+						for (int j = 0; j < LOOPS / 10; j++) {
+							try (Connection conn = bag.getConnection()) {
+								Connection physical = conn.unwrap(Connection.class);
+								if (!inUse.add(physical))
+									shared.incrementAndGet();
+								Thread.yield();
+								inUse.remove(physical);
+							}
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					} finally {
+						endLatch.countDown();
+					}
+				}).start();
+			}
+			startLatch.countDown();
+			endLatch.await();
+			System.out.println("Bag 連接數: " + bag.getTotalConnections() + ", 閒置: " + bag.getIdleConnections()
+					+ ", 同時借給兩條執行緒: " + shared.get() + ", 失敗: " + failures.get());
+			assertEquals(0, shared.get());
+			assertEquals(0, failures.get());
+			// 全部歸還後: 沒有借出中的連接, 所有連接都閒置, 且不超過 maxPoolSize
+			assertEquals(0, bag.getActiveConnections());
+			assertEquals(bag.getTotalConnections(), bag.getIdleConnections());
+			assertTrue(bag.getTotalConnections() <= POOL_SIZE, "連接數超過 maxPoolSize: " + bag.getTotalConnections());
+		}
+	}
+
+	// 連接用完時等待 connectionTimeout 後拋出 SQLException
+	@Test
+	public void testBorrowTimeout() throws Exception {
+		long timeout = 500;
+		try (BagDataSource bag = createBag(1, timeout)) {
+			try (Connection conn = bag.getConnection()) {
+				long start = System.currentTimeMillis();
+				assertThrows(SQLException.class, bag::getConnection);
+				long waited = System.currentTimeMillis() - start;
+				System.out.println("等待 " + waited + "ms 後超時");
+				assertTrue(waited >= timeout - 50, "未等待 connectionTimeout 就失敗: " + waited + "ms");
+			}
+			// 歸還後可以再借出
+			bag.getConnection().close();
+		}
+	}
+
+	// 關閉後不再借出連接, 關閉時借出中的連接在歸還時關閉
+	@Test
+	public void testClose() throws Exception {
+		BagDataSource bag = createBag(2, 30_000);
+		Connection conn = bag.getConnection();
+		Connection physical = conn.unwrap(Connection.class);
+		bag.close();
+		assertTrue(bag.isClosed());
+		assertThrows(SQLException.class, bag::getConnection);
+		assertEquals(1, bag.getTotalConnections());
+		conn.close();
+		assertTrue(physical.isClosed());
+		assertEquals(0, bag.getTotalConnections());
+	}
+
+	private static BagDataSource createBag(int maxPoolSize, long connectionTimeout) throws Exception {
+		Properties overrides = new Properties();
+		overrides.setProperty("initialSize", String.valueOf(maxPoolSize));
+		overrides.setProperty("minIdle", "0");
+		overrides.setProperty("maxPoolSize", String.valueOf(maxPoolSize));
+		overrides.setProperty("connectionTimeout", String.valueOf(connectionTimeout));
+		return PoolFactory.createBag(overrides);
+	}
+
+	@FunctionalInterface
+	private interface ConnectionSupplier {
+		Connection get() throws SQLException;
+	}
+}
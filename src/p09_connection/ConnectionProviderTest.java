@@ -0,0 +1,85 @@
+package p09_connection;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.ConnectionProvider;
+import p02_util.ConnectionProviders;
+
+/**
+ * ClassName: ConnectionProviderTest.java
+ * PackageName: p09_connection
+ * Description: 比較獲取連接的花費時間
+ * 				舊的做法每次都重新讀取 jdbc.properties, 加載驅動, 再建立一條新的物理連接;
+ * 				ConnectionProvider 只讀取一次設定檔, 使用連接池時更省去了 TCP 握手與登入.
+ * 				將 jdbc.properties 的 url 換成內嵌資料庫(例如 H2 的 jdbc:h2:mem:test)即可在沒有 MySQL 時測試.
+ */
+public class ConnectionProviderTest {
+
+	private static final int COUNT = 1000;
+
+	// 舊的方式: 每次獲取連接都重新讀取設定檔
+	@Test
+	public void testReloadEveryTime() throws Exception {
+		getConnectionOld().close(); // 預熱
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < COUNT; i++) {
+			Connection conn = getConnectionOld();
+			conn.close();
+		}
+		long end = System.currentTimeMillis();
+		System.out.println("每次讀取設定檔, " + COUNT + " 次花費時間: " + (end - start));
+	}
+
+	@Test
+	public void testDriverProvider() throws Exception {
+		testProvider("driver");
+	}
+
+	@Test
+	public void testC3P0Provider() throws Exception {
+		testProvider("c3p0");
+	}
+
+	@Test
+	public void testDBCPProvider() throws Exception {
+		testProvider("dbcp");
+	}
+
+	@Test
+	public void testDruidProvider() throws Exception {
+		testProvider("druid");
+	}
+
+	private void testProvider(String name) throws Exception {
+		Properties pros = ConnectionProviders.loadProperties("jdbc.properties");
+		pros.setProperty("provider", name);
+		try (ConnectionProvider provider = ConnectionProviders.create(pros)) {
+			provider.getConnection().close(); // 預熱(連接池在這時完成初始化)
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < COUNT; i++) {
+				Connection conn = provider.getConnection();
+				conn.close();
+			}
+			long end = System.currentTimeMillis();
+			System.out.println(name + ", " + COUNT + " 次花費時間: " + (end - start));
+		}
+	}
+
+	// 修改前 JDBCUtils.getConnection() 的做法
+	private Connection getConnectionOld() throws Exception {
+		InputStream is = ClassLoader.getSystemClassLoader().getResourceAsStream("jdbc.properties");
+		Properties pros = new Properties();
+		pros.load(is);
+		String user = pros.getProperty("user");
+		String password = pros.getProperty("password");
+		String url = pros.getProperty("url");
+		String driverClass = pros.getProperty("driverClass");
+		Class.forName(driverClass);
+		return DriverManager.getConnection(url, user, password);
+	}
+}
@@ -0,0 +1,125 @@
+package p09_connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import p09_util.BagDataSource;
+import p09_util.PoolFactory;
+
+/**
+ * ClassName: HealthCheckTest.java
+ * PackageName: p09_connection
+ * Description: 測試 BagDataSource 在背景檢查閒置的連接
+ * 				以管理連接 KILL 掉連接池中所有的連接, 等待超過一次檢查的間隔後再同時借出,
+ * 				借到的連接都必須是有效的; 並比較閒置後第一次借出與平穩負載下借出的花費時間.
+ */
+public class HealthCheckTest {
+
+	private static final int POOL_SIZE = 10;
+
+	private static final int VALIDATION_INTERVAL = 500;
+
+	@Test
+	public void testKilledConnectionsAreNeverBorrowed() throws Exception {
+		Properties overrides = new Properties();
+		overrides.setProperty("initialSize", String.valueOf(POOL_SIZE));
+		overrides.setProperty("maxPoolSize", String.valueOf(POOL_SIZE));
+		overrides.setProperty("minIdle", String.valueOf(POOL_SIZE));
+		overrides.setProperty("validationInterval", String.valueOf(VALIDATION_INTERVAL));
+		try (BagDataSource pool = PoolFactory.createBag(overrides);
+				Connection admin = p02_util.JDBCUtils.getConnection()) {
+			// 1. 平穩負載下的借出時間
+			long steady = borrowAll(pool);
+			System.out.println("平穩負載下同時借出 " + POOL_SIZE + " 條連接花費時間: " + steady + "ns");
+
+			// 2. 記錄所有連接的 id, 再從管理連接 KILL 掉
+			List<Long> ids = connectionIds(pool);
+			try (PreparedStatement ps = admin.prepareStatement("KILL ?")) {
+				for (long id : ids) {
+					ps.setLong(1, id);
+					ps.execute();
+				}
+			}
+			System.out.println("KILL 掉的連接: " + ids);
+
+			// 3. 閒置超過一次檢查的間隔
+			Thread.sleep(VALIDATION_INTERVAL * 3);
+
+			// 4. 同時借出, 每一條都必須有效
+			long afterIdle = borrowAll(pool);
+			System.out.println("閒置後同時借出 " + POOL_SIZE + " 條連接花費時間: " + afterIdle + "ns");
+			System.out.println("背景檢查移除的連接數: " + pool.getEvictedCount());
+			assertTrue(pool.getEvictedCount() >= ids.size());
+			assertEquals(POOL_SIZE, pool.getTotalConnections());
+		}
+	}
+
+	// 同時借出連接池中所有的連接並檢查有效性, 返回借出的總花費時間(納秒)
+	private long borrowAll(BagDataSource pool) throws InterruptedException {
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CountDownLatch borrowedLatch = new CountDownLatch(POOL_SIZE);
+		CountDownLatch endLatch = new CountDownLatch(POOL_SIZE);
+		AtomicInteger invalid = new AtomicInteger();
+		long[] elapsed = new long[POOL_SIZE];
+		for (int i = 0; i < POOL_SIZE; i++) {
+			int index = i;
+			new Thread(() -> {
+				try {
+					startLatch.await();
+					long start = System.nanoTime();
+					try (Connection conn = pool.getConnection()) {
+						elapsed[index] = System.nanoTime() - start;
+						borrowedLatch.countDown();
+						if (!conn.isValid(1))
+							invalid.incrementAndGet();
+						borrowedLatch.await(); // 所有連接都被借出後再歸還
+					}
+				} catch (Exception e) {
+					invalid.incrementAndGet();
+					e.printStackTrace();
+				} finally {
+					endLatch.countDown();
+				}
+			}).start();
+		}
+		startLatch.countDown();
+		endLatch.await();
+		assertEquals(0, invalid.get(), "借到了失效的連接");
+		long total = 0;
+		for (long e : elapsed)
+			total += e;
+		return total;
+	}
+
+	// 同時借出所有連接, 查詢每條連接在資料庫中的 id
+	private List<Long> connectionIds(BagDataSource pool) throws Exception {
+		List<Connection> conns = new ArrayList<>();
+		List<Long> ids = new ArrayList<>();
+		try {
+			for (int i = 0; i < POOL_SIZE; i++)
+				conns.add(pool.getConnection());
+			for (Connection conn : conns) {
+				try (PreparedStatement ps = conn.prepareStatement("SELECT CONNECTION_ID()");
+						ResultSet rs = ps.executeQuery()) {
+					rs.next();
+					ids.add(rs.getLong(1));
+				}
+			}
+		} finally {
+			for (Connection conn : conns)
+				conn.close();
+		}
+		return ids;
+	}
+}
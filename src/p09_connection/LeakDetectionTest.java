@@ -0,0 +1,119 @@
+package p09_connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import p08_dao.CustomerDAOImpl;
+import p09_util.BagDataSource;
+import p09_util.LeakDetectingDataSource;
+import p09_util.PoolFactory;
+
+/**
+ * ClassName: LeakDetectionTest.java
+ * PackageName: p09_connection
+ * Description: 測試 LeakDetectingDataSource 報告與回收洩漏的連接,
+ * 				並比較開啟洩漏檢查前後 CustomerDAOImpl.getCustomerById 的吞吐量(目標: 額外花費低於 2%,
+ * 				斷言放寬到 MAX_OVERHEAD, 容許兩次測量之間的抖動).
+ */
+public class LeakDetectionTest {
+
+	private static final int THREADS = 16;
+
+	private static final int SECONDS = 5;
+
+	// 斷言的額外花費上限(百分比)
+	private static final double MAX_OVERHEAD = 10;
+
+	// 與 BlobTest.testInsert, TransactionTest.testTransactionSelect 一樣借出後沒有 close()
+	@Test
+	public void testDetectAndReclaim() throws Exception {
+		Properties overrides = new Properties();
+		overrides.setProperty("initialSize", "1");
+		overrides.setProperty("maxPoolSize", "1");
+		try (LeakDetectingDataSource source = new LeakDetectingDataSource(PoolFactory.createBag(overrides), 200, 1, true)) {
+			source.setLeakListener((threadName, heldMillis, borrowSite) -> {
+				System.out.println("洩漏: " + threadName + ", 持有 " + heldMillis + "ms, 借出位置:");
+				borrowSite.printStackTrace(System.out);
+			});
+			Connection leaked = source.getConnection();
+			PreparedStatement ps = leaked.prepareStatement("SELECT 1");
+			ResultSet rs = ps.executeQuery();
+			assertTrue(rs.getStatement() == ps);
+			Thread.sleep(1000);
+			assertEquals(1, source.getLeakCount());
+			assertEquals(1, source.getReclaimedCount());
+			assertThrows(SQLException.class, () -> leaked.prepareStatement("SELECT 1"));
+			// 回收前取得的 Statement, ResultSet 也不能再使用
+			assertThrows(SQLException.class, ps::executeQuery);
+			assertThrows(SQLException.class, rs::next);
+			assertTrue(ps.isClosed());
+			assertTrue(rs.isClosed());
+
+			// 只有一條連接的連接池在回收後可以再借出
+			try (Connection conn = source.getConnection()) {
+				assertTrue(conn.isValid(1));
+			}
+			leaked.close(); // 已經回收, 不會再歸還一次
+			assertEquals(0, source.getOpenCount());
+		}
+	}
+
+	@Test
+	public void testOverhead() throws Exception {
+		try (BagDataSource pool = PoolFactory.createBag();
+				LeakDetectingDataSource detecting = new LeakDetectingDataSource(pool, 60_000, 100, false)) {
+			run(pool); // 預熱
+			long plain = run(pool);
+			long withDetector = run(detecting);
+			long plain2 = run(pool);
+			long baseline = (plain + plain2) / 2;
+			System.out.println("沒有洩漏檢查: " + baseline / SECONDS + " 次/秒");
+			System.out.println("有洩漏檢查(每 100 次取樣): " + withDetector / SECONDS + " 次/秒");
+			double overhead = (baseline - withDetector) * 100.0 / baseline;
+			System.out.printf("額外花費: %.2f%%%n", overhead);
+			assertEquals(0, detecting.getLeakCount());
+			assertTrue(overhead < MAX_OVERHEAD, "洩漏檢查的額外花費 " + overhead + "% 超過 " + MAX_OVERHEAD + "%");
+		}
+	}
+
+	// 多條執行緒在 SECONDS 秒內重複借出連接並查詢一筆 customers, 返回完成的次數
+	private long run(DataSource source) throws InterruptedException {
+		CustomerDAOImpl dao = new CustomerDAOImpl();
+		long deadline = System.currentTimeMillis() + SECONDS * 1000L;
+		AtomicLong count = new AtomicLong();
+		CountDownLatch latch = new CountDownLatch(THREADS);
+		for (int i = 0; i < THREADS; i++) {
+			new Thread(() -> {
+				try {
+					long n = 0;
+					while (System.currentTimeMillis() < deadline) {
+						try (Connection conn = source.getConnection()) {
+							dao.getCustomerById(conn, 12);
+						}
+						n++;
+					}
+					count.addAndGet(n);
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					latch.countDown();
+				}
+			}).start();
+		}
+		latch.await();
+		return count.get();
+	}
+}
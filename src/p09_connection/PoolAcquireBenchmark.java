@@ -0,0 +1,218 @@
+package p09_connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import p02_util.ConnectionProvider;
+import p02_util.ConnectionProviders;
+import p09_util.LatencyHistogram;
+import p09_util.PoolFactory;
+
+/**
+ * ClassName: PoolAcquireBenchmark.java
+ * PackageName: p09_connection
+ * Description: 各個連接池在 1, 8, 64, 256 條執行緒下借出連接的吞吐量與延遲(p50/p99/p99.9)
+ * 				參數都透過系統屬性傳入, 例如:
+ * 				-Dbench.pools=c3p0,druid         要測試的連接池(driver, c3p0, dbcp, druid, bag)
+ * 				-Dbench.threads=1,8,64,256       執行緒數
+ * 				-Dbench.seconds=3                每一組的測量秒數(另有 1 秒預熱)
+ * 				-Dbench.poolSizes=10,50          連接池大小的掃描, 對應 maxPoolSize/maxTotal/maxActive
+ * 				-Dc3p0.minPoolSize=5             覆蓋 c3p0-config.xml 的設定
+ * 				-Ddbcp.maxIdle=20                覆蓋 dbcp.properties 的設定
+ * 				-Ddruid.initialSize=5            覆蓋 druid.properties 的設定
+ * 				-Dbag.maxPoolSize=20             覆蓋 bag.properties 的設定
+ * 				driver 為 jdbc.properties 的 provider=driver(DriverManager, 每次建立新的物理連接), 不受 poolSizes 影響.
+ * 				連接的資料庫由各設定檔的 url 決定, 換成內嵌資料庫的 url 即可在本機測試.
+ */
+public class PoolAcquireBenchmark {
+
+	private static final int WARMUP_SECONDS = 1;
+
+	@Test
+	public void testAcquire() throws Exception {
+		String[] pools = System.getProperty("bench.pools", "driver,c3p0,dbcp,druid,bag").split(",");
+		int[] threads = parse(System.getProperty("bench.threads", "1,8,64,256"));
+		int seconds = Integer.parseInt(System.getProperty("bench.seconds", "3"));
+		String poolSizes = System.getProperty("bench.poolSizes");
+		int[] sizes = poolSizes == null ? new int[] { 0 } : parse(poolSizes);
+
+		System.out.println("pool\tsize\tthreads\tops/s\tp50(us)\tp99(us)\tp99.9(us)\tmax(us)\terrors");
+		for (String pool : pools) {
+			for (int size : sizes) {
+				DataSource source = create(pool.trim(), size);
+				try {
+					for (int n : threads) {
+						run(source, n, WARMUP_SECONDS);
+						Result result = run(source, n, seconds);
+						LatencyHistogram h = result.histogram;
+						System.out.printf("%s\t%s\t%d\t%.0f\t%.1f\t%.1f\t%.1f\t%.1f\t%d%n", pool, size == 0 ? "-" : size, n,
+								h.getCount() / (double) seconds, h.getValueAtPercentile(50) / 1000.0,
+								h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+								h.getMaxNanos() / 1000.0, result.errors);
+					}
+				} finally {
+					if (source instanceof AutoCloseable)
+						((AutoCloseable) source).close();
+				}
+			}
+		}
+	}
+
+	// 依照名稱與大小創建連接池, size 為 0 時使用設定檔的大小.
+	private DataSource create(String pool, int size) throws Exception {
+		Properties overrides = PoolFactory.overridesFromSystem(pool + ".");
+		switch (pool) {
+		case "driver":
+			Properties pros = ConnectionProviders.loadProperties("jdbc.properties");
+			pros.setProperty("provider", "driver");
+			return new DriverDataSource(ConnectionProviders.create(pros));
+		case "c3p0":
+			if (size > 0) {
+				overrides.setProperty("maxPoolSize", String.valueOf(size));
+				overrides.putIfAbsent("minPoolSize", String.valueOf(Math.min(size, 10)));
+				overrides.putIfAbsent("initialPoolSize", String.valueOf(Math.min(size, 10)));
+			}
+			return PoolFactory.createC3P0(overrides);
+		case "dbcp":
+			if (size > 0) {
+				overrides.setProperty("maxTotal", String.valueOf(size));
+				overrides.setProperty("maxIdle", String.valueOf(size));
+			}
+			return PoolFactory.createDBCP(overrides);
+		case "druid":
+			if (size > 0)
+				overrides.setProperty("maxActive", String.valueOf(size));
+			return PoolFactory.createDruid(overrides);
+		case "bag":
+			if (size > 0)
+				overrides.setProperty("maxPoolSize", String.valueOf(size));
+			return PoolFactory.createBag(overrides);
+		default:
+			throw new IllegalArgumentException("不支持的連接池: " + pool);
+		}
+	}
+
+	private Result run(DataSource source, int threads, int seconds) throws InterruptedException {
+		List<LatencyHistogram> histograms = new ArrayList<>();
+		int[] errors = new int[threads];
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CountDownLatch endLatch = new CountDownLatch(threads);
+		long[] deadline = new long[1];
+		for (int i = 0; i < threads; i++) {
+			LatencyHistogram histogram = new LatencyHistogram(); // 每條執行緒各自記錄, 避免互相競爭
+			histograms.add(histogram);
+			int index = i;
+			Thread t = new Thread(() -> {
+				try {
+					startLatch.await();
+					while (System.nanoTime() < deadline[0]) {
+						long start = System.nanoTime();
+						try {
+							Connection conn = source.getConnection();
+							histogram.record(System.nanoTime() - start);
+							conn.close();
+						} catch (SQLException e) {
+							errors[index]++;
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					endLatch.countDown();
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+		}
+		deadline[0] = System.nanoTime() + seconds * 1_000_000_000L;
+		startLatch.countDown();
+		endLatch.await();
+
+		Result result = new Result();
+		for (LatencyHistogram h : histograms)
+			result.histogram.add(h);
+		for (int e : errors)
+			result.errors += e;
+		return result;
+	}
+
+	private static int[] parse(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+			values[i] = Integer.parseInt(parts[i].trim());
+		return values;
+	}
+
+	private static class Result {
+		LatencyHistogram histogram = new LatencyHistogram();
+		int errors;
+	}
+
+	// 將 ConnectionProvider 包裝成 DataSource, 只實現需要的方法.
+	private static class DriverDataSource implements DataSource, AutoCloseable {
+
+		private final ConnectionProvider provider;
+
+		DriverDataSource(ConnectionProvider provider) {
+			this.provider = provider;
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			return provider.getConnection();
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			throw new SQLFeatureNotSupportedException("使用 jdbc.properties 的帳號");
+		}
+
+		@Override
+		public void close() {
+			provider.close();
+		}
+
+		@Override
+		public java.io.PrintWriter getLogWriter() {
+			return null;
+		}
+
+		@Override
+		public void setLogWriter(java.io.PrintWriter out) {
+		}
+
+		@Override
+		public void setLoginTimeout(int seconds) {
+		}
+
+		@Override
+		public int getLoginTimeout() {
+			return 0;
+		}
+
+		@Override
+		public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+
+		@Override
+		public <T> T unwrap(Class<T> iface) throws SQLException {
+			throw new SQLException("not a wrapper");
+		}
+
+		@Override
+		public boolean isWrapperFor(Class<?> iface) {
+			return false;
+		}
+	}
+}
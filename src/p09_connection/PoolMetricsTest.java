@@ -0,0 +1,55 @@
+package p09_connection;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+
+import org.junit.jupiter.api.Test;
+
+import p09_util.JDBCUtils;
+import p09_util.PoolMetrics;
+import p09_util.PoolMetricsMXBean;
+import p09_util.PoolMetricsSnapshot;
+
+/**
+ * ClassName: PoolMetricsTest.java
+ * PackageName: p09_connection
+ * Description: 測試以相同的 PoolMetricsMXBean 讀取 4 種資料庫連接池的監控數值
+ */
+public class PoolMetricsTest {
+
+	private static final int LOOPS = 1000;
+
+	@Test
+	public void testSnapshots() throws Exception {
+		for (String name : new String[] { "c3p0", "dbcp", "druid", "bag" }) {
+			for (int i = 0; i < LOOPS; i++) {
+				try (Connection conn = JDBCUtils.getDataSource(name).getConnection()) {
+					conn.prepareStatement("SELECT 1").close();
+				}
+			}
+		}
+		for (PoolMetricsSnapshot snapshot : JDBCUtils.getMetricsSnapshots()) {
+			System.out.println(snapshot);
+			// 每個連接池都有等待數與建立連接的時間, 連接池不提供的由 MeteredDataSource 計算
+			assertTrue(snapshot.getPendingThreads() >= 0, snapshot.getPoolName());
+			assertTrue(snapshot.getConnectionCreateMillis() >= 0, snapshot.getPoolName());
+		}
+	}
+
+	// 與 JConsole 相同, 從 MBeanServer 讀取
+	@Test
+	public void testJmx() throws Exception {
+		PoolMetrics metrics = JDBCUtils.getMetrics("druid");
+		JDBCUtils.getConnection3().close();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		System.out.println(server.queryNames(metrics.getObjectName(), null));
+		PoolMetricsMXBean proxy = JMX.newMXBeanProxy(server, metrics.getObjectName(), PoolMetricsMXBean.class);
+		System.out.println(proxy.getSnapshot());
+		System.out.println("Druid 借出 p99: " + server.getAttribute(metrics.getObjectName(), "BorrowP99Micros") + "us");
+	}
+}
@@ -0,0 +1,35 @@
+package p09_connection;
+
+import java.sql.Connection;
+
+import org.junit.jupiter.api.Test;
+
+import p09_util.JDBCUtils;
+
+/**
+ * ClassName: PoolStartupTest.java
+ * PackageName: p09_connection
+ * Description: 測試 JDBCUtils 中資料庫連接池的延遲創建與啟動時間報告
+ */
+public class PoolStartupTest {
+
+	// 只使用 Druid 時, 其他連接池不會被創建.
+	@Test
+	public void testLazyStart() throws Exception {
+		System.out.print(JDBCUtils.getStartupReport());
+		Connection conn = JDBCUtils.getConnection3();
+		System.out.println(conn);
+		JDBCUtils.closeResource(conn, null);
+		System.out.print(JDBCUtils.getStartupReport());
+	}
+
+	// 服務啟動時明確地同時啟動多個連接池
+	@Test
+	public void testStart() {
+		long start = System.currentTimeMillis();
+		JDBCUtils.start("c3p0", "dbcp", "druid", "bag");
+		long end = System.currentTimeMillis();
+		System.out.println("同時啟動 4 個連接池花費時間: " + (end - start));
+		System.out.print(JDBCUtils.getStartupReport());
+	}
+}
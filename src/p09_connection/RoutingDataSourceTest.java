@@ -0,0 +1,78 @@
+package p09_connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import p04_bean.Customer;
+import p08_dao.CustomerDAOImpl;
+import p09_util.BagDataSource;
+import p09_util.PoolFactory;
+import p09_util.RoutingDataSource;
+
+/**
+ * ClassName: RoutingDataSourceTest.java
+ * PackageName: p09_connection
+ * Description: 測試讀寫分離的 RoutingDataSource
+ * 				主庫使用 bag.properties 的 url, 從庫的 url 以 -Dreplica.url 指定(預設與主庫相同),
+ * 				換成兩個不同的資料庫(例如兩個內嵌資料庫)即可看到讀取實際上由從庫返回.
+ */
+public class RoutingDataSourceTest {
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	private RoutingDataSource create() throws Exception {
+		BagDataSource primary = PoolFactory.createBag();
+		Properties overrides = new Properties();
+		String replicaUrl = System.getProperty("replica.url");
+		if (replicaUrl != null)
+			overrides.setProperty("url", replicaUrl);
+		BagDataSource replica = PoolFactory.createBag(overrides);
+		return new RoutingDataSource(primary, Arrays.asList(replica));
+	}
+
+	// 自動提交模式下的讀取送到從庫, 寫入送到主庫
+	@Test
+	public void testReadWriteSplit() throws Exception {
+		try (RoutingDataSource source = create()) {
+			try (Connection conn = source.getConnection()) {
+				System.out.println(dao.getCustomerById(conn, 12));
+				System.out.println(dao.getCount(conn));
+				System.out.println(dao.getAll(conn).size());
+			}
+			assertEquals(3, source.getReplicaStatementCount());
+			assertEquals(0, source.getPrimaryStatementCount());
+
+			try (Connection conn = source.getConnection()) {
+				Customer cust = dao.getCustomerById(conn, 12); // 從庫
+				dao.update(conn, cust); // 主庫
+				System.out.println(dao.getCustomerById(conn, 12)); // 寫入過, 改讀主庫
+			}
+			assertEquals(4, source.getReplicaStatementCount());
+			assertEquals(2, source.getPrimaryStatementCount());
+		}
+	}
+
+	// 交易中的讀取與寫入都在主庫, 可以讀到自己尚未提交的寫入
+	@Test
+	public void testTransactionStaysOnPrimary() throws Exception {
+		try (RoutingDataSource source = create()) {
+			try (Connection conn = source.getConnection()) {
+				conn.setAutoCommit(false);
+				Customer cust = dao.getCustomerById(conn, 12);
+				String name = cust.getName();
+				cust.setName(name + "-routing");
+				dao.update(conn, cust);
+				assertEquals(name + "-routing", dao.getCustomerById(conn, 12).getName());
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+			assertEquals(0, source.getReplicaStatementCount());
+			assertEquals(3, source.getPrimaryStatementCount());
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package p09_connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import p08_dao.CustomerDAOImpl;
+import p09_util.JDBCUtils;
+import p09_util.PoolFactory;
+import p09_util.StatementCachingDataSource;
+
+/**
+ * ClassName: StatementCacheTest.java
+ * PackageName: p09_connection
+ * Description: 測試 StatementCachingDataSource 在 4 個連接池上的快取行為:
+ * 				CustomerDAOImpl 的固定 SQL 在預熱後不再重新 prepare(沒有未命中), LRU 的淘汰,
+ * 				以及每次取出返回新的代理(已關閉的代理不會重新生效).
+ * 				-Dbench.loops 為每個連接池查詢的次數(預設 10000)
+ */
+public class StatementCacheTest {
+
+	private final CustomerDAOImpl dao = new CustomerDAOImpl();
+
+	@Test
+	public void testSteadyState() throws Exception {
+		int loops = Integer.getInteger("bench.loops", 10_000);
+		for (String name : new String[] { "c3p0", "dbcp", "druid", "bag" }) {
+			StatementCachingDataSource cache = JDBCUtils.getDataSource(name).unwrap(StatementCachingDataSource.class);
+			assertNotNull(cache, name);
+			run(name, loops / 10); // 預熱: 每條物理連接 prepare 一次
+			long misses = cache.getMissCount();
+			long hits = cache.getHitCount();
+			long start = System.currentTimeMillis();
+			run(name, loops);
+			long end = System.currentTimeMillis();
+			System.out.println(name + ": " + loops + " 次查詢, 花費時間: " + (end - start) + "ms, 命中 "
+					+ (cache.getHitCount() - hits) + " 次, 未命中 " + (cache.getMissCount() - misses) + " 次, 淘汰 "
+					+ cache.getEvictionCount() + " 次, 命中率 " + JDBCUtils.getMetrics(name).getStatementCacheHitRatio());
+			assertEquals(misses, cache.getMissCount(), name);
+		}
+	}
+
+	private void run(String name, int loops) throws Exception {
+		for (int i = 0; i < loops; i++) {
+			try (Connection conn = JDBCUtils.getDataSource(name).getConnection()) {
+				dao.getCustomerById(conn, 1 + i % 10);
+			}
+		}
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		Properties overrides = new Properties();
+		overrides.setProperty("initialSize", "1");
+		overrides.setProperty("maxPoolSize", "1");
+		try (StatementCachingDataSource source = new StatementCachingDataSource(PoolFactory.createBag(overrides), 2)) {
+			PreparedStatement first;
+			PreparedStatement underlying;
+			try (Connection conn = source.getConnection()) {
+				first = conn.prepareStatement("SELECT 1");
+				underlying = first.unwrap(PreparedStatement.class);
+				first.close();
+				conn.prepareStatement("SELECT 2").close();
+				// 同一個 SQL 與選項: 重複使用快取中的 PreparedStatement, 但每次取出都是新的代理
+				try (PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+					assertNotSame(first, ps);
+					assertSame(underlying, ps.unwrap(PreparedStatement.class));
+					assertSame(conn, ps.getConnection());
+					// 舊的代理保持關閉, 再 close() 一次也不會把使用中的 ps 放回快取
+					assertTrue(first.isClosed());
+					first.close();
+					assertFalse(ps.isClosed());
+					assertThrows(SQLException.class, first::executeQuery);
+					ps.executeQuery().close();
+				}
+			}
+			// 歸還後再借出同一條物理連接, 快取仍然有效
+			try (Connection conn = source.getConnection()) {
+				try (PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+					assertSame(underlying, ps.unwrap(PreparedStatement.class));
+				}
+				conn.prepareStatement("SELECT 3").close(); // 淘汰最久沒有使用的 SELECT 2
+			}
+			assertEquals(3, source.getMissCount());
+			assertEquals(2, source.getHitCount());
+			assertEquals(1, source.getEvictionCount());
+			assertTrue(source.getCachedCount() <= 2);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package p09_util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassName: AdaptivePoolSizer.java
+ * PackageName: p09_util
+ * Description: 依照借出等待時間與使用率調整連接池的最多連接數
+ * 				每個窗口(interval)檢查一次:
+ * 				1. 擴大: 窗口內 p99 等待時間超過 targetWaitMillis, 且使用率高於 growUtilization 或有執行緒在等待,
+ * 				   一次擴大目前大小的 1/4(至少 1), 不超過 maxSize.
+ * 				2. 縮小: 連續 shrinkAfterWindows 個窗口 p99 等待時間低於 targetWaitMillis 的一半且使用率低於
+ * 				   shrinkUtilization, 一次只縮小 1, 不低於 minSize.
+ * 				3. 每次調整後冷卻 cooldownWindows 個窗口, 讓連接池有時間建立或關閉連接.
+ * 				擴大快, 縮小慢, 中間留有不動作的區間, 突發流量下不會來回震盪.
+ * 				c3p0 調整大小會重設連接池(PoolAdapter.resizer() 為空), 創建時拋出 IllegalArgumentException.
+ */
+public class AdaptivePoolSizer implements AutoCloseable {
+
+	private final PoolAdapter pool;
+
+	private final PoolAdapter.Resizer resizer;
+
+	private final MeteredDataSource metered;
+
+	private final int minSize;
+
+	private final int maxSize;
+
+	private long targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(5);
+
+	private double growUtilization = 0.8;
+
+	private double shrinkUtilization = 0.5;
+
+	private int shrinkAfterWindows = 5;
+
+	private int cooldownWindows = 2;
+
+	private int calmWindows;
+
+	private int cooldown;
+
+	private int peakSize;
+
+	private int resizeCount;
+
+	private ScheduledExecutorService scheduler;
+
+	public AdaptivePoolSizer(MeteredDataSource metered, int minSize, int maxSize) {
+		this.metered = metered;
+		this.pool = PoolAdapters.of(metered);
+		this.resizer = pool.resizer()
+				.orElseThrow(() -> new IllegalArgumentException(pool.getName() + " 不支援在執行中調整連接池大小"));
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		int current = pool.getMaxSize();
+		if (current < minSize || current > maxSize)
+			resizer.setMaxSize(Math.max(minSize, Math.min(maxSize, current)));
+		this.peakSize = pool.getMaxSize();
+	}
+
+	/**
+	 * 每隔 intervalMillis 毫秒檢查一次
+	 */
+	public void start(long intervalMillis) {
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "AdaptivePoolSizer-" + pool.getName());
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleAtFixedRate(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 檢查一個窗口並決定是否調整, 返回調整後的大小.
+	 */
+	public int tick() {
+		LatencyHistogram window = metered.getWindowAndReset();
+		int size = pool.getMaxSize();
+		if (cooldown > 0) {
+			cooldown--;
+			return size;
+		}
+		long p99 = window.getValueAtPercentile(99);
+		int active = pool.getActive();
+		int pending = pool.getPending();
+		double utilization = size == 0 ? 1 : (double) active / size;
+
+		if (p99 > targetWaitNanos && (utilization >= growUtilization || pending > 0)) {
+			calmWindows = 0;
+			if (size < maxSize)
+				resize(Math.min(maxSize, size + Math.max(1, size / 4)));
+		} else if (p99 <= targetWaitNanos / 2 && utilization < shrinkUtilization) {
+			if (++calmWindows >= shrinkAfterWindows && size > minSize) {
+				calmWindows = 0;
+				resize(size - 1);
+			}
+		} else {
+			calmWindows = 0;
+		}
+		return pool.getMaxSize();
+	}
+
+	private void resize(int size) {
+		resizer.setMaxSize(size);
+		peakSize = Math.max(peakSize, size);
+		resizeCount++;
+		cooldown = cooldownWindows;
+	}
+
+	public int getCurrentSize() {
+		return pool.getMaxSize();
+	}
+
+	/**
+	 * 調整過的最大連接數
+	 */
+	public int getPeakSize() {
+		return peakSize;
+	}
+
+	public int getResizeCount() {
+		return resizeCount;
+	}
+
+	public void setTargetWaitMillis(long targetWaitMillis) {
+		this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWaitMillis);
+	}
+
+	public void setGrowUtilization(double growUtilization) {
+		this.growUtilization = growUtilization;
+	}
+
+	public void setShrinkUtilization(double shrinkUtilization) {
+		this.shrinkUtilization = shrinkUtilization;
+	}
+
+	public void setShrinkAfterWindows(int shrinkAfterWindows) {
+		this.shrinkAfterWindows = shrinkAfterWindows;
+	}
+
+	public void setCooldownWindows(int cooldownWindows) {
+		this.cooldownWindows = cooldownWindows;
+	}
+
+	@Override
+	public void close() {
+		if (scheduler != null)
+			scheduler.shutdownNow();
+	}
+}
@@ -0,0 +1,214 @@
+package p09_util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ClassName: BagConnectionHandler.java
+ * PackageName: p09_util
+ * Description: BagDataSource 借出的 Connection 代理
+ * 				close() 不關閉物理連接, 而是歸還給連接池;
+ * 				歸還前關閉借出期間開啟而沒有關閉的 Statement; 修改過自動提交時先回滾再恢復,
+ * 				修改過唯讀, 隔離級別, catalog, schema, 網路逾時的, 恢復成借出前的值(第一次修改前記下);
+ * 				發生連線錯誤(SQLState 08 開頭)時將物理連接移出連接池.
+ */
+class BagConnectionHandler implements InvocationHandler {
+
+	private static final Class<?>[] INTERFACES = { Connection.class };
+
+	// changed 的位元: 借出期間修改過的連接屬性
+	private static final int READ_ONLY = 1, ISOLATION = 2, CATALOG = 4, SCHEMA = 8, NETWORK_TIMEOUT = 16;
+
+	// 開啟的 Statement 超過這個數量時, 先移除已經關閉的
+	private static final int PRUNE_STATEMENTS = 64;
+
+	private final BagDataSource pool;
+
+	private final PoolEntry entry;
+
+	private boolean closed;
+
+	private boolean autoCommitChanged;
+
+	private boolean broken;
+
+	private int changed;
+
+	// 借出前的值
+	private boolean readOnly;
+
+	private int isolation;
+
+	private String catalog;
+
+	private String schema;
+
+	private int networkTimeout;
+
+	// 透過代理開啟的 Statement
+	private final List<Statement> statements = new ArrayList<>();
+
+	private BagConnectionHandler(BagDataSource pool, PoolEntry entry) {
+		this.pool = pool;
+		this.entry = entry;
+	}
+
+	static Connection wrap(BagDataSource pool, PoolEntry entry) {
+		return (Connection) Proxy.newProxyInstance(BagConnectionHandler.class.getClassLoader(), INTERFACES,
+				new BagConnectionHandler(pool, entry));
+	}
+
+	/**
+	 * 代理背後的物理連接, 不是 BagDataSource 借出的連接時返回 null.
+	 */
+	static Connection physical(Connection conn) {
+		if (!Proxy.isProxyClass(conn.getClass()))
+			return null;
+		InvocationHandler handler = Proxy.getInvocationHandler(conn);
+		return handler instanceof BagConnectionHandler ? ((BagConnectionHandler) handler).entry.connection : null;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "close":
+			close();
+			return null;
+		case "isClosed":
+			return closed || entry.connection.isClosed();
+		case "toString":
+			return "BagConnection [" + entry.connection + "]";
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		case "setAutoCommit":
+			autoCommitChanged = true;
+			break;
+		default:
+			break;
+		}
+		if (closed)
+			throw new SQLException("連接已關閉");
+		try {
+			save(method.getName());
+			Object result = method.invoke(entry.connection, args);
+			if (result instanceof Statement)
+				track((Statement) result);
+			return result;
+		} catch (InvocationTargetException e) {
+			throw failed(e.getCause());
+		} catch (SQLException e) {
+			throw failed(e);
+		}
+	}
+
+	// 連線錯誤時標記為損壞
+	private Throwable failed(Throwable cause) {
+		if (cause instanceof SQLException) {
+			String state = ((SQLException) cause).getSQLState();
+			if (state != null && state.startsWith("08"))
+				broken = true;
+		}
+		return cause;
+	}
+
+	// 第一次修改連接屬性前記下借出前的值
+	private void save(String setter) throws SQLException {
+		Connection conn = entry.connection;
+		switch (setter) {
+		case "setReadOnly":
+			if ((changed & READ_ONLY) == 0)
+				readOnly = conn.isReadOnly();
+			changed |= READ_ONLY;
+			break;
+		case "setTransactionIsolation":
+			if ((changed & ISOLATION) == 0)
+				isolation = conn.getTransactionIsolation();
+			changed |= ISOLATION;
+			break;
+		case "setCatalog":
+			if ((changed & CATALOG) == 0)
+				catalog = conn.getCatalog();
+			changed |= CATALOG;
+			break;
+		case "setSchema":
+			if ((changed & SCHEMA) == 0)
+				schema = conn.getSchema();
+			changed |= SCHEMA;
+			break;
+		case "setNetworkTimeout":
+			if ((changed & NETWORK_TIMEOUT) == 0)
+				networkTimeout = conn.getNetworkTimeout();
+			changed |= NETWORK_TIMEOUT;
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void track(Statement statement) {
+		if (statements.size() >= PRUNE_STATEMENTS)
+			statements.removeIf(BagConnectionHandler::isClosed);
+		statements.add(statement);
+	}
+
+	private static boolean isClosed(Statement statement) {
+		try {
+			return statement.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	private void close() {
+		if (closed)
+			return;
+		closed = true;
+		// 關閉已經關閉的 Statement 不做任何事
+		for (Statement statement : statements) {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				failed(e);
+			}
+		}
+		statements.clear();
+		if (!broken) {
+			try {
+				Connection conn = entry.connection;
+				if (autoCommitChanged && !conn.getAutoCommit()) {
+					conn.rollback();
+					conn.setAutoCommit(true);
+				}
+				restore(conn);
+			} catch (SQLException e) {
+				broken = true;
+			}
+		}
+		if (broken)
+			pool.evict(entry);
+		else
+			pool.recycle(entry);
+	}
+
+	private void restore(Connection conn) throws SQLException {
+		if ((changed & READ_ONLY) != 0)
+			conn.setReadOnly(readOnly);
+		if ((changed & ISOLATION) != 0)
+			conn.setTransactionIsolation(isolation);
+		if ((changed & CATALOG) != 0)
+			conn.setCatalog(catalog);
+		if ((changed & SCHEMA) != 0)
+			conn.setSchema(schema);
+		if ((changed & NETWORK_TIMEOUT) != 0)
+			conn.setNetworkTimeout(Runnable::run, networkTimeout);
+	}
+}
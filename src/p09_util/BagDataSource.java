@@ -0,0 +1,379 @@
+package p09_util;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: BagDataSource.java
+ * PackageName: p09_util
+ * Description: 專案自己的資料庫連接池, 以 ConcurrentBag 管理連接.
+ * 				設定檔 bag.properties 中的參數:
+ * 				driverClass, url, user, password: 獲取連接的四個基本信息
+ * 				initialSize: 初始化時的連接數
+ * 				maxPoolSize: 最多的連接數
+ * 				connectionTimeout: 獲取連接最多等待的毫秒數
+ * 				threadAffinity: 是否記住每條執行緒上次使用的連接(預設 true, 使用虛擬執行緒時建議 false)
+ * 				minIdle: 背景檢查後至少保持的閒置連接數(預設 0)
+ * 				validationInterval: 背景檢查閒置連接的間隔毫秒數(預設 30000, 0 表示不檢查)
+ * 				validationTimeout: Connection.isValid 的逾時秒數(預設 3)
+ * 				maxLifetime: 連接最長的存活毫秒數, 超過時在閒置時被替換(預設 1800000, 0 表示不限)
+ * 				新連接由一條背景執行緒建立, 連接的有效性也在背景檢查,
+ * 				借出與歸還的路徑上不會建立連接, 也不做任何網路 I/O.
+ */
+public class BagDataSource implements DataSource, AutoCloseable {
+
+	private final String url;
+
+	private final String user;
+
+	private final String password;
+
+	private volatile int maxPoolSize;
+
+	private final long connectionTimeout;
+
+	private final ConcurrentBag<PoolEntry> bag;
+
+	// 已建立與建立中的連接數
+	private final AtomicInteger totalConnections = new AtomicInteger();
+
+	private final ThreadPoolExecutor addConnectionExecutor;
+
+	private volatile SQLException lastCreateFailure;
+
+	// 背景檢查移除的連接數
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	// 建立的連接數與花費的總時間(納秒)
+	private final AtomicLong createCount = new AtomicLong();
+
+	private final AtomicLong createNanos = new AtomicLong();
+
+	private volatile boolean closed;
+
+	private final int minIdle;
+
+	private final int validationTimeout;
+
+	private final long maxLifetime;
+
+	private final ScheduledExecutorService houseKeeper;
+
+	private PrintWriter logWriter;
+
+	private int loginTimeout;
+
+	public BagDataSource(Properties pros) throws ClassNotFoundException, SQLException {
+		// 1. 獲取連接的 4 個基本信息
+		String driverClass = pros.getProperty("driverClass");
+		if (driverClass != null && !driverClass.isEmpty())
+			Class.forName(driverClass);
+		url = pros.getProperty("url");
+		user = pros.getProperty("user");
+		password = pros.getProperty("password");
+
+		// 2. 連接池管理的基本信息
+		int initialSize = Integer.parseInt(pros.getProperty("initialSize", "0"));
+		maxPoolSize = Integer.parseInt(pros.getProperty("maxPoolSize", "10"));
+		connectionTimeout = Long.parseLong(pros.getProperty("connectionTimeout", "30000"));
+		minIdle = Integer.parseInt(pros.getProperty("minIdle", "0"));
+		long validationInterval = Long.parseLong(pros.getProperty("validationInterval", "30000"));
+		validationTimeout = Integer.parseInt(pros.getProperty("validationTimeout", "3"));
+		maxLifetime = Long.parseLong(pros.getProperty("maxLifetime", "1800000"));
+
+		boolean threadAffinity = Boolean.parseBoolean(pros.getProperty("threadAffinity", "true"));
+
+		bag = new ConcurrentBag<>(this::addBagItem, threadAffinity);
+		addConnectionExecutor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				r -> {
+					Thread t = new Thread(r, "BagDataSource-adder");
+					t.setDaemon(true);
+					return t;
+				});
+		addConnectionExecutor.allowCoreThreadTimeOut(true);
+
+		// 3. 平行建立初始的連接
+		fill(Math.min(initialSize, maxPoolSize));
+
+		// 4. 背景檢查閒置的連接
+		if (validationInterval > 0) {
+			houseKeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "BagDataSource-housekeeper");
+				t.setDaemon(true);
+				return t;
+			});
+			houseKeeper.scheduleWithFixedDelay(this::houseKeep, validationInterval, validationInterval,
+					TimeUnit.MILLISECONDS);
+		} else {
+			houseKeeper = null;
+		}
+	}
+
+	/**
+	 * 檢查所有閒置的連接: 先保留(此時不會被借出), 失效或超過 maxLifetime 的移出並關閉, 其餘取消保留;
+	 * 最後補充連接到 minIdle, 讓之後的借出不需要等待建立連接.
+	 */
+	void houseKeep() {
+		if (closed)
+			return;
+		long now = System.currentTimeMillis();
+		int evicted = 0;
+		for (PoolEntry entry : bag.values(ConcurrentBag.BagEntry.STATE_NOT_IN_USE)) {
+			if (!bag.reserve(entry))
+				continue; // 剛被借出
+			if ((maxLifetime > 0 && now - entry.createdAt > maxLifetime) || !isValid(entry)) {
+				evict(entry);
+				evicted++;
+			} else {
+				bag.unreserve(entry);
+			}
+		}
+		evictedCount.addAndGet(evicted);
+		while (!closed && getIdleConnections() < minIdle && totalConnections.get() < maxPoolSize) {
+			int before = totalConnections.get();
+			addConnection();
+			if (totalConnections.get() <= before)
+				break; // 建立失敗, 等下一次檢查再補
+		}
+	}
+
+	private boolean isValid(PoolEntry entry) {
+		try {
+			return entry.connection.isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	// 同時建立 count 條連接, 避免初始化時一條接一條等待 TCP 握手與登入.
+	private void fill(int count) throws SQLException {
+		if (count <= 0)
+			return;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(count, 8));
+		try {
+			List<Future<PoolEntry>> futures = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				totalConnections.incrementAndGet();
+				futures.add(executor.submit(this::newPoolEntry));
+			}
+			SQLException failure = null;
+			for (Future<PoolEntry> future : futures) {
+				try {
+					bag.add(future.get());
+				} catch (ExecutionException e) {
+					totalConnections.decrementAndGet();
+					if (failure == null)
+						failure = e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("建立初始連接時被中斷", e);
+				}
+			}
+			if (failure != null) {
+				// 有連接建立失敗時, 關閉已經建立的連接
+				for (PoolEntry entry : bag.values())
+					entry.closeQuietly();
+				throw failure;
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed)
+			throw new SQLException("BagDataSource 已關閉");
+		try {
+			PoolEntry entry = bag.borrow(connectionTimeout, TimeUnit.MILLISECONDS);
+			if (entry == null)
+				throw new SQLTransientConnectionException("獲取連接超時: " + connectionTimeout + "ms", lastCreateFailure);
+			return BagConnectionHandler.wrap(this, entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("等待連接時被中斷", e);
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("BagDataSource 只使用設定檔中的帳號密碼");
+	}
+
+	// 歸還連接
+	void recycle(PoolEntry entry) {
+		entry.lastAccessed = System.currentTimeMillis();
+		// 關閉後歸還的連接直接關閉
+		if (closed) {
+			evict(entry);
+			return;
+		}
+		// maxPoolSize 被調小而連接數超出時, 以 CAS 先扣掉一條再關閉, 同時歸還的執行緒不會多關閉連接
+		int total;
+		while ((total = totalConnections.get()) > maxPoolSize) {
+			if (totalConnections.compareAndSet(total, total - 1)) {
+				if (bag.remove(entry))
+					entry.closeQuietly();
+				else // 已經被其他執行緒移出並扣掉
+					totalConnections.incrementAndGet();
+				return;
+			}
+		}
+		bag.requite(entry);
+	}
+
+	// 將連接移出連接池並關閉物理連接
+	void evict(PoolEntry entry) {
+		if (bag.remove(entry)) {
+			totalConnections.decrementAndGet();
+			entry.closeQuietly();
+		}
+	}
+
+	// ConcurrentBag 沒有可用連接時調用, 交給背景執行緒建立
+	private void addBagItem(int waiting) {
+		if (!closed && totalConnections.get() < maxPoolSize && addConnectionExecutor.getQueue().size() < waiting)
+			addConnectionExecutor.execute(this::addConnection);
+	}
+
+	private void addConnection() {
+		if (closed)
+			return;
+		if (totalConnections.incrementAndGet() > maxPoolSize) {
+			totalConnections.decrementAndGet();
+			return;
+		}
+		try {
+			bag.add(newPoolEntry());
+		} catch (SQLException | IllegalStateException e) {
+			totalConnections.decrementAndGet();
+			if (e instanceof SQLException)
+				lastCreateFailure = (SQLException) e;
+		}
+	}
+
+	PoolEntry newPoolEntry() throws SQLException {
+		long start = System.nanoTime();
+		Connection conn = DriverManager.getConnection(url, user, password);
+		createNanos.addAndGet(System.nanoTime() - start);
+		createCount.incrementAndGet();
+		return new PoolEntry(conn);
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	public int getActiveConnections() {
+		return bag.getCount(ConcurrentBag.BagEntry.STATE_IN_USE);
+	}
+
+	public int getIdleConnections() {
+		return bag.getCount(ConcurrentBag.BagEntry.STATE_NOT_IN_USE);
+	}
+
+	public int getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	public long getCreateCount() {
+		return createCount.get();
+	}
+
+	/**
+	 * 建立一條物理連接平均花費的毫秒數, 還沒有建立過連接時返回 0.
+	 */
+	public double getCreateMillisAverage() {
+		long count = createCount.get();
+		return count == 0 ? 0 : createNanos.get() / 1_000_000.0 / count;
+	}
+
+	public int getThreadsAwaitingConnection() {
+		return bag.getWaitingThreadCount();
+	}
+
+	/**
+	 * 關閉連接池, 閒置的連接立即關閉, 借出中的連接在歸還時關閉.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		bag.close();
+		addConnectionExecutor.shutdownNow();
+		if (houseKeeper != null)
+			houseKeeper.shutdownNow();
+		for (PoolEntry entry : bag.values()) {
+			if (bag.reserve(entry))
+				evict(entry);
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return logWriter;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		this.logWriter = out;
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		this.loginTimeout = seconds;
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return loginTimeout;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		throw new SQLException("BagDataSource 不是 " + iface.getName() + " 的包裝");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+}
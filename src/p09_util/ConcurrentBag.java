@@ -0,0 +1,221 @@
+package p09_util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ClassName: ConcurrentBag.java
+ * PackageName: p09_util
+ * Description: 無鎖的連接容器, 作為 BagDataSource 的核心
+ * 				借出的順序:
+ * 				1. 先看當前執行緒上次歸還的元素(執行緒親和, 不需要任何共享的寫入)
+ * 				2. 再掃描共享的 CopyOnWriteArrayList, 以 CAS 將元素由 NOT_IN_USE 改為 IN_USE
+ * 				3. 都沒有時通知 listener 補充元素, 並在 SynchronousQueue 上等待其他執行緒直接交接
+ * 				借出與歸還的路徑上都沒有 synchronized 或 Lock.
+ */
+public class ConcurrentBag<T extends ConcurrentBag.BagEntry> implements AutoCloseable {
+
+	/**
+	 * 可以放進 ConcurrentBag 的元素, 狀態以 CAS 切換.
+	 */
+	public static abstract class BagEntry {
+		public static final int STATE_NOT_IN_USE = 0;
+		public static final int STATE_IN_USE = 1;
+		public static final int STATE_REMOVED = -1;
+		public static final int STATE_RESERVED = -2;
+
+		private final AtomicInteger state = new AtomicInteger(STATE_NOT_IN_USE);
+
+		public boolean compareAndSet(int expect, int update) {
+			return state.compareAndSet(expect, update);
+		}
+
+		public int getState() {
+			return state.get();
+		}
+
+		public void setState(int update) {
+			state.set(update);
+		}
+	}
+
+	/**
+	 * 沒有可用元素時被調用, 參數為正在等待的執行緒數.
+	 */
+	public interface BagListener {
+		void addBagItem(int waiting);
+	}
+
+	// 每個執行緒最多記住幾個上次使用的元素
+	private static final int THREAD_LOCAL_SIZE = 16;
+
+	private final CopyOnWriteArrayList<T> sharedList = new CopyOnWriteArrayList<>();
+
+	private final ThreadLocal<List<T>> threadList = ThreadLocal.withInitial(() -> new ArrayList<>(THREAD_LOCAL_SIZE));
+
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	private final SynchronousQueue<T> handoffQueue = new SynchronousQueue<>(true);
+
+	private final BagListener listener;
+
+	// 虛擬執行緒數量龐大且用完即丟, 記住上次使用的元素沒有意義, 可以關閉.
+	private final boolean threadAffinity;
+
+	private volatile boolean closed;
+
+	public ConcurrentBag(BagListener listener) {
+		this(listener, true);
+	}
+
+	public ConcurrentBag(BagListener listener, boolean threadAffinity) {
+		this.listener = listener;
+		this.threadAffinity = threadAffinity;
+	}
+
+	/**
+	 * 借出一個元素, 超過 timeout 仍沒有可用元素時返回 null.
+	 */
+	public T borrow(long timeout, TimeUnit unit) throws InterruptedException {
+		// 1. 執行緒親和: 從最近歸還的開始嘗試
+		if (threadAffinity) {
+			List<T> list = threadList.get();
+			for (int i = list.size() - 1; i >= 0; i--) {
+				T entry = list.remove(i);
+				if (entry.compareAndSet(BagEntry.STATE_NOT_IN_USE, BagEntry.STATE_IN_USE))
+					return entry;
+			}
+		}
+
+		// 2. 掃描共享列表
+		int waiting = waiters.incrementAndGet();
+		try {
+			for (T entry : sharedList) {
+				if (entry.compareAndSet(BagEntry.STATE_NOT_IN_USE, BagEntry.STATE_IN_USE)) {
+					// 可能搶走了其他等待者的元素, 請 listener 幫忙補充
+					if (waiting > 1)
+						listener.addBagItem(waiting - 1);
+					return entry;
+				}
+			}
+
+			// 3. 等待交接
+			listener.addBagItem(waiting);
+			long nanos = unit.toNanos(timeout);
+			do {
+				long start = System.nanoTime();
+				T entry = handoffQueue.poll(nanos, TimeUnit.NANOSECONDS);
+				if (entry == null || entry.compareAndSet(BagEntry.STATE_NOT_IN_USE, BagEntry.STATE_IN_USE))
+					return entry;
+				nanos -= System.nanoTime() - start;
+			} while (nanos > 10_000 && !closed);
+			return null;
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 歸還一個借出的元素, 有執行緒在等待時直接交接給它.
+	 */
+	public void requite(T entry) {
+		entry.setState(BagEntry.STATE_NOT_IN_USE);
+		for (int i = 0; waiters.get() > 0; i++) {
+			if (entry.getState() != BagEntry.STATE_NOT_IN_USE || handoffQueue.offer(entry))
+				return;
+			else if ((i & 0xff) == 0xff)
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+			else
+				Thread.yield();
+		}
+		if (threadAffinity) {
+			List<T> list = threadList.get();
+			if (list.size() < THREAD_LOCAL_SIZE)
+				list.add(entry);
+		}
+	}
+
+	/**
+	 * 加入一個新元素, 有執行緒在等待時優先交接.
+	 */
+	public void add(T entry) {
+		if (closed)
+			throw new IllegalStateException("ConcurrentBag 已關閉");
+		sharedList.add(entry);
+		while (waiters.get() > 0 && entry.getState() == BagEntry.STATE_NOT_IN_USE && !handoffQueue.offer(entry))
+			Thread.yield();
+	}
+
+	/**
+	 * 移除一個借出或保留中的元素
+	 */
+	public boolean remove(T entry) {
+		if (!entry.compareAndSet(BagEntry.STATE_IN_USE, BagEntry.STATE_REMOVED)
+				&& !entry.compareAndSet(BagEntry.STATE_RESERVED, BagEntry.STATE_REMOVED) && !closed)
+			return false;
+		return sharedList.remove(entry);
+	}
+
+	/**
+	 * 將閒置的元素保留起來(例如用於背景檢查), 保留中的元素不會被借出.
+	 */
+	public boolean reserve(T entry) {
+		return entry.compareAndSet(BagEntry.STATE_NOT_IN_USE, BagEntry.STATE_RESERVED);
+	}
+
+	/**
+	 * 取消保留, 讓元素可以再被借出.
+	 */
+	public void unreserve(T entry) {
+		if (entry.compareAndSet(BagEntry.STATE_RESERVED, BagEntry.STATE_NOT_IN_USE)) {
+			while (waiters.get() > 0 && entry.getState() == BagEntry.STATE_NOT_IN_USE && !handoffQueue.offer(entry))
+				Thread.yield();
+		}
+	}
+
+	/**
+	 * 返回指定狀態的元素
+	 */
+	public List<T> values(int state) {
+		List<T> list = new ArrayList<>();
+		for (T entry : sharedList) {
+			if (entry.getState() == state)
+				list.add(entry);
+		}
+		return list;
+	}
+
+	/**
+	 * 返回所有元素
+	 */
+	public List<T> values() {
+		return new ArrayList<>(sharedList);
+	}
+
+	public int getCount(int state) {
+		int count = 0;
+		for (T entry : sharedList) {
+			if (entry.getState() == state)
+				count++;
+		}
+		return count;
+	}
+
+	public int size() {
+		return sharedList.size();
+	}
+
+	public int getWaitingThreadCount() {
+		return waiters.get();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+	}
+}
@@ -1,23 +1,21 @@
 package p09_util;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.dbcp2.BasicDataSource;
-import org.apache.commons.dbcp2.BasicDataSourceFactory;
 import org.apache.commons.dbutils.DbUtils;
 
-import com.alibaba.druid.pool.DruidDataSourceFactory;
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
 /**
@@ -26,91 +24,240 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
  * Description: 
  */
 public class JDBCUtils {
+	/*
+	 * 4 個資料庫連接池都使用靜態內部類(holder)延遲創建:
+	 * 第一次調用對應的 getConnectionN() 時才創建, 只用到其中一個時不會替其他連接池建立連接.
+	 * 類的初始化由 JVM 保證只執行一次且執行緒安全.
+	 * DBCP 與 Druid 創建時先將 initialSize 設為 0, 再由 PoolWarmer 平行建立初始的連接;
+	 * c3p0 由自己的 helper 執行緒取得初始連接, 預熱讓這些連接在啟動時就準備好.
+	 * 
+	 * 以系統屬性開啟連接洩漏的檢查(4 個連接池共用), 例如:
+	 * -Dleak.thresholdMillis=60000  借出超過 60 秒沒有歸還視為洩漏(預設 0, 不檢查)
+	 * -Dleak.sampleEvery=100        每 100 次借出記錄一次借出位置的堆疊(預設 100)
+	 * -Dleak.reclaim=true           回收洩漏的連接(預設 false, 只報告)
+	 * 
+	 * 每條物理連接快取 PreparedStatement(見 StatementCachingDataSource), 例如:
+	 * -Dstatement.cacheSize=32      每條物理連接最多快取 32 個 PreparedStatement(預設 32, 0 為不快取)
+	 * -Dstatement.pruneInterval=30000  每 30 秒移除已經關閉的物理連接的快取(預設 30000)
+	 */
+	
 	/**
 	 * 使用 c3p0 的資料庫連接池技術獲取資料庫連接
 	 * */
 	// 資料庫連接池只需提供一個即可
-	private static ComboPooledDataSource cpds = new ComboPooledDataSource("C3P0");
+	private static class C3P0Holder {
+		private static final MeteredDataSource METERED = start("c3p0", () -> {
+			ComboPooledDataSource cpds = PoolFactory.createC3P0();
+			int initialSize = cpds.getInitialPoolSize();
+			return new StartedPool<>(cpds, initialSize);
+		});
+	}
 	public static Connection getConnection1() throws SQLException {
-		Connection conn = cpds.getConnection();
+		Connection conn = C3P0Holder.METERED.getConnection();
 		return conn;
 	}
 	
 	/**
 	 * 使用 DBCP 的資料庫連接池技術獲取資料庫連接
 	 * */
-	// 創建一個 DBCP 資料庫連接池(使用靜態程式碼區塊)
-	private static BasicDataSource source;
-	static {		
-		FileInputStream is = null;
-		try {
-			Properties pros = new Properties();
-			is = new FileInputStream(new File("src/dbcp.properties"));
-			pros.load(is);
-			source = BasicDataSourceFactory.createDataSource(pros);
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			try {
-				if (is != null)
-					is.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+	private static class DBCPHolder {
+		private static final MeteredDataSource METERED = start("dbcp", () -> {
+			int initialSize = Integer.parseInt(PoolFactory.loadProperties("dbcp.properties").getProperty("initialSize", "0"));
+			BasicDataSource source = PoolFactory.createDBCP(initialSizeZero("initialSize"));
+			// 歸還時超過 maxIdle 的連接會被關閉, 預熱的數量不超過 maxIdle.
+			return new StartedPool<>(source, Math.min(initialSize, source.getMaxIdle()));
+		});
 	}
 	public static Connection getConnection2() throws SQLException {
-		Connection conn = source.getConnection();
+		Connection conn = DBCPHolder.METERED.getConnection();
 		return conn;
 	}	
 	
 	/**
 	 * 使用 Druid 的資料庫連接池技術獲取資料庫連接
 	 * */
-	//創建一個 Druid 資料庫連接池(使用靜態程式碼區塊)
-	private static DataSource source1;
-	static {		
-		InputStream is = null;
+	private static class DruidHolder {
+		private static final MeteredDataSource METERED = start("druid", () -> {
+			int initialSize = Integer.parseInt(PoolFactory.loadProperties("druid.properties").getProperty("initialSize", "0"));
+			return new StartedPool<>(PoolFactory.createDruid(initialSizeZero("initialSize")), initialSize);
+		});
+	}
+	public static Connection getConnection3() throws SQLException {
+		Connection conn = DruidHolder.METERED.getConnection();
+		return conn;
+	}
+	
+	/**
+	 * 使用專案自己的 BagDataSource 資料庫連接池技術獲取資料庫連接
+	 * */
+	private static class BagHolder {
+		// BagDataSource 在建構時就平行建立初始的連接, 不需要再預熱.
+		private static final MeteredDataSource METERED = start("bag", () -> new StartedPool<>(PoolFactory.createBag(), 0));
+	}
+	public static Connection getConnection4() throws SQLException {
+		Connection conn = BagHolder.METERED.getConnection();
+		return conn;
+	}
+	
+	/**
+	 * 以 javax.sql.DataSource 的形式提供各個資料庫連接池
+	 * 返回的是記錄借出時間的 MeteredDataSource, 需要連接池本身時使用 unwrap(), 例如 unwrap(BagDataSource.class).
+	 * */
+	public static DataSource getDataSource1() {
+		return C3P0Holder.METERED;
+	}
+	
+	public static DataSource getDataSource2() {
+		return DBCPHolder.METERED;
+	}
+	
+	public static DataSource getDataSource3() {
+		return DruidHolder.METERED;
+	}
+	
+	public static DataSource getDataSource4() {
+		return BagHolder.METERED;
+	}
+	
+	/**
+	 * 明確地啟動指定的資料庫連接池(c3p0, dbcp, druid, bag), 多個連接池會同時初始化.
+	 * 例如服務啟動時調用 JDBCUtils.start("druid"), 避免第一個請求承擔初始化的時間.
+	 * */
+	public static void start(String... names) {
+		List<CompletableFuture<DataSource>> futures = new ArrayList<>();
+		for (String name : names)
+			futures.add(CompletableFuture.supplyAsync(() -> getDataSource(name)));
+		for (CompletableFuture<DataSource> future : futures)
+			future.join();
+	}
+	
+	/**
+	 * 依照名稱(c3p0, dbcp, druid, bag)獲取資料庫連接池, 尚未創建時會先創建.
+	 * */
+	public static DataSource getDataSource(String name) {
+		switch (name) {
+		case "c3p0":
+			return getDataSource1();
+		case "dbcp":
+			return getDataSource2();
+		case "druid":
+			return getDataSource3();
+		case "bag":
+			return getDataSource4();
+		default:
+			throw new IllegalArgumentException("不支持的連接池: " + name);
+		}
+	}
+	
+	/**
+	 * 為指定的資料庫連接池啟動 AdaptivePoolSizer, 依照借出等待時間在 minSize 與 maxSize 之間調整大小.
+	 * */
+	public static AdaptivePoolSizer startAdaptiveSizing(String name, int minSize, int maxSize, long intervalMillis) {
+		AdaptivePoolSizer sizer = new AdaptivePoolSizer((MeteredDataSource) getDataSource(name), minSize, maxSize);
+		sizer.start(intervalMillis);
+		return sizer;
+	}
+	
+	/**
+	 * 指定資料庫連接池的監控數值, 尚未創建時會先創建. 連接池創建時已經註冊到 JMX.
+	 * */
+	public static PoolMetrics getMetrics(String name) {
+		getDataSource(name);
+		return METRICS.get(name);
+	}
+	
+	/**
+	 * 所有已創建的資料庫連接池的監控數值, 不會創建新的連接池.
+	 * */
+	public static List<PoolMetricsSnapshot> getMetricsSnapshots() {
+		List<PoolMetricsSnapshot> snapshots = new ArrayList<>();
+		for (String name : new String[] { "c3p0", "dbcp", "druid", "bag" }) {
+			PoolMetrics metrics = METRICS.get(name);
+			if (metrics != null)
+				snapshots.add(metrics.getSnapshot());
+		}
+		return snapshots;
+	}
+	
+	private static final Map<String, PoolMetrics> METRICS = new ConcurrentHashMap<>();
+	
+	// 包裝成記錄借出時間的 MeteredDataSource, 並註冊 JMX 的監控數值; 開啟洩漏檢查時先包裝 LeakDetectingDataSource.
+	// StatementCachingDataSource 要直接包裝連接池, 才能從借出的連接取得物理連接.
+	private static MeteredDataSource metered(String name, DataSource pool) {
+		Properties statement = PoolFactory.overridesFromSystem("statement.");
+		int cacheSize = Integer.parseInt(statement.getProperty("cacheSize", "32"));
+		if (cacheSize > 0)
+			pool = new StatementCachingDataSource(pool, cacheSize, Long.parseLong(statement.getProperty("pruneInterval", "30000")));
+		Properties leak = PoolFactory.overridesFromSystem("leak.");
+		long threshold = Long.parseLong(leak.getProperty("thresholdMillis", "0"));
+		if (threshold > 0)
+			pool = new LeakDetectingDataSource(pool, threshold, Integer.parseInt(leak.getProperty("sampleEvery", "100")),
+					Boolean.parseBoolean(leak.getProperty("reclaim", "false")));
+		MeteredDataSource metered = new MeteredDataSource(pool);
+		METRICS.put(name, new PoolMetrics(metered).register());
+		return metered;
+	}
+	
+	/**
+	 * 啟動時間報告: 每個已創建的連接池花費的時間與預熱的連接數
+	 * */
+	public static String getStartupReport() {
+		StringBuilder report = new StringBuilder();
+		for (String name : new String[] { "c3p0", "dbcp", "druid", "bag" }) {
+			String line = STARTUP_REPORT.get(name);
+			report.append(name).append(": ").append(line == null ? "未初始化" : line).append(System.lineSeparator());
+		}
+		return report.toString();
+	}
+	
+	private static final Map<String, String> STARTUP_REPORT = new ConcurrentHashMap<>();
+	
+	// 創建連接池, 包裝後平行預熱並記錄花費的時間.
+	// 預熱經過 MeteredDataSource, 連接池不提供建立連接的時間時, 預熱的借出就是初始連接建立的時間.
+	private static <T extends DataSource> MeteredDataSource start(String name, PoolCreator<T> creator) {
+		long start = System.currentTimeMillis();
 		try {
-			Properties pros = new Properties();
-			is = ClassLoader.getSystemClassLoader().getResourceAsStream("druid.properties");
-			pros.load(is);
-			source1 = DruidDataSourceFactory.createDataSource(pros);
+			StartedPool<T> started = creator.create();
+			MeteredDataSource metered = metered(name, started.pool);
+			long created = System.currentTimeMillis();
+			int warmed = PoolWarmer.warmUp(metered, started.warmUpCount);
+			long end = System.currentTimeMillis();
+			STARTUP_REPORT.put(name, "花費時間: " + (end - start) + "ms (創建 " + (created - start) + "ms, 平行預熱 " + warmed
+					+ " 條連接 " + (end - created) + "ms)");
+			return metered;
 		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			try {
-				if (is != null)
-					is.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			STARTUP_REPORT.put(name, "初始化失敗: " + e);
+			throw new IllegalStateException(name + " 資料庫連接池初始化失敗", e);
+		}
+	}
+	
+	private static Properties initialSizeZero(String key) {
+		Properties overrides = new Properties();
+		overrides.setProperty(key, "0");
+		return overrides;
+	}
+	
+	@FunctionalInterface
+	private interface PoolCreator<T extends DataSource> {
+		StartedPool<T> create() throws Exception;
+	}
+	
+	private static class StartedPool<T extends DataSource> {
+		final T pool;
+		final int warmUpCount;
+		
+		StartedPool(T pool, int warmUpCount) {
+			this.pool = pool;
+			this.warmUpCount = warmUpCount;
 		}
-	}	
-	public static Connection getConnection3() throws SQLException {
-		Connection conn = source1.getConnection();
-		return conn;
 	}
 	
 	// 將先前的其他操作留著比較不會出錯(便宜行事而已)
 	/**
-	 * 獲取資料庫的連接
+	 * 獲取資料庫的連接(交給 p02_util.JDBCUtils, 設定檔只讀取一次)
 	 * */
 	public static Connection getConnection() throws Exception {
-		// 1. 讀取設定檔中的 4 個基本訊息
-		InputStream is = ClassLoader.getSystemClassLoader().getResourceAsStream("jdbc.properties"); // 獲取系統類加載器再去讀取設定檔
-		Properties pros = new Properties();
-		pros.load(is);
-		String user = pros.getProperty("user");
-		String password = pros.getProperty("password");
-		String url = pros.getProperty("url");
-		String driverClass = pros.getProperty("driverClass");
-		// 2. 加載驅動
-		Class.forName(driverClass);
-		// 3. 獲取連接
-		Connection conn = DriverManager.getConnection(url, user, password);
-
-		return conn;
+		return p02_util.JDBCUtils.getConnection();
 	}
 	
 	/**
@@ -0,0 +1,214 @@
+package p09_util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: LatencyHistogram.java
+ * PackageName: p09_util
+ * Description: 記錄延遲(奈秒)的直方圖, 用於計算 p50/p99/p99.9 等百分位數.
+ * 				每個 2 的次方區間再平均切成 32 格, 誤差約 3%.
+ * 				格子的次數, 總次數與總時間都是 LongAdder, 多條執行緒同時記錄時分散到各自的 cell, 不會爭用同一個快取行;
+ * 				最大值只在變大時才寫入. 格子在第一次用到時才創建.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+	private final AtomicReferenceArray<LongAdder> counts = new AtomicReferenceArray<>(BUCKETS);
+
+	private final LongAdder totalCount = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * 記錄一次延遲
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		bucket(index(nanos)).increment();
+		totalCount.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	private LongAdder bucket(int index) {
+		LongAdder adder = counts.get(index);
+		if (adder == null && !counts.compareAndSet(index, null, adder = new LongAdder()))
+			adder = counts.get(index);
+		return adder;
+	}
+
+	private long count(int index) {
+		LongAdder adder = counts.get(index);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 * 將另一個直方圖的紀錄加進來(例如合併每條執行緒各自的直方圖)
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.count(i);
+			if (c != 0)
+				bucket(i).add(c);
+		}
+		totalCount.add(other.totalCount.sum());
+		totalNanos.add(other.totalNanos.sum());
+		maxNanos.accumulate(other.maxNanos.get());
+	}
+
+	/**
+	 * 返回目前紀錄的副本. 總次數取自複製的格子, 與同時進行的 record() 相比, 副本內的次數與百分位數一致,
+	 * 總時間(平均值)可能多或少幾次的紀錄.
+	 */
+	public LatencyHistogram snapshot() {
+		LatencyHistogram copy = new LatencyHistogram();
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = count(i);
+			if (c != 0) {
+				copy.bucket(i).add(c);
+				count += c;
+			}
+		}
+		copy.totalCount.add(count);
+		copy.totalNanos.add(totalNanos.sum());
+		copy.maxNanos.accumulate(maxNanos.get());
+		return copy;
+	}
+
+	/**
+	 * 返回 this 減去較早的快照 earlier 的紀錄, 也就是兩次快照之間的紀錄(用於按時間窗口統計).
+	 * 最大值無法相減, 取最高一格的上界(不超過 this 的最大值).
+	 */
+	public LatencyHistogram minus(LatencyHistogram earlier) {
+		LatencyHistogram window = new LatencyHistogram();
+		long count = 0;
+		long max = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = count(i) - earlier.count(i);
+			if (c > 0) {
+				window.bucket(i).add(c);
+				count += c;
+				max = upperBound(i);
+			}
+		}
+		window.totalCount.add(count);
+		window.totalNanos.add(Math.max(0, totalNanos.sum() - earlier.totalNanos.sum()));
+		window.maxNanos.accumulate(Math.min(max, maxNanos.get()));
+		return window;
+	}
+
+	/**
+	 * 返回目前紀錄的副本並清空.
+	 * 與同時進行的 record() 不是原子的: 一次紀錄可能一部分算進副本, 另一部分留到下一次;
+	 * 需要前後一致的窗口時使用 snapshot() 與 minus()(見 MeteredDataSource.getWindowAndReset).
+	 */
+	public LatencyHistogram getAndReset() {
+		LatencyHistogram copy = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			LongAdder adder = counts.get(i);
+			long c = adder == null ? 0 : adder.sumThenReset();
+			if (c != 0)
+				copy.bucket(i).add(c);
+		}
+		copy.totalCount.add(totalCount.sumThenReset());
+		copy.totalNanos.add(totalNanos.sumThenReset());
+		copy.maxNanos.accumulate(maxNanos.getThenReset());
+		return copy;
+	}
+
+	public void reset() {
+		getAndReset();
+	}
+
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public double getMeanNanos() {
+		long count = totalCount.sum();
+		return count == 0 ? 0 : (double) totalNanos.sum() / count;
+	}
+
+	/**
+	 * 返回百分位數(奈秒), 例如 getValueAtPercentile(99.9)
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += count(i);
+		if (count == 0)
+			return 0;
+		long target = (long) Math.ceil(count * percentile / 100.0);
+		if (target < 1)
+			target = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += count(i);
+			if (seen >= target)
+				return Math.min(upperBound(i), getMaxNanos());
+		}
+		return getMaxNanos();
+	}
+
+	/**
+	 * 返回每一格的上界與次數, 只包含次數不為 0 的格子: [上界, 次數, 上界, 次數, ...]
+	 */
+	public long[] getBuckets() {
+		long[] snapshot = new long[BUCKETS];
+		int nonEmpty = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = count(i);
+			if (snapshot[i] != 0)
+				nonEmpty++;
+		}
+		long[] result = new long[nonEmpty * 2];
+		int j = 0;
+		for (int i = 0; i < BUCKETS && j < result.length; i++) {
+			long c = snapshot[i];
+			if (c != 0) {
+				result[j++] = upperBound(i);
+				result[j++] = c;
+			}
+		}
+		return result;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_COUNT)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BITS;
+		int sub = (int) (value >>> shift) - SUB_COUNT;
+		return SUB_COUNT + shift * SUB_COUNT + sub;
+	}
+
+	private static long upperBound(int index) {
+		if (index < SUB_COUNT)
+			return index;
+		int shift = (index - SUB_COUNT) / SUB_COUNT;
+		int sub = (index - SUB_COUNT) % SUB_COUNT;
+		return ((long) (SUB_COUNT + sub + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, p50=%.1fus, p99=%.1fus, p99.9=%.1fus, max=%.1fus", getCount(),
+				getValueAtPercentile(50) / 1000.0, getValueAtPercentile(99) / 1000.0,
+				getValueAtPercentile(99.9) / 1000.0, getMaxNanos() / 1000.0);
+	}
+}
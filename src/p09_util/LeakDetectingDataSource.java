@@ -0,0 +1,343 @@
+package p09_util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: LeakDetectingDataSource.java
+ * PackageName: p09_util
+ * Description: 檢查連接洩漏的 DataSource 包裝
+ * 				借出的連接超過 thresholdMillis 還沒有 close() 時視為洩漏, 交給 LeakListener 報告;
+ * 				reclaim 為 true 時同時回收該連接(歸還給連接池), 之後洩漏的一方再使用時會得到 SQLException:
+ * 				透過借出的連接取得的 Statement, ResultSet, DatabaseMetaData 也是代理, 回收後同樣失效,
+ * 				不會在已經借給別人的物理連接上繼續執行(回收與正在進行中的一次調用之間不互斥).
+ * 				每 sampleEvery 次借出才記錄一次借出位置的堆疊(1 為每次都記錄),
+ * 				其餘的借出只記錄執行緒名稱與時間, 借出路徑上不必每次都建立 Throwable.
+ * 				洩漏由一條背景執行緒定期掃描, 借出與歸還只多一次集合的加入與移除.
+ */
+public class LeakDetectingDataSource implements DataSource, AutoCloseable {
+
+	private final DataSource delegate;
+
+	private final long thresholdMillis;
+
+	private final int sampleEvery;
+
+	private final boolean reclaim;
+
+	// 借出中的連接
+	private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder leakCount = new LongAdder();
+
+	private final LongAdder reclaimedCount = new LongAdder();
+
+	private final ScheduledExecutorService scanner;
+
+	private volatile LeakListener listener = LeakDetectingDataSource::print;
+
+	public LeakDetectingDataSource(DataSource delegate, long thresholdMillis, int sampleEvery, boolean reclaim) {
+		this.delegate = delegate;
+		this.thresholdMillis = thresholdMillis;
+		this.sampleEvery = sampleEvery;
+		this.reclaim = reclaim;
+		this.scanner = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "LeakDetector");
+			t.setDaemon(true);
+			return t;
+		});
+		long interval = Math.max(10, thresholdMillis / 2);
+		scanner.scheduleWithFixedDelay(this::scan, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		Connection conn = delegate.getConnection();
+		Throwable borrowSite = null;
+		if (sampleEvery == 1 || (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) == 0))
+			borrowSite = new Throwable("借出位置");
+		Lease lease = new Lease(conn, Thread.currentThread().getName(), borrowSite);
+		leases.add(lease);
+		return lease.proxy;
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("LeakDetectingDataSource 只使用被包裝連接池的帳號密碼");
+	}
+
+	/**
+	 * 檢查一次所有借出中的連接, 每條洩漏的連接只報告一次.
+	 */
+	void scan() {
+		long now = System.currentTimeMillis();
+		for (Lease lease : leases) {
+			long held = now - lease.borrowedAt;
+			if (held <= thresholdMillis || lease.reported)
+				continue;
+			lease.reported = true;
+			leakCount.increment();
+			try {
+				listener.onLeak(lease.threadName, held, lease.borrowSite);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			if (reclaim && lease.release()) {
+				reclaimedCount.increment();
+				try {
+					lease.conn.close();
+				} catch (SQLException e) {
+					// 連接池會自己處理失效的連接
+				}
+			}
+		}
+	}
+
+	private static void print(String threadName, long heldMillis, Throwable borrowSite) {
+		String message = "連接洩漏: 執行緒 " + threadName + " 借出的連接已經 " + heldMillis + "ms 沒有歸還";
+		if (borrowSite == null) {
+			System.err.println(message + "(這次借出沒有取樣堆疊)");
+		} else {
+			System.err.println(message);
+			borrowSite.printStackTrace();
+		}
+	}
+
+	public void setLeakListener(LeakListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * 借出中的連接數
+	 */
+	public int getOpenCount() {
+		return leases.size();
+	}
+
+	public long getLeakCount() {
+		return leakCount.sum();
+	}
+
+	public long getReclaimedCount() {
+		return reclaimedCount.sum();
+	}
+
+	public DataSource getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void close() throws Exception {
+		scanner.shutdownNow();
+		if (delegate instanceof AutoCloseable)
+			((AutoCloseable) delegate).close();
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return delegate.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		delegate.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		delegate.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return delegate.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return delegate.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		if (iface.isInstance(delegate))
+			return iface.cast(delegate);
+		return delegate.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+	}
+
+	/**
+	 * 報告洩漏的連接, borrowSite 為借出位置的堆疊, 這次借出沒有取樣時為 null.
+	 */
+	@FunctionalInterface
+	public interface LeakListener {
+		void onLeak(String threadName, long heldMillis, Throwable borrowSite);
+	}
+
+	// 一次借出: 同時是連接代理的 InvocationHandler
+	private class Lease implements InvocationHandler, PoolAdapters.ConnectionWrapper {
+
+		private final Connection conn;
+
+		private final Connection proxy;
+
+		private final String threadName;
+
+		private final Throwable borrowSite;
+
+		private final long borrowedAt = System.currentTimeMillis();
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private volatile boolean reported;
+
+		Lease(Connection conn, String threadName, Throwable borrowSite) {
+			this.conn = conn;
+			this.threadName = threadName;
+			this.borrowSite = borrowSite;
+			this.proxy = (Connection) Proxy.newProxyInstance(LeakDetectingDataSource.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+		}
+
+		@Override
+		public Connection getWrapped() {
+			return conn;
+		}
+
+		// 歸還或回收只會成功一次
+		boolean release() {
+			if (!released.compareAndSet(false, true))
+				return false;
+			leases.remove(this);
+			return true;
+		}
+
+		void checkReleased() throws SQLException {
+			if (released.get())
+				throw new SQLException("連接已經歸還" + (reported ? ", 因為洩漏被回收" : ""));
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "LeakDetectingConnection [" + conn + "]";
+			case "close":
+				if (release())
+					conn.close();
+				return null;
+			case "isClosed":
+				if (released.get())
+					return true;
+				break;
+			default:
+				checkReleased();
+				break;
+			}
+			try {
+				return wrap(method.invoke(conn, args), method.getReturnType(), null, null);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		// 返回的 Statement, ResultSet, DatabaseMetaData 包裝成回收後失效的代理, source 為創建它的物件與其代理
+		Object wrap(Object result, Class<?> type, Object source, Object sourceProxy) {
+			if (result == null)
+				return null;
+			if (result == conn)
+				return proxy;
+			if (!type.isInterface() || !(Statement.class.isAssignableFrom(type) || type == ResultSet.class
+					|| type == DatabaseMetaData.class))
+				return result;
+			return Proxy.newProxyInstance(LeakDetectingDataSource.class.getClassLoader(), new Class<?>[] { type },
+					new Child(this, result, source, sourceProxy));
+		}
+	}
+
+	// 透過借出的連接取得的物件, 連接歸還或回收後所有方法(close, isClosed 除外)都拋出 SQLException
+	private static final class Child implements InvocationHandler {
+
+		private final Lease lease;
+
+		private final Object target;
+
+		// 創建它的物件(例如 ResultSet 的 Statement)與其代理, 由連接直接創建時為 null
+		private final Object source;
+
+		private final Object sourceProxy;
+
+		Child(Lease lease, Object target, Object source, Object sourceProxy) {
+			this.lease = lease;
+			this.target = target;
+			this.source = source;
+			this.sourceProxy = sourceProxy;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "LeakDetecting [" + target + "]";
+			case "close":
+				if (lease.released.get())
+					return null; // 已經是連接池的了, 由連接池處理
+				break;
+			case "isClosed":
+				if (lease.released.get())
+					return true;
+				break;
+			case "getConnection":
+				lease.checkReleased();
+				return lease.proxy;
+			default:
+				lease.checkReleased();
+				break;
+			}
+			try {
+				Object result = method.invoke(target, args);
+				if (result == target)
+					return proxy;
+				if (result != null && result == source)
+					return sourceProxy;
+				return lease.wrap(result, method.getReturnType(), target, proxy);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package p09_util;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: MeteredDataSource.java
+ * PackageName: p09_util
+ * Description: 記錄借出連接花費時間的 DataSource 包裝
+ * 				借出的連接不再包裝, 每次借出只多兩次 System.nanoTime() 與一次直方圖記錄(見 LatencyHistogram).
+ * 				只有一個從創建以來的直方圖, 用於監控; AdaptivePoolSizer 的窗口是兩次快照相減, 不需要清空.
+ * 				連接池不提供的數值在這裡補上, 讓每個連接池都有相同的監控數值(見 PoolAdapters.of):
+ * 				1. 等待中的執行緒數(DBCP): 正在 getConnection() 中的執行緒數.
+ * 				2. 建立連接的時間(c3p0, DBCP): 新的物理連接第一次借出時花費的時間,
+ * 				   DBCP 在借出的執行緒中建立連接, c3p0 借出的執行緒等待 helper 執行緒建立;
+ * 				   所以 JDBCUtils 透過 MeteredDataSource 預熱, 預熱的借出就是初始連接的建立.
+ */
+public class MeteredDataSource implements DataSource, AutoCloseable {
+
+	private final DataSource delegate;
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	// 上次 getWindowAndReset() 時的快照
+	private LatencyHistogram lastSnapshot = new LatencyHistogram();
+
+	private final LongAdder timeouts = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	// 連接池本身不提供時才計算, 否則為 null
+	private final LongAdder pending;
+
+	private final PoolAdapter creates;
+
+	// 見過的物理連接, 超過 pruneAt 條時移除已經關閉的
+	private final Set<Connection> physicals = ConcurrentHashMap.newKeySet();
+
+	private volatile int pruneAt = 64;
+
+	private final LongAdder createCount = new LongAdder();
+
+	private final LongAdder createNanos = new LongAdder();
+
+	public MeteredDataSource(DataSource delegate) {
+		this.delegate = delegate;
+		PoolAdapter adapter;
+		try {
+			adapter = PoolAdapters.of(delegate);
+		} catch (IllegalArgumentException e) {
+			adapter = null;
+		}
+		this.pending = adapter != null && adapter.getPending() < 0 ? new LongAdder() : null;
+		this.creates = adapter != null && adapter.getCreateMillis() < 0 ? adapter : null;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		if (pending != null)
+			pending.increment();
+		try {
+			Connection conn = delegate.getConnection();
+			long elapsed = System.nanoTime() - start;
+			histogram.record(elapsed);
+			if (creates != null)
+				recordCreate(conn, elapsed);
+			return conn;
+		} catch (SQLException e) {
+			long elapsed = System.nanoTime() - start;
+			histogram.record(elapsed);
+			if (isTimeout(e))
+				timeouts.increment();
+			else
+				failures.increment();
+			throw e;
+		} finally {
+			if (pending != null)
+				pending.decrement();
+		}
+	}
+
+	// 第一次見到的物理連接: 這次借出等待了它的建立
+	private void recordCreate(Connection conn, long elapsed) {
+		Connection physical;
+		try {
+			physical = creates.getPhysicalConnection(PoolAdapters.pooled(conn));
+		} catch (SQLException e) {
+			return;
+		}
+		if (physical == null || physicals.contains(physical) || !physicals.add(physical))
+			return;
+		createCount.increment();
+		createNanos.add(elapsed);
+		if (physicals.size() >= pruneAt) {
+			physicals.removeIf(MeteredDataSource::isClosed);
+			pruneAt = Math.max(64, physicals.size() * 2);
+		}
+	}
+
+	private static boolean isClosed(Connection conn) {
+		try {
+			return conn.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	// 各個連接池逾時的例外不同: c3p0 與 DBCP 只有訊息, Druid 與 BagDataSource 有各自的類型.
+	private static boolean isTimeout(SQLException e) {
+		if (e instanceof SQLTimeoutException || e instanceof SQLTransientConnectionException)
+			return true;
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			String message = t.getMessage();
+			if (message != null) {
+				String lower = message.toLowerCase(Locale.ROOT);
+				if (lower.contains("timeout") || lower.contains("timed out") || message.contains("超時"))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return delegate.getConnection(username, password);
+	}
+
+	public DataSource getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * 從創建以來的借出花費時間
+	 */
+	public LatencyHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * 取出上次調用以來的借出花費時間(不影響 getHistogram() 的紀錄)
+	 */
+	public synchronized LatencyHistogram getWindowAndReset() {
+		LatencyHistogram now = histogram.snapshot();
+		LatencyHistogram window = now.minus(lastSnapshot);
+		lastSnapshot = now;
+		return window;
+	}
+
+	/**
+	 * 正在 getConnection() 中的執行緒數, 連接池本身提供等待數(或不是連接池)時返回 -1.
+	 */
+	public int getPending() {
+		return pending == null ? -1 : (int) Math.max(0, pending.sum());
+	}
+
+	/**
+	 * 新的物理連接第一次借出平均花費的毫秒數, 連接池本身提供建立時間(或不是連接池)時返回 -1.
+	 */
+	public double getCreateMillis() {
+		if (creates == null)
+			return -1;
+		long count = createCount.sum();
+		return count == 0 ? 0 : createNanos.sum() / 1_000_000.0 / count;
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.sum();
+	}
+
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (delegate instanceof AutoCloseable)
+			((AutoCloseable) delegate).close();
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return delegate.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		delegate.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		delegate.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return delegate.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return delegate.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		if (iface.isInstance(delegate))
+			return iface.cast(delegate);
+		return delegate.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+	}
+}
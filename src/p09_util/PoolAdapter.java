@@ -0,0 +1,81 @@
+package p09_util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
+
+/**
+ * ClassName: PoolAdapter.java
+ * PackageName: p09_util
+ * Description: 以相同的方式讀取與調整 c3p0, DBCP, Druid, BagDataSource 的連接池狀態
+ * 				連接池不提供的數值返回 -1. 使用 PoolAdapters.of(DataSource) 獲取.
+ * 				調整大小是可選的能力: 能在執行中調整的連接池由 resizer() 返回 Resizer, 其他連接池(c3p0)返回 Optional.empty().
+ */
+public interface PoolAdapter {
+
+	/**
+	 * 連接池的名稱, 例如 c3p0, dbcp, druid, bag.
+	 */
+	String getName();
+
+	/**
+	 * 借出中的連接數
+	 */
+	int getActive();
+
+	/**
+	 * 閒置的連接數
+	 */
+	int getIdle();
+
+	/**
+	 * 正在等待連接的執行緒數
+	 */
+	int getPending();
+
+	/**
+	 * 最多的連接數
+	 */
+	int getMaxSize();
+
+	/**
+	 * 能在不重設連接池的情況下調整最多的連接數時返回 Resizer, 否則返回 Optional.empty().
+	 */
+	default Optional<Resizer> resizer() {
+		return Optional.empty();
+	}
+
+	/**
+	 * 建立一條物理連接平均花費的毫秒數
+	 */
+	default double getCreateMillis() {
+		return -1;
+	}
+
+	/**
+	 * PreparedStatement 快取的命中率(0 ~ 1), 沒有快取或沒有統計時返回 -1.
+	 */
+	default double getStatementCacheHitRatio() {
+		return -1;
+	}
+
+	/**
+	 * 連接池借出的連接背後的物理連接, 同一條物理連接每次借出都返回同一個對象; 無法取得時返回 null.
+	 * 在物理連接上創建的 PreparedStatement 不會在歸還時被連接池關閉(見 StatementCachingDataSource).
+	 */
+	default Connection getPhysicalConnection(Connection pooled) throws SQLException {
+		return null;
+	}
+
+	/**
+	 * 在執行中調整連接池的最多連接數
+	 */
+	@FunctionalInterface
+	interface Resizer {
+
+		/**
+		 * 調整最多的連接數, 縮小時多出來的連接在歸還後關閉.
+		 */
+		void setMaxSize(int maxSize);
+	}
+}
@@ -0,0 +1,427 @@
+package p09_util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.DelegatingConnection;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.DruidPooledConnection;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+/**
+ * ClassName: PoolAdapters.java
+ * PackageName: p09_util
+ * Description: 依照連接池的類型創建 PoolAdapter
+ */
+public class PoolAdapters {
+
+	private PoolAdapters() {
+	}
+
+	/**
+	 * 返回 DataSource 對應的 PoolAdapter, MeteredDataSource, SemaphoreDataSource, LeakDetectingDataSource
+	 * 與 StatementCachingDataSource 會先取出被包裝的連接池.
+	 * 經過 MeteredDataSource 時, 連接池不提供的等待數與建立時間由 MeteredDataSource 補上.
+	 */
+	public static PoolAdapter of(DataSource source) {
+		if (source instanceof StatementCachingDataSource)
+			return new StatementCacheAdapter(of(((StatementCachingDataSource) source).getDelegate()),
+					(StatementCachingDataSource) source);
+		if (source instanceof MeteredDataSource)
+			return new MeteredAdapter(of(((MeteredDataSource) source).getDelegate()), (MeteredDataSource) source);
+		if (source instanceof SemaphoreDataSource)
+			return of(((SemaphoreDataSource) source).getDelegate());
+		if (source instanceof LeakDetectingDataSource)
+			return of(((LeakDetectingDataSource) source).getDelegate());
+		if (source instanceof ComboPooledDataSource)
+			return new C3P0Adapter((ComboPooledDataSource) source);
+		if (source instanceof BasicDataSource)
+			return new DBCPAdapter((BasicDataSource) source);
+		if (source instanceof DruidDataSource)
+			return new DruidAdapter((DruidDataSource) source);
+		if (source instanceof BagDataSource)
+			return new BagAdapter((BagDataSource) source);
+		throw new IllegalArgumentException("不支持的連接池: " + source.getClass().getName());
+	}
+
+	/**
+	 * 取出 LeakDetectingDataSource, StatementCachingDataSource, SemaphoreDataSource 包裝的連接,
+	 * 得到連接池借出的連接(可以交給 PoolAdapter.getPhysicalConnection).
+	 */
+	static Connection pooled(Connection conn) {
+		while (conn != null && Proxy.isProxyClass(conn.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(conn);
+			if (!(handler instanceof ConnectionWrapper))
+				break;
+			conn = ((ConnectionWrapper) handler).getWrapped();
+		}
+		return conn;
+	}
+
+	// 包裝連接池借出的連接的代理
+	interface ConnectionWrapper {
+		Connection getWrapped();
+	}
+
+	private static class C3P0Adapter implements PoolAdapter {
+		private final ComboPooledDataSource cpds;
+
+		C3P0Adapter(ComboPooledDataSource cpds) {
+			this.cpds = cpds;
+		}
+
+		@Override
+		public String getName() {
+			return "c3p0";
+		}
+
+		@Override
+		public int getActive() {
+			try {
+				return cpds.getNumBusyConnectionsDefaultUser();
+			} catch (SQLException e) {
+				return -1;
+			}
+		}
+
+		@Override
+		public int getIdle() {
+			try {
+				return cpds.getNumIdleConnectionsDefaultUser();
+			} catch (SQLException e) {
+				return -1;
+			}
+		}
+
+		@Override
+		public int getPending() {
+			try {
+				return cpds.getNumThreadsAwaitingCheckoutDefaultUser();
+			} catch (SQLException e) {
+				return -1;
+			}
+		}
+
+		@Override
+		public int getMaxSize() {
+			return cpds.getMaxPoolSize();
+		}
+
+		// c3p0 的 setMaxPoolSize 會重設連接池(關閉所有閒置的連接, 借出中的連接歸還後也被關閉), 不提供 resizer()
+
+		// 以 rawConnectionOperation 調用 identity(RAW_CONNECTION), c3p0 把 RAW_CONNECTION 換成物理連接
+		@Override
+		public Connection getPhysicalConnection(Connection pooled) throws SQLException {
+			if (!(pooled instanceof C3P0ProxyConnection))
+				return null;
+			try {
+				return (Connection) ((C3P0ProxyConnection) pooled).rawConnectionOperation(IDENTITY, null,
+						new Object[] { C3P0ProxyConnection.RAW_CONNECTION });
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new SQLException("無法取得 c3p0 的物理連接", e);
+			}
+		}
+	}
+
+	private static final Method IDENTITY;
+
+	static {
+		try {
+			IDENTITY = PoolAdapters.class.getDeclaredMethod("identity", Connection.class);
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	static Connection identity(Connection conn) {
+		return conn;
+	}
+
+	private static class DBCPAdapter implements PoolAdapter {
+		private final BasicDataSource source;
+
+		DBCPAdapter(BasicDataSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public String getName() {
+			return "dbcp";
+		}
+
+		@Override
+		public int getActive() {
+			return source.getNumActive();
+		}
+
+		@Override
+		public int getIdle() {
+			return source.getNumIdle();
+		}
+
+		@Override
+		public int getPending() {
+			return -1; // DBCP 沒有提供等待中的執行緒數, 由 MeteredDataSource 計算
+		}
+
+		@Override
+		public int getMaxSize() {
+			return source.getMaxTotal();
+		}
+
+		@Override
+		public Optional<Resizer> resizer() {
+			return Optional.of(maxSize -> {
+				source.setMaxTotal(maxSize);
+				if (source.getMaxIdle() > maxSize)
+					source.setMaxIdle(maxSize);
+			});
+		}
+
+		// 需要 accessToUnderlyingConnectionAllowed=true, 否則 getInnermostDelegate 返回 null
+		@Override
+		public Connection getPhysicalConnection(Connection pooled) {
+			if (!(pooled instanceof DelegatingConnection))
+				return null;
+			return ((DelegatingConnection<?>) pooled).getInnermostDelegate();
+		}
+	}
+
+	private static class DruidAdapter implements PoolAdapter {
+		private final DruidDataSource source;
+
+		DruidAdapter(DruidDataSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public String getName() {
+			return "druid";
+		}
+
+		@Override
+		public int getActive() {
+			return source.getActiveCount();
+		}
+
+		@Override
+		public int getIdle() {
+			return source.getPoolingCount();
+		}
+
+		@Override
+		public int getPending() {
+			return source.getWaitThreadCount();
+		}
+
+		@Override
+		public int getMaxSize() {
+			return source.getMaxActive();
+		}
+
+		@Override
+		public Optional<Resizer> resizer() {
+			return Optional.of(maxSize -> {
+				if (source.getMinIdle() > maxSize)
+					source.setMinIdle(maxSize);
+				source.setMaxActive(maxSize);
+			});
+		}
+
+		@Override
+		public double getCreateMillis() {
+			long count = source.getCreateCount();
+			return count == 0 ? 0 : (double) source.getCreateTimespanMillis() / count;
+		}
+
+		@Override
+		public double getStatementCacheHitRatio() {
+			long hit = source.getCachedPreparedStatementHitCount();
+			long total = hit + source.getCachedPreparedStatementMissCount();
+			return total == 0 ? -1 : (double) hit / total;
+		}
+
+		@Override
+		public Connection getPhysicalConnection(Connection pooled) {
+			if (!(pooled instanceof DruidPooledConnection))
+				return null;
+			return ((DruidPooledConnection) pooled).getConnection();
+		}
+	}
+
+	private static class BagAdapter implements PoolAdapter {
+		private final BagDataSource source;
+
+		BagAdapter(BagDataSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public String getName() {
+			return "bag";
+		}
+
+		@Override
+		public int getActive() {
+			return source.getActiveConnections();
+		}
+
+		@Override
+		public int getIdle() {
+			return source.getIdleConnections();
+		}
+
+		@Override
+		public int getPending() {
+			return source.getThreadsAwaitingConnection();
+		}
+
+		@Override
+		public int getMaxSize() {
+			return source.getMaxPoolSize();
+		}
+
+		@Override
+		public Optional<Resizer> resizer() {
+			return Optional.of(source::setMaxPoolSize);
+		}
+
+		@Override
+		public double getCreateMillis() {
+			return source.getCreateMillisAverage();
+		}
+
+		@Override
+		public Connection getPhysicalConnection(Connection pooled) {
+			return BagConnectionHandler.physical(pooled);
+		}
+	}
+
+	// 連接池本身的數值, 連接池不提供的等待數與建立時間使用 MeteredDataSource 的
+	private static class MeteredAdapter implements PoolAdapter {
+		private final PoolAdapter pool;
+
+		private final MeteredDataSource metered;
+
+		MeteredAdapter(PoolAdapter pool, MeteredDataSource metered) {
+			this.pool = pool;
+			this.metered = metered;
+		}
+
+		@Override
+		public String getName() {
+			return pool.getName();
+		}
+
+		@Override
+		public int getActive() {
+			return pool.getActive();
+		}
+
+		@Override
+		public int getIdle() {
+			return pool.getIdle();
+		}
+
+		@Override
+		public int getPending() {
+			int pending = pool.getPending();
+			return pending >= 0 ? pending : metered.getPending();
+		}
+
+		@Override
+		public int getMaxSize() {
+			return pool.getMaxSize();
+		}
+
+		@Override
+		public Optional<Resizer> resizer() {
+			return pool.resizer();
+		}
+
+		@Override
+		public double getCreateMillis() {
+			double millis = pool.getCreateMillis();
+			return millis >= 0 ? millis : metered.getCreateMillis();
+		}
+
+		@Override
+		public double getStatementCacheHitRatio() {
+			return pool.getStatementCacheHitRatio();
+		}
+
+		@Override
+		public Connection getPhysicalConnection(Connection pooled) throws SQLException {
+			return pool.getPhysicalConnection(pooled);
+		}
+	}
+
+	// 連接池本身的數值, 加上 StatementCachingDataSource 的命中率
+	private static class StatementCacheAdapter implements PoolAdapter {
+		private final PoolAdapter pool;
+
+		private final StatementCachingDataSource cache;
+
+		StatementCacheAdapter(PoolAdapter pool, StatementCachingDataSource cache) {
+			this.pool = pool;
+			this.cache = cache;
+		}
+
+		@Override
+		public String getName() {
+			return pool.getName();
+		}
+
+		@Override
+		public int getActive() {
+			return pool.getActive();
+		}
+
+		@Override
+		public int getIdle() {
+			return pool.getIdle();
+		}
+
+		@Override
+		public int getPending() {
+			return pool.getPending();
+		}
+
+		@Override
+		public int getMaxSize() {
+			return pool.getMaxSize();
+		}
+
+		@Override
+		public Optional<Resizer> resizer() {
+			return pool.resizer();
+		}
+
+		@Override
+		public double getCreateMillis() {
+			return pool.getCreateMillis();
+		}
+
+		@Override
+		public double getStatementCacheHitRatio() {
+			long hit = cache.getHitCount();
+			long total = hit + cache.getMissCount();
+			return total == 0 ? -1 : (double) hit / total;
+		}
+
+		@Override
+		public Connection getPhysicalConnection(Connection pooled) throws SQLException {
+			return pool.getPhysicalConnection(pooled);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package p09_util;
+
+import java.util.Properties;
+
+import p02_util.ConnectionProvider;
+import p02_util.ConnectionProviderFactory;
+import p02_util.DataSourceConnectionProvider;
+
+/**
+ * ClassName: PoolConnectionProviderFactory.java
+ * PackageName: p09_util
+ * Description: 提供 c3p0, dbcp, druid, bag 四種資料庫連接池的 ConnectionProvider,
+ * 				登記在 META-INF/services/p02_util.ConnectionProviderFactory 中, 由 p02_util.ConnectionProviders 找到.
+ * 				連接池的設定讀取各自的設定檔(見 PoolFactory).
+ */
+public class PoolConnectionProviderFactory implements ConnectionProviderFactory {
+
+	@Override
+	public boolean supports(String provider) {
+		switch (provider) {
+		case "c3p0":
+		case "dbcp":
+		case "druid":
+		case "bag":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	@Override
+	public ConnectionProvider create(String provider, Properties pros) throws Exception {
+		switch (provider) {
+		case "c3p0":
+			return new DataSourceConnectionProvider(provider, PoolFactory.createC3P0());
+		case "dbcp":
+			return new DataSourceConnectionProvider(provider, PoolFactory.createDBCP());
+		case "druid":
+			return new DataSourceConnectionProvider(provider, PoolFactory.createDruid());
+		case "bag":
+			return new DataSourceConnectionProvider(provider, PoolFactory.createBag());
+		default:
+			throw new IllegalArgumentException("不支持的 provider: " + provider);
+		}
+	}
+}
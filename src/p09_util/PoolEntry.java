@@ -0,0 +1,37 @@
+package p09_util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * ClassName: PoolEntry.java
+ * PackageName: p09_util
+ * Description: BagDataSource 中的一條物理連接
+ */
+class PoolEntry extends ConcurrentBag.BagEntry {
+
+	final Connection connection;
+
+	// 建立時間與最近一次歸還的時間(毫秒)
+	final long createdAt;
+	volatile long lastAccessed;
+
+	PoolEntry(Connection connection) {
+		this.connection = connection;
+		this.createdAt = System.currentTimeMillis();
+		this.lastAccessed = createdAt;
+	}
+
+	void closeQuietly() {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PoolEntry [connection=" + connection + ", state=" + getState() + "]";
+	}
+}
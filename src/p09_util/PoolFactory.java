@@ -0,0 +1,133 @@
+package p09_util;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.BasicDataSourceFactory;
+
+import com.alibaba.druid.pool.DruidDataSourceFactory;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+import p02_util.ConnectionProviders;
+
+/**
+ * ClassName: PoolFactory.java
+ * PackageName: p09_util
+ * Description: 依照設定檔創建 c3p0, DBCP, Druid, BagDataSource 資料庫連接池
+ * 				JDBCUtils 與 PoolConnectionProviderFactory 共用, 避免同一份設定讀取邏輯寫好幾遍.
+ */
+public class PoolFactory {
+
+	private PoolFactory() {
+	}
+
+	/**
+	 * 使用 c3p0-config.xml 中名為 C3P0 的設定創建 c3p0 資料庫連接池
+	 */
+	public static ComboPooledDataSource createC3P0() {
+		return new ComboPooledDataSource("C3P0");
+	}
+
+	/**
+	 * 創建 c3p0 資料庫連接池, overrides 中的屬性(例如 maxPoolSize)覆蓋 c3p0-config.xml 的設定.
+	 */
+	public static ComboPooledDataSource createC3P0(Properties overrides) throws Exception {
+		ComboPooledDataSource cpds = createC3P0();
+		for (String name : overrides.stringPropertyNames())
+			setProperty(cpds, name, overrides.getProperty(name));
+		return cpds;
+	}
+
+	/**
+	 * 使用 dbcp.properties 創建 DBCP 資料庫連接池
+	 */
+	public static BasicDataSource createDBCP() throws Exception {
+		return createDBCP(new Properties());
+	}
+
+	/**
+	 * 創建 DBCP 資料庫連接池, overrides 中的屬性(例如 maxTotal)覆蓋 dbcp.properties 的設定.
+	 */
+	public static BasicDataSource createDBCP(Properties overrides) throws Exception {
+		Properties pros = loadProperties("dbcp.properties");
+		pros.putAll(overrides);
+		return BasicDataSourceFactory.createDataSource(pros);
+	}
+
+	/**
+	 * 使用 druid.properties 創建 Druid 資料庫連接池
+	 */
+	public static DataSource createDruid() throws Exception {
+		return createDruid(new Properties());
+	}
+
+	/**
+	 * 創建 Druid 資料庫連接池, overrides 中的屬性(例如 maxActive)覆蓋 druid.properties 的設定.
+	 */
+	public static DataSource createDruid(Properties overrides) throws Exception {
+		Properties pros = loadProperties("druid.properties");
+		pros.putAll(overrides);
+		return DruidDataSourceFactory.createDataSource(pros);
+	}
+
+	/**
+	 * 使用 bag.properties 創建專案自己的 BagDataSource 資料庫連接池
+	 */
+	public static BagDataSource createBag() throws Exception {
+		return createBag(new Properties());
+	}
+
+	/**
+	 * 創建 BagDataSource 資料庫連接池, overrides 中的屬性(例如 maxPoolSize)覆蓋 bag.properties 的設定.
+	 */
+	public static BagDataSource createBag(Properties overrides) throws Exception {
+		Properties pros = loadProperties("bag.properties");
+		pros.putAll(overrides);
+		return new BagDataSource(pros);
+	}
+
+	/**
+	 * 從系統屬性中取出以 prefix 開頭的設定, 例如 -Dc3p0.maxPoolSize=50 得到 maxPoolSize=50.
+	 */
+	public static Properties overridesFromSystem(String prefix) {
+		Properties overrides = new Properties();
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith(prefix))
+				overrides.setProperty(name.substring(prefix.length()), System.getProperty(name));
+		}
+		return overrides;
+	}
+
+	// 透過 setter 設置 c3p0 的屬性(c3p0 沒有 Properties 形式的工廠)
+	private static void setProperty(Object bean, String name, String value) throws Exception {
+		for (PropertyDescriptor pd : Introspector.getBeanInfo(bean.getClass()).getPropertyDescriptors()) {
+			Method setter = pd.getWriteMethod();
+			if (!pd.getName().equals(name) || setter == null)
+				continue;
+			Class<?> type = pd.getPropertyType();
+			if (type == int.class)
+				setter.invoke(bean, Integer.parseInt(value));
+			else if (type == long.class)
+				setter.invoke(bean, Long.parseLong(value));
+			else if (type == boolean.class)
+				setter.invoke(bean, Boolean.parseBoolean(value));
+			else
+				setter.invoke(bean, value);
+			return;
+		}
+		throw new IllegalArgumentException("c3p0 沒有這個屬性: " + name);
+	}
+
+	/**
+	 * 透過系統類加載器讀取 src 下的設定檔(見 p02_util.ConnectionProviders.loadProperties)
+	 */
+	public static Properties loadProperties(String name) throws IOException {
+		return ConnectionProviders.loadProperties(name);
+	}
+}
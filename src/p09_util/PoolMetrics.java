@@ -0,0 +1,147 @@
+package p09_util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * ClassName: PoolMetrics.java
+ * PackageName: p09_util
+ * Description: PoolMetricsMXBean 的實作, 連接池的狀態由 PoolAdapter 讀取, 借出時間與逾時次數由 MeteredDataSource 記錄.
+ * 				每次讀取都是當下的數值, 不另外開執行緒取樣.
+ */
+public class PoolMetrics implements PoolMetricsMXBean {
+
+	private final MeteredDataSource metered;
+
+	private final PoolAdapter pool;
+
+	private ObjectName objectName;
+
+	public PoolMetrics(MeteredDataSource metered) {
+		this.metered = metered;
+		this.pool = PoolAdapters.of(metered);
+	}
+
+	/**
+	 * 註冊到平台的 MBeanServer, 同名的舊 MBean 會被取代.
+	 */
+	public PoolMetrics register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("p09_util:type=PoolMetrics,name=" + getPoolName());
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+			objectName = name;
+		} catch (JMException e) {
+			throw new IllegalStateException("註冊 " + getPoolName() + " 的 PoolMetrics 失敗", e);
+		}
+		return this;
+	}
+
+	public void unregister() {
+		if (objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			// 已經被移除
+		}
+		objectName = null;
+	}
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@Override
+	public String getPoolName() {
+		return pool.getName();
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return pool.getActive();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		return pool.getIdle();
+	}
+
+	@Override
+	public int getPendingThreads() {
+		return pool.getPending();
+	}
+
+	@Override
+	public int getMaxPoolSize() {
+		return pool.getMaxSize();
+	}
+
+	@Override
+	public long getBorrowCount() {
+		return metered.getHistogram().getCount();
+	}
+
+	@Override
+	public double getBorrowMeanMicros() {
+		return metered.getHistogram().getMeanNanos() / 1000.0;
+	}
+
+	@Override
+	public double getBorrowP50Micros() {
+		return metered.getHistogram().getValueAtPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getBorrowP99Micros() {
+		return metered.getHistogram().getValueAtPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getBorrowP999Micros() {
+		return metered.getHistogram().getValueAtPercentile(99.9) / 1000.0;
+	}
+
+	@Override
+	public double getBorrowMaxMicros() {
+		return metered.getHistogram().getMaxNanos() / 1000.0;
+	}
+
+	@Override
+	public long[] getBorrowHistogram() {
+		return metered.getHistogram().getBuckets();
+	}
+
+	@Override
+	public long getTimeoutCount() {
+		return metered.getTimeoutCount();
+	}
+
+	@Override
+	public long getFailureCount() {
+		return metered.getFailureCount();
+	}
+
+	@Override
+	public double getConnectionCreateMillis() {
+		return pool.getCreateMillis();
+	}
+
+	@Override
+	public double getStatementCacheHitRatio() {
+		return pool.getStatementCacheHitRatio();
+	}
+
+	@Override
+	public PoolMetricsSnapshot getSnapshot() {
+		return new PoolMetricsSnapshot(getPoolName(), System.currentTimeMillis(), getActiveConnections(),
+				getIdleConnections(), getPendingThreads(), getMaxPoolSize(), getBorrowCount(), getBorrowMeanMicros(),
+				getBorrowP50Micros(), getBorrowP99Micros(), getBorrowP999Micros(), getBorrowMaxMicros(),
+				getTimeoutCount(), getFailureCount(), getConnectionCreateMillis(), getStatementCacheHitRatio());
+	}
+}
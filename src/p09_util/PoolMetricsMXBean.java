@@ -0,0 +1,63 @@
+package p09_util;
+
+/**
+ * ClassName: PoolMetricsMXBean.java
+ * PackageName: p09_util
+ * Description: 以 JMX 提供資料庫連接池的監控數值, c3p0, DBCP, Druid, BagDataSource 使用相同的名稱.
+ * 				註冊的名稱為 p09_util:type=PoolMetrics,name=連接池名稱, 可以用 JConsole 等工具查看.
+ * 				連接池不提供的數值返回 -1.
+ */
+public interface PoolMetricsMXBean {
+
+	String getPoolName();
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	/**
+	 * 正在等待連接的執行緒數
+	 */
+	int getPendingThreads();
+
+	int getMaxPoolSize();
+
+	/**
+	 * 借出的次數(包括逾時與失敗)
+	 */
+	long getBorrowCount();
+
+	double getBorrowMeanMicros();
+
+	double getBorrowP50Micros();
+
+	double getBorrowP99Micros();
+
+	double getBorrowP999Micros();
+
+	double getBorrowMaxMicros();
+
+	/**
+	 * 借出花費時間的直方圖: [上界(奈秒), 次數, 上界, 次數, ...]
+	 */
+	long[] getBorrowHistogram();
+
+	long getTimeoutCount();
+
+	long getFailureCount();
+
+	/**
+	 * 建立一條物理連接平均花費的毫秒數
+	 */
+	double getConnectionCreateMillis();
+
+	/**
+	 * PreparedStatement 快取的命中率(0 ~ 1)
+	 */
+	double getStatementCacheHitRatio();
+
+	/**
+	 * 同一時間點的所有數值
+	 */
+	PoolMetricsSnapshot getSnapshot();
+}
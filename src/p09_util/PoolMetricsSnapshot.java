@@ -0,0 +1,146 @@
+package p09_util;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * ClassName: PoolMetricsSnapshot.java
+ * PackageName: p09_util
+ * Description: 資料庫連接池在某個時間點的監控數值(不可變)
+ * 				JMX 中以 CompositeData 呈現, 用 JMX.newMXBeanProxy 取得時會依照 @ConstructorProperties 還原.
+ */
+public class PoolMetricsSnapshot {
+
+	private final String poolName;
+
+	private final long timestamp;
+
+	private final int activeConnections;
+
+	private final int idleConnections;
+
+	private final int pendingThreads;
+
+	private final int maxPoolSize;
+
+	private final long borrowCount;
+
+	private final double borrowMeanMicros;
+
+	private final double borrowP50Micros;
+
+	private final double borrowP99Micros;
+
+	private final double borrowP999Micros;
+
+	private final double borrowMaxMicros;
+
+	private final long timeoutCount;
+
+	private final long failureCount;
+
+	private final double connectionCreateMillis;
+
+	private final double statementCacheHitRatio;
+
+	@ConstructorProperties({ "poolName", "timestamp", "activeConnections", "idleConnections", "pendingThreads",
+			"maxPoolSize", "borrowCount", "borrowMeanMicros", "borrowP50Micros", "borrowP99Micros", "borrowP999Micros",
+			"borrowMaxMicros", "timeoutCount", "failureCount", "connectionCreateMillis", "statementCacheHitRatio" })
+	public PoolMetricsSnapshot(String poolName, long timestamp, int activeConnections, int idleConnections,
+			int pendingThreads, int maxPoolSize, long borrowCount, double borrowMeanMicros, double borrowP50Micros,
+			double borrowP99Micros, double borrowP999Micros, double borrowMaxMicros, long timeoutCount,
+			long failureCount, double connectionCreateMillis, double statementCacheHitRatio) {
+		this.poolName = poolName;
+		this.timestamp = timestamp;
+		this.activeConnections = activeConnections;
+		this.idleConnections = idleConnections;
+		this.pendingThreads = pendingThreads;
+		this.maxPoolSize = maxPoolSize;
+		this.borrowCount = borrowCount;
+		this.borrowMeanMicros = borrowMeanMicros;
+		this.borrowP50Micros = borrowP50Micros;
+		this.borrowP99Micros = borrowP99Micros;
+		this.borrowP999Micros = borrowP999Micros;
+		this.borrowMaxMicros = borrowMaxMicros;
+		this.timeoutCount = timeoutCount;
+		this.failureCount = failureCount;
+		this.connectionCreateMillis = connectionCreateMillis;
+		this.statementCacheHitRatio = statementCacheHitRatio;
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	/**
+	 * 取得數值的時間(System.currentTimeMillis())
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getActiveConnections() {
+		return activeConnections;
+	}
+
+	public int getIdleConnections() {
+		return idleConnections;
+	}
+
+	public int getPendingThreads() {
+		return pendingThreads;
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount;
+	}
+
+	public double getBorrowMeanMicros() {
+		return borrowMeanMicros;
+	}
+
+	public double getBorrowP50Micros() {
+		return borrowP50Micros;
+	}
+
+	public double getBorrowP99Micros() {
+		return borrowP99Micros;
+	}
+
+	public double getBorrowP999Micros() {
+		return borrowP999Micros;
+	}
+
+	public double getBorrowMaxMicros() {
+		return borrowMaxMicros;
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	public double getConnectionCreateMillis() {
+		return connectionCreateMillis;
+	}
+
+	public double getStatementCacheHitRatio() {
+		return statementCacheHitRatio;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s [active=%d, idle=%d, pending=%d, max=%d, borrow: count=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, "
+						+ "p99.9=%.1fus, max=%.1fus, timeout=%d, failure=%d, create=%.2fms, statementCacheHit=%.2f]",
+				poolName, activeConnections, idleConnections, pendingThreads, maxPoolSize, borrowCount,
+				borrowMeanMicros, borrowP50Micros, borrowP99Micros, borrowP999Micros, borrowMaxMicros, timeoutCount,
+				failureCount, connectionCreateMillis, statementCacheHitRatio);
+	}
+}
@@ -0,0 +1,67 @@
+package p09_util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: PoolWarmer.java
+ * PackageName: p09_util
+ * Description: 平行預熱資料庫連接池
+ * 				同時借出 count 條連接(迫使連接池平行建立物理連接), 全部拿到後再一起歸還,
+ * 				取代連接池初始化時一條接一條建立 initialSize 條連接的做法.
+ */
+public class PoolWarmer {
+
+	private PoolWarmer() {
+	}
+
+	/**
+	 * 平行借出 count 條連接後歸還, 返回成功預熱的連接數.
+	 */
+	public static int warmUp(DataSource source, int count) {
+		if (count <= 0)
+			return 0;
+		ExecutorService executor = Executors.newFixedThreadPool(count, r -> {
+			Thread t = new Thread(r, "PoolWarmer");
+			t.setDaemon(true);
+			return t;
+		});
+		List<CompletableFuture<Connection>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < count; i++) {
+				futures.add(CompletableFuture.supplyAsync(() -> {
+					try {
+						return source.getConnection();
+					} catch (SQLException e) {
+						e.printStackTrace();
+						return null;
+					}
+				}, executor));
+			}
+			// 全部借出後才歸還, 否則連接池會重複使用同一條連接
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+			int warmed = 0;
+			for (CompletableFuture<Connection> future : futures) {
+				Connection conn = future.join();
+				if (conn != null) {
+					warmed++;
+					try {
+						conn.close();
+					} catch (SQLException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+			return warmed;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package p09_util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: RoutingDataSource.java
+ * PackageName: p09_util
+ * Description: 讀寫分離的 DataSource, 寫入送到主庫(primary), 讀取送到從庫(replica).
+ * 				借出的是一條邏輯連接, 實際的連接在第一次執行 SQL 時才向對應的連接池借出:
+ * 				1. 自動提交模式下的 SELECT(不含 FOR UPDATE 等加鎖的讀取)送到從庫, 多個從庫輪流使用.
+ * 				2. 其他 SQL(INSERT, UPDATE, DELETE, 沒有 SQL 的 createStatement())送到主庫.
+ * 				3. setAutoCommit(false) 之後到交易結束前, 讀取也送到主庫, 交易內可以讀到自己的寫入.
+ * 				4. 同一條邏輯連接寫入過之後, 讀取都送到主庫, 避免從庫的複製延遲讀不到剛寫入的資料.
+ * 				5. commit/rollback 只在已經借出主庫時送到主庫; getMetaData, isValid, getWarnings 等查詢
+ * 				   使用已經借出的連接(優先從庫), 都沒有借出時借從庫, 不會只為了查詢而借出主庫.
+ * 				從庫借出失敗時改用下一個從庫, 都失敗時使用主庫.
+ * 				BaseDAO 的 getInstance, getForList, getValue 與 update 不需要修改, 傳入這裡借出的連接即可.
+ */
+public class RoutingDataSource implements DataSource, AutoCloseable {
+
+	private final DataSource primary;
+
+	private final List<DataSource> replicas;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final LongAdder primaryStatements = new LongAdder();
+
+	private final LongAdder replicaStatements = new LongAdder();
+
+	public RoutingDataSource(DataSource primary, List<DataSource> replicas) {
+		this.primary = primary;
+		this.replicas = new ArrayList<>(replicas);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return (Connection) Proxy.newProxyInstance(RoutingDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new RoutingHandler());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("RoutingDataSource 只使用各個連接池的帳號密碼");
+	}
+
+	/**
+	 * 是否為可以送到從庫的讀取: SELECT 開頭, 且不是加鎖的讀取.
+	 */
+	static boolean isRead(String sql) {
+		int i = 0;
+		int length = sql.length();
+		while (i < length && (Character.isWhitespace(sql.charAt(i)) || sql.charAt(i) == '('))
+			i++;
+		if (!sql.regionMatches(true, i, "SELECT", 0, 6))
+			return false;
+		String lower = sql.toLowerCase(Locale.ROOT);
+		return !lower.contains(" for update") && !lower.contains(" for share") && !lower.contains(" lock in share mode");
+	}
+
+	// 從庫輪流使用, 借出失敗時換下一個
+	private Connection borrowReplica() throws SQLException {
+		int size = replicas.size();
+		int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+		for (int i = 0; i < size; i++) {
+			try {
+				return replicas.get((start + i) % size).getConnection();
+			} catch (SQLException e) {
+				// 換下一個從庫
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 送到主庫的 SQL 數
+	 */
+	public long getPrimaryStatementCount() {
+		return primaryStatements.sum();
+	}
+
+	/**
+	 * 送到從庫的 SQL 數
+	 */
+	public long getReplicaStatementCount() {
+		return replicaStatements.sum();
+	}
+
+	public DataSource getPrimary() {
+		return primary;
+	}
+
+	public List<DataSource> getReplicas() {
+		return replicas;
+	}
+
+	@Override
+	public void close() throws Exception {
+		for (DataSource replica : replicas) {
+			if (replica instanceof AutoCloseable)
+				((AutoCloseable) replica).close();
+		}
+		if (primary instanceof AutoCloseable)
+			((AutoCloseable) primary).close();
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return primary.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		primary.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		primary.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return primary.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return primary.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		throw new SQLException("RoutingDataSource 不是 " + iface.getName() + " 的包裝");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	// 一條邏輯連接: 主庫與從庫的連接都在需要時才借出, close() 時一起歸還.
+	private class RoutingHandler implements InvocationHandler {
+
+		private Connection primaryConn;
+
+		private Connection replicaConn;
+
+		private boolean autoCommit = true;
+
+		// 交易隔離級別, 0 表示沒有設定過
+		private int isolation;
+
+		private boolean wrote;
+
+		private boolean closed;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "RoutingConnection [primary=" + primaryConn + ", replica=" + replicaConn + "]";
+			case "close":
+				close();
+				return null;
+			case "isClosed":
+				return closed;
+			default:
+				break;
+			}
+			if (closed)
+				throw new SQLException("連接已經關閉");
+			switch (method.getName()) {
+			case "setAutoCommit":
+				autoCommit = (Boolean) args[0];
+				if (!autoCommit)
+					wrote = true; // 交易開始後都使用主庫
+				if (primaryConn != null)
+					primaryConn.setAutoCommit(autoCommit);
+				return null;
+			case "getAutoCommit":
+				return autoCommit;
+			case "setTransactionIsolation":
+				isolation = (Integer) args[0];
+				if (primaryConn != null)
+					primaryConn.setTransactionIsolation(isolation);
+				return null;
+			case "prepareStatement":
+			case "prepareCall":
+				String sql = (String) args[0];
+				if (autoCommit && !wrote && isRead(sql)) {
+					Connection replica = replica();
+					if (replica != null) {
+						replicaStatements.increment();
+						return invoke(replica, method, args);
+					}
+				}
+				if (!isRead(sql))
+					wrote = true;
+				primaryStatements.increment();
+				return invoke(primary(), method, args);
+			case "createStatement":
+				// 不知道之後要執行的 SQL, 視為寫入
+				wrote = true;
+				primaryStatements.increment();
+				return invoke(primary(), method, args);
+			case "commit":
+			case "rollback":
+				// 沒有借出主庫時沒有要提交或回滾的交易
+				if (primaryConn == null)
+					return null;
+				return invoke(primaryConn, method, args);
+			case "getTransactionIsolation":
+				if (isolation != 0)
+					return isolation;
+				return invoke(open(), method, args);
+			default:
+				// getMetaData, isValid, getWarnings, getCatalog 等查詢使用已經借出的連接
+				if (isQuery(method.getName()))
+					return invoke(open(), method, args);
+				// setSavepoint, setReadOnly 等改變狀態的調用交給主庫
+				return invoke(primary(), method, args);
+			}
+		}
+
+		private boolean isQuery(String name) {
+			return name.startsWith("get") || name.startsWith("is") || name.equals("nativeSQL") || name.equals("clearWarnings");
+		}
+
+		// 已經借出的連接, 優先使用從庫; 都沒有借出時先借從庫, 沒有從庫時才借主庫
+		private Connection open() throws SQLException {
+			if (replicaConn != null)
+				return replicaConn;
+			if (primaryConn != null)
+				return primaryConn;
+			Connection replica = replica();
+			return replica != null ? replica : primary();
+		}
+
+		private Object invoke(Connection conn, Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(conn, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		private Connection primary() throws SQLException {
+			if (primaryConn == null) {
+				Connection conn = primary.getConnection();
+				try {
+					if (!autoCommit)
+						conn.setAutoCommit(false);
+					if (isolation != 0)
+						conn.setTransactionIsolation(isolation);
+				} catch (SQLException e) {
+					conn.close();
+					throw e;
+				}
+				primaryConn = conn;
+			}
+			return primaryConn;
+		}
+
+		private Connection replica() throws SQLException {
+			if (replicaConn == null)
+				replicaConn = borrowReplica();
+			return replicaConn;
+		}
+
+		private void close() throws SQLException {
+			if (closed)
+				return;
+			closed = true;
+			SQLException failure = null;
+			for (Connection conn : new Connection[] { replicaConn, primaryConn }) {
+				if (conn == null)
+					continue;
+				try {
+					conn.close();
+				} catch (SQLException e) {
+					if (failure == null)
+						failure = e;
+				}
+			}
+			replicaConn = null;
+			primaryConn = null;
+			if (failure != null)
+				throw failure;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package p09_util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: SemaphoreDataSource.java
+ * PackageName: p09_util
+ * Description: 以公平的 Semaphore 限制同時借出的連接數, 包裝任一個資料庫連接池.
+ * 				許可數不超過連接池的最大連接數時, 等待只會發生在 Semaphore 上,
+ * 				不會進入 c3p0 等連接池內部以 synchronized/wait() 實現的等待,
+ * 				因此大量虛擬執行緒等待連接時不會把載體執行緒(carrier thread)釘住.
+ */
+public class SemaphoreDataSource implements DataSource, AutoCloseable {
+
+	private final DataSource delegate;
+
+	private final Semaphore permits;
+
+	private final long timeoutMillis;
+
+	public SemaphoreDataSource(DataSource delegate, int maxConnections, long timeoutMillis) {
+		this.delegate = delegate;
+		this.permits = new Semaphore(maxConnections, true);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		try {
+			if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+				throw new SQLTransientConnectionException("獲取連接超時: " + timeoutMillis + "ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("等待連接時被中斷", e);
+		}
+		try {
+			Connection conn = delegate.getConnection();
+			return (Connection) Proxy.newProxyInstance(SemaphoreDataSource.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new PermitHandler(conn));
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("SemaphoreDataSource 只使用被包裝連接池的帳號密碼");
+	}
+
+	public int getAvailablePermits() {
+		return permits.availablePermits();
+	}
+
+	public int getQueueLength() {
+		return permits.getQueueLength();
+	}
+
+	public DataSource getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (delegate instanceof AutoCloseable)
+			((AutoCloseable) delegate).close();
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return delegate.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		delegate.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		delegate.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return delegate.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return delegate.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		if (iface.isInstance(delegate))
+			return iface.cast(delegate);
+		return delegate.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+	}
+
+	// close() 時歸還許可(只歸還一次)
+	private class PermitHandler implements InvocationHandler, PoolAdapters.ConnectionWrapper {
+
+		private final Connection conn;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		PermitHandler(Connection conn) {
+			this.conn = conn;
+		}
+
+		@Override
+		public Connection getWrapped() {
+			return conn;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "SemaphoreConnection [" + conn + "]";
+			default:
+				break;
+			}
+			try {
+				return method.invoke(conn, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				if (method.getName().equals("close") && released.compareAndSet(false, true))
+					permits.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,637 @@
+package p09_util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: StatementCachingDataSource.java
+ * PackageName: p09_util
+ * Description: 在用戶端快取 PreparedStatement 的 DataSource 包裝, c3p0, DBCP, Druid, BagDataSource 都以相同的方式快取
+ * 				每條物理連接有一個 LRU 快取, 鍵為 SQL 與結果集的選項(類型, 並行性, 可保持性, 是否返回自動產生的鍵).
+ * 				PreparedStatement 直接在物理連接上創建(見 PoolAdapter.getPhysicalConnection), 連接歸還時不會被連接池關閉,
+ * 				下一次借出同一條物理連接時可以繼續使用.
+ * 				每次從快取取出都返回新的代理: close() 不關閉, 而是 clearParameters 後放回快取, 之後這個代理永遠是關閉的,
+ * 				即使同一個 PreparedStatement 再被取出, 舊的代理也不會重新生效;
+ * 				修改過的 fetchSize, maxRows, queryTimeout, fetchDirection, maxFieldSize 恢復成創建時的值,
+ * 				修改過其他無法恢復的設定(例如 setCursorName, closeOnCompletion)時直接關閉;
+ * 				超過 maxStatements 時關閉最久沒有使用的. 同一個 SQL 同時使用兩次時, 第二次不使用快取, 歸還連接時關閉.
+ * 				歸還連接時, 沒有關閉的 PreparedStatement 也一起放回快取.
+ * 				借出的路徑上沒有全域的鎖, prepareStatement 與關閉 PreparedStatement 也不在快取的鎖內進行;
+ * 				物理連接被連接池關閉後, 由背景執行緒每 pruneIntervalMillis 移除它的快取.
+ * 				取不到物理連接時(例如 DBCP 沒有設定 accessToUnderlyingConnectionAllowed)不快取, 直接使用連接池的連接.
+ */
+public class StatementCachingDataSource implements DataSource, AutoCloseable {
+
+	private final DataSource delegate;
+
+	private final int maxStatements;
+
+	private final PoolAdapter adapter;
+
+	// 物理連接(以物件本身為鍵) -> 快取. 快取持有物理連接, 不能用 WeakHashMap 等待回收; 物理連接關閉後由 prune() 移除.
+	private final Map<Physical, StatementCache> caches = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService pruner;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public StatementCachingDataSource(DataSource delegate, int maxStatements) {
+		this(delegate, maxStatements, 30_000);
+	}
+
+	/**
+	 * pruneIntervalMillis 為檢查物理連接是否已經關閉的間隔, 0 為不在背景檢查
+	 */
+	public StatementCachingDataSource(DataSource delegate, int maxStatements, long pruneIntervalMillis) {
+		this.delegate = delegate;
+		this.maxStatements = maxStatements;
+		PoolAdapter adapter;
+		try {
+			adapter = PoolAdapters.of(delegate);
+		} catch (IllegalArgumentException e) {
+			adapter = null; // 不是連接池: 只在同一次借出中快取
+		}
+		this.adapter = adapter;
+		if (adapter != null && pruneIntervalMillis > 0) {
+			pruner = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "StatementCache-pruner");
+				t.setDaemon(true);
+				return t;
+			});
+			pruner.scheduleWithFixedDelay(this::prune, pruneIntervalMillis, pruneIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			pruner = null;
+		}
+	}
+
+	public DataSource getDelegate() {
+		return delegate;
+	}
+
+	public int getMaxStatements() {
+		return maxStatements;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * 因為超過 maxStatements 而關閉的 PreparedStatement 數
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * 目前快取中的 PreparedStatement 數(所有物理連接)
+	 */
+	public int getCachedCount() {
+		int count = 0;
+		for (StatementCache cache : caches.values())
+			count += cache.size();
+		return count;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return wrap(delegate.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return wrap(delegate.getConnection(username, password));
+	}
+
+	private Connection wrap(Connection pooled) throws SQLException {
+		Connection physical = adapter == null ? pooled : adapter.getPhysicalConnection(pooled);
+		if (physical == null)
+			return pooled;
+		Physical key = new Physical(physical);
+		StatementCache cache = caches.get(key);
+		if (cache == null)
+			cache = caches.computeIfAbsent(key, StatementCache::new);
+		return (Connection) Proxy.newProxyInstance(StatementCachingDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(pooled, cache));
+	}
+
+	/**
+	 * 移除物理連接已經關閉的快取, 由背景執行緒定期調用
+	 */
+	void prune() {
+		for (StatementCache cache : caches.values()) {
+			if (isClosed(cache.physical.conn) && caches.remove(cache.physical, cache))
+				cache.closeAll();
+		}
+	}
+
+	private static boolean isClosed(Connection conn) {
+		try {
+			return conn.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * 停止背景檢查並關閉所有快取的 PreparedStatement, 被包裝的 DataSource 可以關閉時一起關閉
+	 */
+	@Override
+	public void close() throws Exception {
+		if (pruner != null)
+			pruner.shutdownNow();
+		for (StatementCache cache : caches.values())
+			cache.closeAll();
+		caches.clear();
+		if (delegate instanceof AutoCloseable)
+			((AutoCloseable) delegate).close();
+	}
+
+	// 以物件本身(而不是 equals)比較的物理連接
+	private static final class Physical {
+
+		private final Connection conn;
+
+		Physical(Connection conn) {
+			this.conn = conn;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(conn);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Physical && ((Physical) obj).conn == conn;
+		}
+	}
+
+	// 借出的連接: prepareStatement 經過快取, 其他方法交給連接池的連接
+	private final class ConnectionHandler implements InvocationHandler, PoolAdapters.ConnectionWrapper {
+
+		private final Connection pooled;
+
+		private final StatementCache cache;
+
+		// 同一個 SQL 正在使用中而沒有快取的 PreparedStatement, 創建在物理連接上, 連接池不會關閉
+		private final List<PreparedStatement> uncached = new ArrayList<>();
+
+		ConnectionHandler(Connection pooled, StatementCache cache) {
+			this.pooled = pooled;
+			this.cache = cache;
+		}
+
+		@Override
+		public Connection getWrapped() {
+			return pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "prepareStatement":
+				Key key = Key.of(args);
+				if (key != null)
+					return cache.prepare(key, (Connection) proxy, this);
+				break;
+			case "close":
+				close((Connection) proxy);
+				break;
+			case "toString":
+				return "StatementCachingConnection [" + pooled + "]";
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				break;
+			}
+			try {
+				return method.invoke(pooled, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		private void close(Connection logical) {
+			for (PreparedStatement statement : uncached) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					// 物理連接可能已經關閉
+				}
+			}
+			uncached.clear();
+			if (cache.physical.conn == pooled) { // 沒有連接池: 物理連接將被關閉
+				caches.remove(cache.physical, cache);
+				cache.closeAll();
+			} else {
+				cache.releaseAll(logical);
+			}
+		}
+	}
+
+	// 一條物理連接的快取, 同一時間只有借到這條連接的執行緒取出 PreparedStatement.
+	// 鎖只保護 entries 與借出狀態, 對資料庫的操作(prepareStatement, close)都在鎖外進行.
+	private final class StatementCache {
+
+		private final Physical physical;
+
+		// 被淘汰而沒有在使用中的, 離開鎖之後關閉
+		private final List<Entry> evicted = new ArrayList<>();
+
+		private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() <= maxStatements)
+					return false;
+				evictions.increment();
+				eldest.getValue().evicted = true;
+				if (eldest.getValue().owner == null)
+					evicted.add(eldest.getValue());
+				return true;
+			}
+		};
+
+		StatementCache(Physical physical) {
+			this.physical = physical;
+		}
+
+		synchronized int size() {
+			return entries.size();
+		}
+
+		PreparedStatement prepare(Key key, Connection logical, ConnectionHandler handler) throws SQLException {
+			boolean busy;
+			synchronized (this) {
+				Entry entry = entries.get(key);
+				if (entry != null && entry.owner == null && !entry.closed && !entry.statement.isClosed()) {
+					hits.increment();
+					return entry.checkout(logical);
+				}
+				busy = entry != null && entry.owner != null;
+			}
+			misses.increment();
+			PreparedStatement statement = key.prepare(physical.conn);
+			if (busy) { // 同一個 SQL 正在使用中: 這一個不快取
+				handler.uncached.add(statement);
+				return statement;
+			}
+			PreparedStatement handle;
+			Entry replaced;
+			synchronized (this) {
+				Entry entry = new Entry(this, statement);
+				handle = entry.checkout(logical);
+				replaced = entries.put(key, entry);
+			}
+			if (replaced != null && replaced.owner == null)
+				replaced.closeQuietly();
+			closeEvicted();
+			return handle;
+		}
+
+		// 在鎖外關閉被淘汰的 PreparedStatement
+		private void closeEvicted() {
+			List<Entry> closing;
+			synchronized (this) {
+				if (evicted.isEmpty())
+					return;
+				closing = new ArrayList<>(evicted);
+				evicted.clear();
+			}
+			for (Entry entry : closing)
+				entry.closeQuietly();
+		}
+
+		// 只有 handle 仍是借出者時才放回快取, 返回 false 表示 handle 已經關閉過
+		synchronized boolean release(Entry entry, Handle handle) {
+			if (entry.owner != handle)
+				return false;
+			entry.owner = null;
+			return true;
+		}
+
+		// 歸還連接時, 這次借出而沒有關閉的 PreparedStatement 放回快取
+		void releaseAll(Connection logical) {
+			List<Handle> open = new ArrayList<>();
+			synchronized (this) {
+				for (Entry entry : entries.values()) {
+					Handle owner = entry.owner;
+					if (owner != null && owner.logical == logical)
+						open.add(owner);
+				}
+			}
+			for (Handle handle : open)
+				handle.close();
+		}
+
+		void closeAll() {
+			List<Entry> closing;
+			synchronized (this) {
+				closing = new ArrayList<>(entries.values());
+				entries.clear();
+			}
+			for (Entry entry : closing)
+				entry.closeQuietly();
+		}
+	}
+
+	// 快取中的一個 PreparedStatement, owner 為目前借出的代理
+	private static final class Entry {
+
+		private final StatementCache cache;
+
+		private final PreparedStatement statement;
+
+		private volatile Handle owner;
+
+		private boolean evicted;
+
+		// 已經關閉(無法重複使用或被淘汰), 不再借出
+		private volatile boolean closed;
+
+		// 第一次修改設定前記下的值, 修改過時為 true
+		private boolean changed;
+
+		private int fetchSize;
+
+		private int maxRows;
+
+		private int queryTimeout;
+
+		private int fetchDirection;
+
+		private int maxFieldSize;
+
+		// 修改過無法恢復的設定, 歸還時關閉
+		private boolean discard;
+
+		Entry(StatementCache cache, PreparedStatement statement) {
+			this.cache = cache;
+			this.statement = statement;
+		}
+
+		// 調用時持有快取的鎖
+		PreparedStatement checkout(Connection logical) {
+			Handle handle = new Handle(this, logical);
+			owner = handle;
+			return handle.proxy;
+		}
+
+		// 修改設定前記下創建時的值
+		void save(String name) throws SQLException {
+			switch (name) {
+			case "setFetchSize":
+			case "setMaxRows":
+			case "setLargeMaxRows":
+			case "setQueryTimeout":
+			case "setFetchDirection":
+			case "setMaxFieldSize":
+				if (!changed) {
+					fetchSize = statement.getFetchSize();
+					maxRows = statement.getMaxRows();
+					queryTimeout = statement.getQueryTimeout();
+					fetchDirection = statement.getFetchDirection();
+					maxFieldSize = statement.getMaxFieldSize();
+					changed = true;
+				}
+				break;
+			case "setCursorName":
+			case "setEscapeProcessing":
+			case "setPoolable":
+			case "closeOnCompletion":
+				discard = true;
+				break;
+			default:
+				break;
+			}
+		}
+
+		// 借出者關閉代理時調用: 重設後放回快取, 無法重複使用時關閉
+		void close(Handle handle) {
+			if (owner != handle)
+				return;
+			try {
+				ResultSet rs = statement.getResultSet();
+				if (rs != null)
+					rs.close();
+				statement.clearParameters();
+				statement.clearBatch();
+				statement.clearWarnings();
+				if (changed) {
+					statement.setFetchSize(fetchSize);
+					statement.setMaxRows(maxRows);
+					statement.setQueryTimeout(queryTimeout);
+					statement.setFetchDirection(fetchDirection);
+					statement.setMaxFieldSize(maxFieldSize);
+					changed = false;
+				}
+			} catch (SQLException e) {
+				discard = true;
+			}
+			boolean close = discard;
+			if (close)
+				closed = true; // 無法重複使用, 下一次取出時重新創建
+			if (!cache.release(this, handle))
+				return;
+			synchronized (cache) {
+				close |= evicted;
+			}
+			if (close)
+				closeQuietly();
+		}
+
+		void closeQuietly() {
+			closed = true;
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				// 物理連接可能已經關閉
+			}
+		}
+	}
+
+	// 一次借出的 PreparedStatement 代理, 關閉後永遠是關閉的
+	private static final class Handle implements InvocationHandler {
+
+		private final Entry entry;
+
+		// 借出時的連接, getConnection 返回它
+		private final Connection logical;
+
+		private final PreparedStatement proxy;
+
+		Handle(Entry entry, Connection logical) {
+			this.entry = entry;
+			this.logical = logical;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCachingDataSource.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		void close() {
+			entry.close(this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				close();
+				return null;
+			case "isClosed":
+				return entry.owner != this || entry.statement.isClosed();
+			case "toString":
+				return "CachedPreparedStatement [" + entry.statement + "]";
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				break;
+			}
+			if (entry.owner != this)
+				throw new SQLException("PreparedStatement 已關閉");
+			if (method.getName().equals("getConnection"))
+				return logical;
+			entry.save(method.getName());
+			try {
+				return method.invoke(entry.statement, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	// 快取的鍵: SQL 與 prepareStatement 的其他參數
+	private static final class Key {
+
+		private final String sql;
+
+		private final int resultSetType;
+
+		private final int resultSetConcurrency;
+
+		private final int resultSetHoldability; // -1 為連接的預設值
+
+		private final int autoGeneratedKeys; // -1 為沒有指定
+
+		private Key(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.resultSetType = resultSetType;
+			this.resultSetConcurrency = resultSetConcurrency;
+			this.resultSetHoldability = resultSetHoldability;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		// prepareStatement 的參數, 不支援的形式(columnIndexes, columnNames)返回 null
+		static Key of(Object[] args) {
+			String sql = (String) args[0];
+			switch (args.length) {
+			case 1:
+				return new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, -1, -1);
+			case 2:
+				return args[1] instanceof Integer ? new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, -1, (Integer) args[1]) : null;
+			case 3:
+				return new Key(sql, (Integer) args[1], (Integer) args[2], -1, -1);
+			case 4:
+				return new Key(sql, (Integer) args[1], (Integer) args[2], (Integer) args[3], -1);
+			default:
+				return null;
+			}
+		}
+
+		PreparedStatement prepare(Connection conn) throws SQLException {
+			if (autoGeneratedKeys != -1)
+				return conn.prepareStatement(sql, autoGeneratedKeys);
+			if (resultSetHoldability != -1)
+				return conn.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+			return conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return sql.equals(other.sql) && resultSetType == other.resultSetType
+					&& resultSetConcurrency == other.resultSetConcurrency
+					&& resultSetHoldability == other.resultSetHoldability && autoGeneratedKeys == other.autoGeneratedKeys;
+		}
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return delegate.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		delegate.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		delegate.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return delegate.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return delegate.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		if (iface.isInstance(delegate))
+			return iface.cast(delegate);
+		return delegate.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+	}
+}